@@ -7,6 +7,8 @@ using System.Collections;
 using System.Collections.Generic;
 using System.Text;
 using System;
+using System.IO;
+using System.Security.Cryptography;
 using UnityEngine.UI;
 
 
@@ -129,24 +131,179 @@ public class CustomBehaviour : MonoBehaviour
                 continue;
             }
 
-            string urlFile = $"http://{serverIp}:{serverPort}/mods/{UnityWebRequest.EscapeURL(file)}";
-            UnityWebRequest fileReq = UnityWebRequest.Get(urlFile);
-            fileReq.timeout = timeoutSec;
-            yield return fileReq.SendWebRequest();
+            byte[] data = null;
+            yield return StartCoroutine(FetchMod(file, d => data = d));
+            if (data == null) continue;
 
-            if (fileReq.isNetworkError || fileReq.isHttpError)
+            LoadAssemblyAndAttach(file, data);
+        }
+
+        Debug.Log("[ClientManager] ModsLoader finished (DLL workflow).");
+    }
+
+
+
+    // Chunks are kept by SHA-256 across mods and sessions, so an updated mod only costs its changed chunks
+    private const int ChunkBatch = 32;
+    private static string ChunkDir
+    {
+        get { return Path.Combine(Application.persistentDataPath, "deserver-chunks"); }
+    }
+
+    private IEnumerator FetchMod(string file, Action<byte[]> done)
+    {
+        string esc = UnityWebRequest.EscapeURL(file);
+        UnityWebRequest manReq = UnityWebRequest.Get($"http://{serverIp}:{serverPort}/manifest/{esc}");
+        manReq.timeout = timeoutSec;
+        yield return manReq.SendWebRequest();
+
+        List<string> hashes = new List<string>();
+        Dictionary<string, int> sizes = new Dictionary<string, int>();
+        string sha = null;
+        if (!manReq.isNetworkError && !manReq.isHttpError)
+            sha = ParseManifest(manReq.downloadHandler.text, hashes, sizes);
+        if (sha == null)
+        {
+            // Server without chunked mods
+            yield return StartCoroutine(FetchWhole(file, done));
+            yield break;
+        }
+
+        Dictionary<string, byte[]> have = new Dictionary<string, byte[]>();
+        List<string> missing = new List<string>();
+        foreach (string h in hashes)
+        {
+            if (have.ContainsKey(h) || missing.Contains(h)) continue;
+            byte[] cached = ReadChunk(h);
+            if (cached != null && cached.Length == sizes[h]) have[h] = cached;
+            else missing.Add(h);
+        }
+
+        int fetched = 0;
+        for (int i = 0; i < missing.Count; i += ChunkBatch)
+        {
+            List<string> batch = missing.GetRange(i, Math.Min(ChunkBatch, missing.Count - i));
+            UnityWebRequest req = UnityWebRequest.Get(
+                $"http://{serverIp}:{serverPort}/chunks/{string.Join(",", batch.ToArray())}");
+            req.timeout = timeoutSec;
+            yield return req.SendWebRequest();
+
+            byte[] body = req.isNetworkError || req.isHttpError ? null : req.downloadHandler.data;
+            if (!StoreChunks(batch, sizes, body, have))
             {
-                Debug.LogWarning("[ClientManager] Download failed for " + file + ": " + fileReq.error);
-                continue;
+                Debug.LogWarning("[ClientManager] Chunk download failed for " + file + " – fetching whole file.");
+                yield return StartCoroutine(FetchWhole(file, done));
+                yield break;
             }
+            fetched += body.Length;
+        }
+
+        int total = 0;
+        foreach (string h in hashes) total += sizes[h];
+        byte[] data = new byte[total];
+        int at = 0;
+        foreach (string h in hashes)
+        {
+            Buffer.BlockCopy(have[h], 0, data, at, have[h].Length);
+            at += have[h].Length;
+        }
 
-            LoadAssemblyAndAttach(file, fileReq.downloadHandler.data);
+        if (Sha256Hex(data, 0, data.Length) != sha)
+        {
+            Debug.LogWarning("[ClientManager] " + file + " did not verify – fetching whole file.");
+            foreach (string h in hashes) DeleteChunk(h);
+            yield return StartCoroutine(FetchWhole(file, done));
+            yield break;
         }
 
-        Debug.Log("[ClientManager] ModsLoader finished (DLL workflow).");
+        Debug.Log($"[ClientManager] {file}: {hashes.Count} chunk(s), downloaded {fetched} of {total} bytes.");
+        done(data);
     }
 
+    private IEnumerator FetchWhole(string file, Action<byte[]> done)
+    {
+        string url = $"http://{serverIp}:{serverPort}/mods/{UnityWebRequest.EscapeURL(file)}";
+        UnityWebRequest req = UnityWebRequest.Get(url);
+        req.timeout = timeoutSec;
+        yield return req.SendWebRequest();
 
+        if (req.isNetworkError || req.isHttpError)
+        {
+            Debug.LogWarning("[ClientManager] Download failed for " + file + ": " + req.error);
+            done(null);
+            yield break;
+        }
+        done(req.downloadHandler.data);
+    }
+
+    // {"file":..,"size":..,"sha256":"<hex>","chunks":["<hex>:<len>",..]} → sha256 of the whole file, or null
+    private static string ParseManifest(string json, List<string> hashes, Dictionary<string, int> sizes)
+    {
+        string sha = ReadString(json, "\"sha256\":\"", null);
+        int i = json.IndexOf("\"chunks\":[", StringComparison.Ordinal);
+        if (sha == null || i < 0) return null;
+        i += 10;
+        int j = json.IndexOf(']', i);
+        if (j < i) return null;
+
+        foreach (string entry in json.Substring(i, j - i).Replace("\"", "").Split(','))
+        {
+            if (entry.Length == 0) continue;
+            int colon = entry.IndexOf(':');
+            int len;
+            if (colon <= 0 || !int.TryParse(entry.Substring(colon + 1), out len)) return null;
+            string h = entry.Substring(0, colon);
+            hashes.Add(h);
+            sizes[h] = len;
+        }
+        return sha;
+    }
+
+    // Splits a /chunks answer by the manifest sizes, checks every hash and keeps the chunks on disk
+    private static bool StoreChunks(List<string> batch, Dictionary<string, int> sizes, byte[] body,
+                                    Dictionary<string, byte[]> have)
+    {
+        if (body == null) return false;
+        int at = 0;
+        foreach (string h in batch)
+        {
+            int n = sizes[h];
+            if (at + n > body.Length || Sha256Hex(body, at, n) != h) return false;
+            byte[] chunk = new byte[n];
+            Buffer.BlockCopy(body, at, chunk, 0, n);
+            have[h] = chunk;
+            at += n;
+            try
+            {
+                Directory.CreateDirectory(ChunkDir);
+                File.WriteAllBytes(Path.Combine(ChunkDir, h), chunk);
+            }
+            catch (Exception ex)
+            {
+                Debug.LogWarning("[ClientManager] Could not cache chunk " + h + ": " + ex.Message);
+            }
+        }
+        return at == body.Length;
+    }
+
+    private static byte[] ReadChunk(string hash)
+    {
+        string path = Path.Combine(ChunkDir, hash);
+        try { return File.Exists(path) ? File.ReadAllBytes(path) : null; }
+        catch (Exception) { return null; }
+    }
+
+    private static void DeleteChunk(string hash)
+    {
+        try { File.Delete(Path.Combine(ChunkDir, hash)); }
+        catch (Exception) { }
+    }
+
+    private static string Sha256Hex(byte[] data, int offset, int count)
+    {
+        using (SHA256 sha = new SHA256Managed())
+            return BitConverter.ToString(sha.ComputeHash(data, offset, count)).Replace("-", "").ToLowerInvariant();
+    }
 
     private void LoadAssemblyAndAttach(string fileName, byte[] bytes)
     {
@@ -304,6 +461,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "axis");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -321,6 +480,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "input");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -394,6 +555,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "pause");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -403,7 +566,8 @@ public class CustomBehaviour : MonoBehaviour
     private IEnumerator NetLoop()
     {
         WaitForSeconds retry = new WaitForSeconds(1f);
-        WaitForSeconds interval = new WaitForSeconds(objectsInterval);
+        float intervalSec = objectsInterval;
+        WaitForSeconds interval = new WaitForSeconds(intervalSec);
 
         while (true)
         {
@@ -453,6 +617,14 @@ public class CustomBehaviour : MonoBehaviour
                 continue;
             }
 
+            // The server paces uploads to its load and to whether we are paused
+            float upload = HeaderSeconds(objReq, "X-DeServer-Upload-Ms");
+            if (upload > 0f && upload != intervalSec)
+            {
+                intervalSec = upload;
+                interval = new WaitForSeconds(intervalSec);
+            }
+
             yield return interval;
         }
     }
@@ -496,6 +668,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(body);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", evt);
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -527,7 +701,8 @@ public class CustomBehaviour : MonoBehaviour
 
     private IEnumerator CommandLoop()
     {
-        WaitForSeconds wait = new WaitForSeconds(0.5f);
+        float pollSec = 0.5f;
+        WaitForSeconds wait = new WaitForSeconds(pollSec);
         string url = "http://" + serverIp + ":" + serverPort +
                      "/cmd?steamID=" + UnityWebRequest.EscapeURL(id.steamID);
 
@@ -546,6 +721,14 @@ public class CustomBehaviour : MonoBehaviour
                     if (cmds != null)
                         for (int i = 0; i < cmds.Length; i++)
                             ApplyCommand(cmds[i]);
+
+                    // Next poll delay suggested by the server (sooner while commands are queued)
+                    float poll = ReadFloat(txt, "\"poll\":", 0f) / 1000f;
+                    if (poll > 0f && poll != pollSec)
+                    {
+                        pollSec = poll;
+                        wait = new WaitForSeconds(pollSec);
+                    }
                 }
             }
             yield return wait;
@@ -646,19 +829,10 @@ public class CustomBehaviour : MonoBehaviour
 
     private IEnumerator DownloadAndLoadMod(string fileName)
     {
-        string url = $"http://{serverIp}:{serverPort}/mods/{UnityWebRequest.EscapeURL(fileName)}";
-        UnityWebRequest req = UnityWebRequest.Get(url);
-        req.timeout = timeoutSec;
-        yield return req.SendWebRequest();
+        byte[] data = null;
+        yield return StartCoroutine(FetchMod(fileName, d => data = d));
+        if (data == null) yield break;
 
-        if (req.isNetworkError || req.isHttpError)
-        {
-            Debug.LogWarning("[ClientManager] modload download failed for " +
-                             fileName + ": " + req.error);
-            yield break;
-        }
-
-        byte[] data = req.downloadHandler.data;
         if (fileName.EndsWith(".dll", StringComparison.OrdinalIgnoreCase))
         {
             LoadAssemblyAndAttach(fileName, data);
@@ -823,6 +997,13 @@ public class CustomBehaviour : MonoBehaviour
                    .Replace("\\\\", "\\");
     }
 
+    private static float HeaderSeconds(UnityWebRequest req, string name)
+    {
+        string v = req.GetResponseHeader(name);
+        int ms;
+        return v != null && int.TryParse(v, out ms) && ms > 0 ? ms / 1000f : 0f;
+    }
+
     private static float ReadFloat(string json, string key, float def)
     {
         int idx = json.IndexOf(key, System.StringComparison.OrdinalIgnoreCase);
@@ -1199,6 +1380,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "ack");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -1465,6 +1648,8 @@ public class CustomBehaviour : MonoBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "objects");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -116,6 +116,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "axis");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -133,6 +135,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "input");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -204,6 +208,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "pause");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -213,7 +219,8 @@ public class ClientManager : ModBehaviour
     private IEnumerator NetLoop()
     {
         WaitForSeconds retry = new WaitForSeconds(1f);
-        WaitForSeconds interval = new WaitForSeconds(objectsInterval);
+        float intervalSec = objectsInterval;
+        WaitForSeconds interval = new WaitForSeconds(intervalSec);
 
         while (true)
         {
@@ -263,6 +270,14 @@ public class ClientManager : ModBehaviour
                 continue;
             }
 
+            // The server paces uploads to its load and to whether we are paused
+            float upload = HeaderSeconds(objReq, "X-DeServer-Upload-Ms");
+            if (upload > 0f && upload != intervalSec)
+            {
+                intervalSec = upload;
+                interval = new WaitForSeconds(intervalSec);
+            }
+
             yield return interval;
         }
     }
@@ -306,6 +321,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(body);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", evt);
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -336,7 +353,8 @@ public class ClientManager : ModBehaviour
 
     private IEnumerator CommandLoop()
     {
-        WaitForSeconds wait = new WaitForSeconds(0.5f);
+        float pollSec = 0.5f;
+        WaitForSeconds wait = new WaitForSeconds(pollSec);
         string url = "http://" + serverIp + ":" + serverPort +
                      "/cmd?steamID=" + UnityWebRequest.EscapeURL(id.steamID);
 
@@ -355,6 +373,14 @@ public class ClientManager : ModBehaviour
                     if (cmds != null)
                         for (int i = 0; i < cmds.Length; i++)
                             ApplyCommand(cmds[i]);
+
+                    // Next poll delay suggested by the server (sooner while commands are queued)
+                    float poll = ReadFloat(txt, "\"poll\":", 0f) / 1000f;
+                    if (poll > 0f && poll != pollSec)
+                    {
+                        pollSec = poll;
+                        wait = new WaitForSeconds(pollSec);
+                    }
                 }
             }
             yield return wait;
@@ -575,6 +601,13 @@ public class ClientManager : ModBehaviour
                    .Replace("\\\\", "\\");
     }
 
+    private static float HeaderSeconds(UnityWebRequest req, string name)
+    {
+        string v = req.GetResponseHeader(name);
+        int ms;
+        return v != null && int.TryParse(v, out ms) && ms > 0 ? ms / 1000f : 0f;
+    }
+
     private static float ReadFloat(string json, string key, float def)
     {
         int idx = json.IndexOf(key, System.StringComparison.OrdinalIgnoreCase);
@@ -949,6 +982,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "ack");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
@@ -1212,6 +1247,8 @@ public class ClientManager : ModBehaviour
         req.uploadHandler = new UploadHandlerRaw(bytes);
         req.downloadHandler = new DownloadHandlerBuffer();
         req.SetRequestHeader("Content-Type", "application/json");
+        req.SetRequestHeader("X-DeServer-Event", "objects");
+        req.SetRequestHeader("X-DeServer-SteamID", id.steamID);
         req.timeout = timeoutSec;
         return req;
     }
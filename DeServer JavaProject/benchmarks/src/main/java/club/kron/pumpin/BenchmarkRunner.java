@@ -0,0 +1,21 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Same CLI as org.openjdk.jmh.Main, but results default to jmh-result.json for regression tracking. */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) opts.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue()) opts.result("jmh-result.json");
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,45 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+
+    @Param({"1", "16", "400"})
+    public int batch;
+
+    private List<String> commands;
+    private String sid;
+    private OutputStream sink;
+    private String drained;
+
+    @Setup
+    public void load() {
+        commands = Payloads.commands().subList(0, batch);
+        sid = "bench-" + Thread.currentThread().threadId();
+        sink = OutputStream.nullOutputStream();
+        for (String c : commands) Main.enqueueCommand(sid, c);
+        drained = "{\"commands\":" + Main.dequeueCommandsJson(sid) + "}";
+    }
+
+    @Benchmark
+    public String enqueueAndDrain() {
+        for (String c : commands) Main.enqueueCommand(sid, c);
+        return Main.dequeueCommandsJson(sid);
+    }
+
+    @Benchmark
+    public void respondJson() throws IOException {
+        Main.respondJson(sink, drained);
+    }
+}
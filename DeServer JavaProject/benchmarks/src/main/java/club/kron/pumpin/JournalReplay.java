@@ -0,0 +1,210 @@
+package club.kron.pumpin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Feeds a recorded event journal (journal=true on the server) back into a running server, keeping the
+ * original spacing at --speed=1, compressing it at --speed=N, or as fast as possible at --speed=max.
+ * Events of one SteamID always go through the same worker, so their order is preserved.
+ *
+ *   java -cp target/benchmarks.jar club.kron.pumpin.JournalReplay --journal=journal/20260101-120000 --speed=4
+ */
+public final class JournalReplay {
+
+    private static final Object END = new Object();
+
+    private record Send(String event, String steamID, String body, long dueNanos) {}
+
+    private final File journal;
+    private final String host;
+    private final int port;
+    private final double speed;
+    private final int workers;
+    private final int timeoutMs;
+    private final String jsonOut;
+
+    private final Map<String, LoadGenerator.Latency> byType = new LinkedHashMap<>();
+    private final LoadGenerator.Latency lag = new LoadGenerator.Latency();
+
+    private JournalReplay(Map<String, String> opt) {
+        journal   = new File(opt.getOrDefault("journal", "journal"));
+        host      = opt.getOrDefault("host", "127.0.0.1");
+        port      = Integer.parseInt(opt.getOrDefault("port", "19299"));
+        String s  = opt.getOrDefault("speed", "1");
+        speed     = "max".equalsIgnoreCase(s) ? 0 : Double.parseDouble(s);
+        workers   = Integer.parseInt(opt.getOrDefault("workers", "64"));
+        timeoutMs = Integer.parseInt(opt.getOrDefault("timeout", "2000"));
+        jsonOut   = opt.get("json");
+
+        for (String t : new String[]{"connect", "pos", "objects", "axis", "input", "ack", "pause", "disconnect"})
+            byType.put(t, new LoadGenerator.Latency());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (String a : args) {
+            if ("--help".equals(a) || "-h".equals(a)) { usage(); return; }
+            if (!a.startsWith("--") || !a.contains("=")) { usage(); return; }
+            opt.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+        }
+        if (!opt.containsKey("journal")) { usage(); return; }
+        new JournalReplay(opt).run();
+    }
+
+    private static void usage() {
+        System.out.println("JournalReplay --journal=<session dir | segment.dsj> [--host=127.0.0.1] [--port=19299]");
+        System.out.println("              [--speed=1|<N>|max] [--workers=64] [--timeout=2000] [--json=report.json]");
+    }
+
+    private void run() throws Exception {
+        System.out.printf("[REPLAY] %s → %s:%d at %s%n", journal, host, port,
+                speed == 0 ? "max speed" : speed + "x");
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BlockingQueue<Object>[] queues = new BlockingQueue[workers];
+        long events = 0, firstMicros = -1, lastMicros = 0;
+        long start = System.nanoTime();
+
+        try (ExecutorService vt = Executors.newVirtualThreadPerTaskExecutor();
+             Journal.Reader reader = new Journal.Reader(journal)) {
+            for (int i = 0; i < workers; i++) {
+                BlockingQueue<Object> q = queues[i] = new ArrayBlockingQueue<>(4096);
+                vt.submit(() -> worker(q));
+            }
+
+            long lastReport = start, lastCount = 0;
+            for (Journal.Event e = new Journal.Event(); reader.next(e); e = new Journal.Event()) {
+                if (firstMicros < 0) firstMicros = e.epochMicros;
+                lastMicros = e.epochMicros;
+
+                long due = speed == 0 ? 0 : start + (long) ((e.epochMicros - firstMicros) * 1000 / speed);
+                if (due > 0) {
+                    for (long wait; (wait = due - System.nanoTime()) > 0; )
+                        LockSupport.parkNanos(Math.min(wait, 50_000_000L));
+                }
+                int w = Math.floorMod(e.steamID.hashCode(), workers);
+                queues[w].put(new Send(e.event, e.steamID, e.body, due));
+                events++;
+
+                long now = System.nanoTime();
+                if (now - lastReport >= 1_000_000_000L) {
+                    System.out.printf("[REPLAY] t=%3ds  %8.0f ev/s  recorded t=%ds  errors=%d%n",
+                            TimeUnit.NANOSECONDS.toSeconds(now - start),
+                            (events - lastCount) / ((now - lastReport) / 1e9),
+                            (e.epochMicros - firstMicros) / 1_000_000, totalErrors());
+                    lastReport = now;
+                    lastCount = events;
+                }
+            }
+            for (BlockingQueue<Object> q : queues) q.put(END);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double recorded = firstMicros < 0 ? 0 : (lastMicros - firstMicros) / 1e6;
+        report(events, elapsed, recorded);
+    }
+
+    private void worker(BlockingQueue<Object> q) {
+        try {
+            for (Object o; (o = q.take()) != END; ) {
+                Send s = (Send) o;
+                if (s.dueNanos() > 0) lag.record(Math.max(0, System.nanoTime() - s.dueNanos()));
+                post(s);
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private void post(Send s) {
+        LoadGenerator.Latency lat;
+        synchronized (byType) { lat = byType.computeIfAbsent(s.event(), k -> new LoadGenerator.Latency()); }
+        byte[] b = s.body().getBytes(StandardCharsets.UTF_8);
+        byte[] h = ("POST / HTTP/1.1\r\nHost: " + host + ':' + port +
+                "\r\nContent-Type: application/json\r\n" +
+                "X-DeServer-Event: " + s.event() + "\r\nX-DeServer-SteamID: " + s.steamID() + "\r\n" +
+                "Content-Length: " + b.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        long t0 = System.nanoTime();
+        try (Socket sock = new Socket()) {
+            sock.setTcpNoDelay(true);
+            sock.setSoTimeout(timeoutMs);
+            sock.connect(new InetSocketAddress(host, port), timeoutMs);
+            OutputStream out = sock.getOutputStream();
+            out.write(h);
+            out.write(b);
+            out.flush();
+
+            InputStream in = sock.getInputStream();
+            byte[] buf = new byte[512];
+            int n, total = 0, status = -1;
+            while ((n = in.read(buf)) != -1) {
+                if (status < 0 && total == 0 && n >= 12)
+                    status = Integer.parseInt(new String(buf, 9, 3, StandardCharsets.US_ASCII));
+                total += n;
+            }
+            if (status != 200) { lat.error(); return; }
+            lat.record(System.nanoTime() - t0);
+        } catch (IOException | NumberFormatException e) {
+            lat.error();
+        }
+    }
+
+    private long totalErrors() {
+        long n = 0;
+        synchronized (byType) { for (LoadGenerator.Latency l : byType.values()) n += l.errors(); }
+        return n;
+    }
+
+    private void report(long events, double elapsed, double recorded) throws IOException {
+        System.out.println();
+        System.out.printf("[REPLAY] %-10s %10s %8s %10s %10s %10s%n", "type", "ok", "errors", "p50(µs)", "p99(µs)", "p999(µs)");
+        List<String> json = new ArrayList<>();
+        long ok = 0, errors = 0;
+        synchronized (byType) {
+            for (Map.Entry<String, LoadGenerator.Latency> e : byType.entrySet()) {
+                LoadGenerator.Latency l = e.getValue();
+                ok += l.count();
+                errors += l.errors();
+                if (l.count() == 0 && l.errors() == 0) continue;
+                System.out.printf("[REPLAY] %-10s %10d %8d %10d %10d %10d%n", e.getKey(), l.count(), l.errors(),
+                        l.percentileMicros(0.50), l.percentileMicros(0.99), l.percentileMicros(0.999));
+                json.add(String.format(java.util.Locale.ROOT,
+                        "\"%s\":{\"ok\":%d,\"errors\":%d,\"p50_us\":%d,\"p99_us\":%d,\"p999_us\":%d}",
+                        e.getKey(), l.count(), l.errors(),
+                        l.percentileMicros(0.50), l.percentileMicros(0.99), l.percentileMicros(0.999)));
+            }
+        }
+        System.out.printf("[REPLAY] %d events (%d ok, %d errors) in %.1fs = %.0f ev/s; recorded span %.1fs (%.2fx)%n",
+                events, ok, errors, elapsed, events / elapsed, recorded, elapsed == 0 ? 0 : recorded / elapsed);
+        if (speed != 0)
+            System.out.printf("[REPLAY] send lag behind schedule: p50 %d µs, p99 %d µs%n",
+                    lag.percentileMicros(0.50), lag.percentileMicros(0.99));
+
+        if (jsonOut != null) {
+            try (PrintWriter pw = new PrintWriter(jsonOut, StandardCharsets.UTF_8)) {
+                pw.printf(java.util.Locale.ROOT,
+                        "{\"events\":%d,\"ok\":%d,\"errors\":%d,\"elapsed_s\":%.2f,\"recorded_s\":%.2f," +
+                        "\"speed\":\"%s\",\"lag_p99_us\":%d,\"types\":{%s}}%n",
+                        events, ok, errors, elapsed, recorded, speed == 0 ? "max" : String.valueOf(speed),
+                        lag.percentileMicros(0.99), String.join(",", json));
+            }
+            System.out.println("[REPLAY] wrote " + jsonOut);
+        }
+    }
+}
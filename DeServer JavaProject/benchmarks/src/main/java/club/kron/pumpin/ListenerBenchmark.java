@@ -0,0 +1,83 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Requests per second through real sockets against 1..N SO_REUSEPORT listeners, one connection per
+ * request like UnityWebRequest. Each parameter runs in its own fork since the server is static; scaling
+ * needs at least as many free cores as listeners plus client threads (-t overrides the 16 below).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ListenerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"1", "2", "4", "8"})
+        public int listeners;
+
+        int port;
+
+        @Setup
+        public void start() throws Exception {
+            try (ServerSocket probe = new ServerSocket(0)) { port = probe.getLocalPort(); }
+            Thread t = new Thread(() -> Main.main(new String[]{"nogui", "--port=" + port,
+                    "--listeners=" + listeners, "--admission=false"}), "server");
+            t.setDaemon(true);
+            t.start();
+            for (long deadline = System.currentTimeMillis() + 10_000; ; Thread.sleep(50)) {
+                try {
+                    new Socket("127.0.0.1", port).close();
+                    return;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) throw e;
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private static final AtomicInteger IDS = new AtomicInteger();
+
+        byte[] request;
+        final byte[] response = new byte[4096];
+
+        @Setup
+        public void load() {
+            String pos = Payloads.body("pos.json");
+            String sid = Main.extractJson(pos, "steamID");
+            request = Payloads.post(pos.replace(sid, sid + IDS.incrementAndGet()));
+        }
+    }
+
+    @Benchmark
+    public int pos(Server server, Client client) throws IOException {
+        try (Socket s = new Socket()) {
+            s.setTcpNoDelay(true);
+            s.connect(new InetSocketAddress("127.0.0.1", server.port));
+            OutputStream out = s.getOutputStream();
+            out.write(client.request);
+            out.flush();
+            InputStream in = s.getInputStream();
+            int total = 0;
+            for (int n; (n = in.read(client.response)) > 0; ) total += n;
+            return total;
+        }
+    }
+}
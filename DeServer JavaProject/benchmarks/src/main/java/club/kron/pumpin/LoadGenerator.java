@@ -0,0 +1,379 @@
+package club.kron.pumpin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Simulates a fleet of ClientManager instances against a running server, one virtual thread per client loop:
+ * pos + objects every objects interval, /cmd polls, and a stream of axis/input posts.
+ *
+ *   java -cp target/benchmarks.jar club.kron.pumpin.LoadGenerator --clients=2000 --duration=60
+ */
+public final class LoadGenerator {
+
+    private static final String[] AXES = {"Horizontal", "Vertical", "Mouse X", "Mouse Y", "JoystickAxis3"};
+    private static final String[] KEYS = {"Space", "LeftShift", "W", "A", "S", "D", "Mouse0", "JoystickButton0"};
+    private static final String[] GAUGES = {"deserver_sessions", "deserver_pending_commands", "deserver_input_events"};
+
+    /* Log-linear latency histogram: 16 linear sub-buckets per power of two microseconds (≈6% error). */
+    static final class Latency {
+        private static final int SUB = 16;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        void record(long nanos) {
+            long us = Math.max(1, nanos / 1_000);
+            int exp = 63 - Long.numberOfLeadingZeros(us);
+            int sub = exp < 4 ? (int) (us & (SUB - 1)) : (int) ((us >>> (exp - 4)) & (SUB - 1));
+            buckets.incrementAndGet(exp * SUB + sub);
+            count.increment();
+        }
+
+        void error() { errors.increment(); }
+
+        long count()  { return count.sum(); }
+        long errors() { return errors.sum(); }
+
+        long percentileMicros(double p) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(p * total), seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    int exp = i / SUB, sub = i % SUB;
+                    return exp < 4 ? sub + 1 : ((long) (SUB + sub + 1)) << (exp - 4);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int durationSec;
+    private final int rampSec;
+    private final int cmdIntervalMs;
+    private final int objectsIntervalMs;
+    private final double axisHz;
+    private final double inputHz;
+    private final int objectsCount;
+    private final int timeoutMs;
+    private final String jsonOut;
+
+    private final Map<String, Latency> byType = new LinkedHashMap<>();
+    private final Map<String, long[]> gaugeSamples = new LinkedHashMap<>();
+    private volatile boolean running = true;
+
+    private LoadGenerator(Map<String, String> opt) {
+        host              = opt.getOrDefault("host", "127.0.0.1");
+        port              = Integer.parseInt(opt.getOrDefault("port", "19299"));
+        clients           = Integer.parseInt(opt.getOrDefault("clients", "500"));
+        durationSec       = Integer.parseInt(opt.getOrDefault("duration", "30"));
+        rampSec           = Integer.parseInt(opt.getOrDefault("ramp", "5"));
+        cmdIntervalMs     = Integer.parseInt(opt.getOrDefault("cmd-interval", "500"));
+        objectsIntervalMs = Integer.parseInt(opt.getOrDefault("objects-interval", "1000"));
+        axisHz            = Double.parseDouble(opt.getOrDefault("axis-hz", "10"));
+        inputHz           = Double.parseDouble(opt.getOrDefault("input-hz", "0.5"));
+        objectsCount      = Integer.parseInt(opt.getOrDefault("objects", "300"));
+        timeoutMs         = Integer.parseInt(opt.getOrDefault("timeout", "2000"));
+        jsonOut           = opt.get("json");
+
+        for (String t : new String[]{"connect", "pos", "objects", "cmd", "axis", "input", "disconnect"})
+            byType.put(t, new Latency());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = new LinkedHashMap<>();
+        for (String a : args) {
+            if ("--help".equals(a) || "-h".equals(a)) { usage(); return; }
+            if (!a.startsWith("--") || !a.contains("=")) { usage(); return; }
+            opt.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+        }
+        new LoadGenerator(opt).run();
+    }
+
+    private static void usage() {
+        System.out.println("LoadGenerator [--host=127.0.0.1] [--port=19299] [--clients=500] [--duration=30] [--ramp=5]");
+        System.out.println("              [--cmd-interval=500] [--objects-interval=1000] [--axis-hz=10] [--input-hz=0.5]");
+        System.out.println("              [--objects=300] [--timeout=2000] [--json=report.json]");
+    }
+
+    private void run() throws Exception {
+        System.out.printf("[LOAD] %d clients → %s:%d for %ds (ramp %ds), objects=%d (%d bytes)%n",
+                clients, host, port, durationSec, rampSec, objectsCount, sceneJson(0).length());
+
+        sampleGauges();
+        long start = System.nanoTime();
+        try (ExecutorService vt = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                final String sid = "7656119" + String.format(java.util.Locale.ROOT, "%010d", i);
+                final String name = "Bot" + i;
+                final long delayMs = rampSec <= 0 ? 0 : (long) i * rampSec * 1000L / clients;
+                vt.submit(() -> client(vt, sid, name, delayMs));
+            }
+
+            long lastReport = System.nanoTime(), lastCount = 0;
+            while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(durationSec)) {
+                Thread.sleep(1000);
+                sampleGauges();
+                long now = System.nanoTime(), total = totalRequests();
+                double rate = (total - lastCount) / ((now - lastReport) / 1e9);
+                System.out.printf("[LOAD] t=%3ds  %8.0f req/s  errors=%d  %s%n",
+                        TimeUnit.NANOSECONDS.toSeconds(now - start), rate, totalErrors(), lastGauges());
+                lastReport = now;
+                lastCount = total;
+            }
+            running = false;
+            vt.shutdown();
+            vt.awaitTermination(timeoutMs * 2L + 1000, TimeUnit.MILLISECONDS);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        sampleGauges();
+        report(elapsed);
+    }
+
+    private void client(ExecutorService vt, String sid, String name, long delayMs) {
+        try {
+            Thread.sleep(delayMs);
+            if (!running) return;
+            post("connect", sid, event("connect", sid, name, ""));
+            vt.submit(() -> netLoop(sid, name));
+            vt.submit(() -> commandLoop(sid));
+            vt.submit(() -> inputLoop(sid, name));
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private void netLoop(String sid, String name) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        double x = rnd.nextDouble(-1000, 1000), y = rnd.nextDouble(0, 200), z = rnd.nextDouble(-1000, 1000);
+        String scene = sceneJson(rnd.nextInt());
+        try {
+            while (running) {
+                x += rnd.nextDouble(-3, 3);
+                z += rnd.nextDouble(-3, 3);
+                String pos = ",\"x\":" + (float) x + ",\"y\":" + (float) y + ",\"z\":" + (float) z +
+                        ",\"rx\":" + (float) rnd.nextDouble(360) + ",\"ry\":" + (float) rnd.nextDouble(360) +
+                        ",\"rz\":0,\"camx\":" + (float) (x - 4) + ",\"camy\":" + (float) (y + 2) +
+                        ",\"camz\":" + (float) (z - 4);
+                post("pos", sid, event("pos", sid, name, pos));
+                post("objects", sid, "{\"event\":\"objects\",\"playerName\":\"" + name +
+                        "\",\"steamID\":\"" + sid + "\",\"data\":" + scene + "}");
+                Thread.sleep(objectsIntervalMs);
+            }
+            post("disconnect", sid, event("disconnect", sid, name, ""));
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private void commandLoop(String sid) {
+        byte[] req = ("GET /cmd?steamID=" + sid + " HTTP/1.1\r\nHost: " + host + ':' + port +
+                "\r\nUser-Agent: UnityPlayer/2017.4.9f1 (UnityWebRequest/1.0, libcurl/7.51.0-DEV)\r\n" +
+                "Accept: */*\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            while (running) {
+                exchange("cmd", req);
+                Thread.sleep(cmdIntervalMs);
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private void inputLoop(String sid, String name) {
+        if (axisHz <= 0 && inputHz <= 0) return;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        double total = axisHz + inputHz;
+        long sleepNanos = (long) (1e9 / total);
+        try {
+            while (running) {
+                if (rnd.nextDouble(total) < axisHz) {
+                    String axis = AXES[rnd.nextInt(AXES.length)];
+                    post("axis", sid, "{\"event\":\"axis\",\"axis\":\"" + axis + "\",\"val\":" +
+                            String.format(java.util.Locale.ROOT, "%.4f", rnd.nextDouble(-1, 1)) +
+                            ",\"playerName\":\"" + name + "\",\"steamID\":\"" + sid + "\"}");
+                } else {
+                    post("input", sid, "{\"event\":\"input\",\"key\":\"" + KEYS[rnd.nextInt(KEYS.length)] +
+                            "\",\"playerName\":\"" + name + "\",\"steamID\":\"" + sid + "\"}");
+                }
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private static String event(String evt, String sid, String name, String extra) {
+        return "{\"event\":\"" + evt + "\",\"playerName\":\"" + name + "\",\"steamID\":\"" + sid + '"' + extra + '}';
+    }
+
+    /* Same shape GatherSceneObjects() emits. */
+    private String sceneJson(int seed) {
+        java.util.Random r = new java.util.Random(seed);
+        StringBuilder sb = new StringBuilder(objectsCount * 220).append('[');
+        for (int i = 0; i < objectsCount; i++) {
+            if (i > 0) sb.append(',');
+            String nm = i == 0 ? "Player_Human" : "Obj_" + i;
+            sb.append("{\"id\":").append(10_000 + i * 7)
+              .append(",\"parentId\":").append(i < 10 ? 0 : 10_000 + (i % 10) * 7)
+              .append(",\"parentName\":\"").append(i < 10 ? "" : "Obj_" + (i % 10)).append('"')
+              .append(",\"name\":\"").append(nm).append('"')
+              .append(",\"x\":").append((float) (r.nextDouble() * 4000 - 2000))
+              .append(",\"y\":").append((float) (r.nextDouble() * 300))
+              .append(",\"z\":").append((float) (r.nextDouble() * 4000 - 2000))
+              .append(",\"rx\":").append((float) (r.nextDouble() * 360))
+              .append(",\"ry\":").append((float) (r.nextDouble() * 360))
+              .append(",\"rz\":").append((float) (r.nextDouble() * 360))
+              .append(",\"components\":[\"Transform\",\"MeshFilter\",\"MeshRenderer\",\"MeshCollider\"]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private void post(String type, String sid, String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        String head = "POST / HTTP/1.1\r\nHost: " + host + ':' + port +
+                "\r\nUser-Agent: UnityPlayer/2017.4.9f1 (UnityWebRequest/1.0, libcurl/7.51.0-DEV)\r\n" +
+                "Accept: */*\r\nContent-Type: application/json\r\n" +
+                "X-DeServer-Event: " + type + "\r\nX-DeServer-SteamID: " + sid + "\r\n" +
+                "Content-Length: " + b.length + "\r\n\r\n";
+        byte[] h = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] req = new byte[h.length + b.length];
+        System.arraycopy(h, 0, req, 0, h.length);
+        System.arraycopy(b, 0, req, h.length, b.length);
+        exchange(type, req);
+    }
+
+    private void exchange(String type, byte[] request) {
+        Latency lat = byType.get(type);
+        long t0 = System.nanoTime();
+        try (Socket s = new Socket()) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(timeoutMs);
+            s.connect(new InetSocketAddress(host, port), timeoutMs);
+            OutputStream out = s.getOutputStream();
+            out.write(request);
+            out.flush();
+
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[8192];
+            int n, total = 0, status = -1;
+            while ((n = in.read(buf)) != -1) {
+                if (status < 0 && total == 0 && n >= 12)
+                    status = Integer.parseInt(new String(buf, 9, 3, StandardCharsets.US_ASCII));
+                total += n;
+            }
+            if (status != 200) { lat.error(); return; }
+            lat.record(System.nanoTime() - t0);
+        } catch (IOException | NumberFormatException e) {
+            lat.error();
+        }
+    }
+
+    private long totalRequests() {
+        long n = 0;
+        for (Latency l : byType.values()) n += l.count();
+        return n;
+    }
+
+    private long totalErrors() {
+        long n = 0;
+        for (Latency l : byType.values()) n += l.errors();
+        return n;
+    }
+
+    /* Reads the server-side gauges exposed at /metrics; min, max and last value per gauge. */
+    private void sampleGauges() {
+        String text;
+        try (Socket s = new Socket()) {
+            s.setSoTimeout(timeoutMs);
+            s.connect(new InetSocketAddress(host, port), timeoutMs);
+            s.getOutputStream().write(("GET /metrics HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            text = new String(s.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return;
+        }
+        for (String line : text.split("\n")) {
+            for (String g : GAUGES) {
+                if (!line.startsWith(g + ' ')) continue;
+                long v;
+                try { v = Long.parseLong(line.substring(g.length() + 1).trim()); }
+                catch (NumberFormatException e) { continue; }
+                synchronized (gaugeSamples) {
+                    long[] s = gaugeSamples.get(g);
+                    if (s == null) gaugeSamples.put(g, new long[]{v, v, v, v});
+                    else { s[1] = Math.max(s[1], v); s[2] = v; s[3] = Math.min(s[3], v); }
+                }
+            }
+        }
+    }
+
+    private String lastGauges() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (gaugeSamples) {
+            for (Map.Entry<String, long[]> e : gaugeSamples.entrySet())
+                sb.append(e.getKey().substring("deserver_".length())).append('=').append(e.getValue()[2]).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    private void report(double elapsed) throws IOException {
+        System.out.println();
+        System.out.printf("[LOAD] %-10s %10s %10s %8s %10s %10s %10s%n",
+                "type", "ok", "req/s", "errors", "p50(µs)", "p99(µs)", "p999(µs)");
+        List<String> json = new ArrayList<>();
+        for (Map.Entry<String, Latency> e : byType.entrySet()) {
+            Latency l = e.getValue();
+            if (l.count() == 0 && l.errors() == 0) continue;
+            System.out.printf("[LOAD] %-10s %10d %10.1f %8d %10d %10d %10d%n",
+                    e.getKey(), l.count(), l.count() / elapsed, l.errors(),
+                    l.percentileMicros(0.50), l.percentileMicros(0.99), l.percentileMicros(0.999));
+            json.add(String.format(java.util.Locale.ROOT,
+                    "\"%s\":{\"ok\":%d,\"errors\":%d,\"rate\":%.2f,\"p50_us\":%d,\"p99_us\":%d,\"p999_us\":%d}",
+                    e.getKey(), l.count(), l.errors(), l.count() / elapsed,
+                    l.percentileMicros(0.50), l.percentileMicros(0.99), l.percentileMicros(0.999)));
+        }
+        long total = totalRequests(), errors = totalErrors();
+        System.out.printf("[LOAD] total %d ok, %d errors (%.2f%%), %.0f req/s over %.1fs%n",
+                total, errors, total + errors == 0 ? 0.0 : 100.0 * errors / (total + errors), total / elapsed, elapsed);
+
+        List<String> gaugeJson = new ArrayList<>();
+        synchronized (gaugeSamples) {
+            for (Map.Entry<String, long[]> e : gaugeSamples.entrySet()) {
+                long[] s = e.getValue();
+                System.out.printf("[LOAD] server %-26s start=%d end=%d max=%d growth=%.1f/s%n",
+                        e.getKey(), s[0], s[2], s[1], (s[2] - s[0]) / elapsed);
+                gaugeJson.add(String.format(java.util.Locale.ROOT,
+                        "\"%s\":{\"start\":%d,\"end\":%d,\"max\":%d,\"growth_per_s\":%.2f}",
+                        e.getKey(), s[0], s[2], s[1], (s[2] - s[0]) / elapsed));
+            }
+        }
+        if (gaugeSamples.isEmpty())
+            System.out.println("[LOAD] server gauges unavailable (is /metrics reachable?)");
+
+        if (jsonOut != null) {
+            try (PrintWriter pw = new PrintWriter(jsonOut, StandardCharsets.UTF_8)) {
+                pw.printf(java.util.Locale.ROOT,
+                        "{\"clients\":%d,\"elapsed_s\":%.2f,\"ok\":%d,\"errors\":%d,\"types\":{%s},\"server\":{%s}}%n",
+                        clients, elapsed, total, errors, String.join(",", json), String.join(",", gaugeJson));
+            }
+            System.out.println("[LOAD] wrote " + jsonOut);
+        }
+    }
+}
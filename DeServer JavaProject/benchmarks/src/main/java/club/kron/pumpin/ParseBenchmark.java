@@ -0,0 +1,53 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    private static final String[] POS_KEYS =
+            {"event", "playerName", "steamID", "x", "y", "z", "rx", "ry", "rz", "camx", "camy", "camz"};
+
+    private String pos, axis, objects;
+
+    @Setup
+    public void load() {
+        pos = Payloads.body("pos.json");
+        axis = Payloads.body("axis.json");
+        objects = Payloads.body("objects.json");
+    }
+
+    @Benchmark
+    public void posEvent(Blackhole bh) {
+        for (String k : POS_KEYS) bh.consume(Main.extractJson(pos, k));
+    }
+
+    @Benchmark
+    public void axisEvent(Blackhole bh) {
+        bh.consume(Main.extractJson(axis, "event"));
+        bh.consume(Main.extractJson(axis, "playerName"));
+        bh.consume(Main.extractJson(axis, "steamID"));
+        bh.consume(Main.extractJson(axis, "axis"));
+        bh.consume(Main.extractJson(axis, "val"));
+    }
+
+    @Benchmark
+    public String objectsData() {
+        return Main.extractJson(objects, "data");
+    }
+
+    @Benchmark
+    public void objectsHeader(Blackhole bh) {
+        bh.consume(Main.extractJson(objects, "event"));
+        bh.consume(Main.extractJson(objects, "playerName"));
+        bh.consume(Main.extractJson(objects, "steamID"));
+    }
+}
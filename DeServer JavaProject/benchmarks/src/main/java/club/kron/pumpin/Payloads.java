@@ -0,0 +1,57 @@
+package club.kron.pumpin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Request bodies captured from ClientManager.cs (same field order and float formatting). */
+final class Payloads {
+
+    private Payloads() {}
+
+    static String body(String name) {
+        try (InputStream in = Payloads.class.getResourceAsStream("/payloads/" + name)) {
+            if (in == null) throw new IllegalArgumentException("No payload " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<String> commands() {
+        List<String> out = new ArrayList<>();
+        for (String l : body("commands.ndjson").split("\n"))
+            if (!l.isBlank()) out.add(l);
+        return out;
+    }
+
+    /* Headers as sent by UnityWebRequest on 2017.4. */
+    static byte[] post(String body) {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        String head = "POST / HTTP/1.1\r\n" +
+                "Host: 127.0.0.1:19299\r\n" +
+                "User-Agent: UnityPlayer/2017.4.9f1 (UnityWebRequest/1.0, libcurl/7.51.0-DEV)\r\n" +
+                "Accept: */*\r\n" +
+                "Accept-Encoding: identity\r\n" +
+                "Content-Type: application/json\r\n" +
+                "X-Unity-Version: 2017.4.9f1\r\n" +
+                "Content-Length: " + b.length + "\r\n\r\n";
+        byte[] h = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] req = new byte[h.length + b.length];
+        System.arraycopy(h, 0, req, 0, h.length);
+        System.arraycopy(b, 0, req, h.length, b.length);
+        return req;
+    }
+
+    static byte[] get(String path) {
+        return ("GET " + path + " HTTP/1.1\r\n" +
+                "Host: 127.0.0.1:19299\r\n" +
+                "User-Agent: UnityPlayer/2017.4.9f1 (UnityWebRequest/1.0, libcurl/7.51.0-DEV)\r\n" +
+                "Accept: */*\r\n" +
+                "Accept-Encoding: identity\r\n" +
+                "X-Unity-Version: 2017.4.9f1\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
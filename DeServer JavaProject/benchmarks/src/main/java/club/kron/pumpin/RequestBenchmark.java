@@ -0,0 +1,51 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* Full in-process request handling: HTTP parse, event dispatch and response, minus the socket. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+
+    @Param({"pos", "axis", "input", "ack", "pause", "objects", "cmd"})
+    public String event;
+
+    private static final String IP = "127.0.0.1";
+
+    private byte[] request;
+    private List<String> commands;
+    private String sid;
+
+    @Setup
+    public void load() throws IOException {
+        String pos = Payloads.body("pos.json");
+        sid = Main.extractJson(pos, "steamID");
+        Main.handleRequest(IP, new ByteArrayInputStream(Payloads.post(pos)), OutputStream.nullOutputStream());
+
+        if ("cmd".equals(event)) {
+            request = Payloads.get("/cmd?steamID=" + sid);
+            commands = Payloads.commands().subList(0, 16);
+        } else {
+            String body = Payloads.body(event + ".json");
+            if ("ack".equals(event)) Main.suppressAckLabel(Main.extractJson(body, "label"));
+            request = Payloads.post(body);
+        }
+    }
+
+    @Benchmark
+    public void handle() throws IOException {
+        if (commands != null)
+            for (String c : commands) Main.enqueueCommand(sid, c);
+        Main.handleRequest(IP, new ByteArrayInputStream(request), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,44 @@
+package club.kron.pumpin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/* Steady-state per-event session bookkeeping (last-seen, active set) across many connected players. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+
+    @Param({"1", "100", "5000"})
+    public int players;
+
+    private byte[][] requests;
+    private int next;
+
+    @Setup
+    public void connect() throws IOException {
+        String pos = Payloads.body("pos.json");
+        String sid = Main.extractJson(pos, "steamID");
+        requests = new byte[players][];
+        for (int i = 0; i < players; i++) {
+            requests[i] = Payloads.post(pos.replace(sid, sid + i));
+            Main.handleRequest("10.0.0." + (i & 0xff), new ByteArrayInputStream(requests[i]),
+                    OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public void posFromConnectedPlayer() throws IOException {
+        int i = next++;
+        if (next == players) next = 0;
+        Main.handleRequest("10.0.0." + (i & 0xff), new ByteArrayInputStream(requests[i]),
+                OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,138 @@
+package club.kron.pumpin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Token buckets in front of event dispatch: one per client IP, and one per SteamID and event type.
+ * Each bucket is a single CAS'd "theoretical arrival time" (GCRA), so admitting a request is one
+ * map lookup and one compare-and-set, with no locks and no allocation.
+ *
+ * server.properties: admission=false turns it off; admission-ip-rate / admission-ip-burst;
+ * admission-<event>-rate / admission-<event>-burst for axis, input, pos, objects, ack, pause,
+ * connect, disconnect, cmd and other. A rate of 0 means unlimited.
+ */
+final class Admission {
+
+    static final String[] EVENTS =
+            {"axis", "input", "pos", "objects", "ack", "pause", "connect", "disconnect", "cmd", "other"};
+
+    /*                                    axis input pos  objects ack  pause connect disconnect cmd other */
+    private static final int[] DEFAULT_RATE  = {200, 50,  30,  5,      100, 10,   5,      5,         20, 20};
+    private static final int[] DEFAULT_BURST = {400, 100, 60,  10,     200, 20,   10,     10,        40, 40};
+
+    private static final long IDLE_NANOS = 60_000_000_000L;
+
+    static final class Bucket {
+        private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+        private final long interval, tolerance;
+
+        Bucket(long interval, long tolerance) { this.interval = interval; this.tolerance = tolerance; }
+
+        /* 0 when admitted, otherwise nanoseconds until the next token. */
+        long acquire(long now) {
+            for (;;) {
+                long t = tat.get();
+                long base = t == Long.MIN_VALUE || t - now < 0 ? now : t;
+                long over = base - now - tolerance;
+                if (over > 0) return over;
+                if (tat.compareAndSet(t, base + interval)) return 0;
+            }
+        }
+
+        boolean idle(long now) {
+            long t = tat.get();
+            return t == Long.MIN_VALUE || now - t > IDLE_NANOS;
+        }
+    }
+
+    private static final Map<String, Bucket> BY_IP = new ConcurrentHashMap<>();
+    private static final Map<String, Bucket[]> BY_SESSION = new ConcurrentHashMap<>();
+
+    private static boolean enabled;
+    private static long ipInterval, ipTolerance;
+    private static final long[] interval = new long[EVENTS.length];
+    private static final long[] tolerance = new long[EVENTS.length];
+
+    private static final Metrics.Counter ipRejected =
+            Metrics.counter("deserver_admission_rejected_total", "Requests rejected with 429",
+                    Metrics.label("scope", "ip"));
+    private static final Metrics.Counter[] sessionRejected = new Metrics.Counter[EVENTS.length];
+
+    static {
+        for (int i = 0; i < EVENTS.length; i++)
+            sessionRejected[i] = Metrics.counter("deserver_admission_rejected_total", "Requests rejected with 429",
+                    Metrics.label("scope", "session") + ',' + Metrics.label("event", EVENTS[i]));
+        Metrics.gauge("deserver_admission_buckets", "Live admission buckets (IPs + sessions)",
+                () -> BY_IP.size() + BY_SESSION.size());
+    }
+
+    private Admission() {}
+
+    static void configure() {
+        enabled = Boolean.parseBoolean(Main.property("admission", "true"));
+        long[] ip = limits(Main.intProperty("admission-ip-rate", 1000), Main.intProperty("admission-ip-burst", 2000));
+        ipInterval = ip[0];
+        ipTolerance = ip[1];
+        for (int i = 0; i < EVENTS.length; i++) {
+            long[] l = limits(Main.intProperty("admission-" + EVENTS[i] + "-rate", DEFAULT_RATE[i]),
+                              Main.intProperty("admission-" + EVENTS[i] + "-burst", DEFAULT_BURST[i]));
+            interval[i] = l[0];
+            tolerance[i] = l[1];
+        }
+        BY_IP.clear();
+        BY_SESSION.clear();
+        if (enabled) Main.log("[INFO] Admission control on (per IP " +
+                Main.intProperty("admission-ip-rate", 1000) + "/s).");
+    }
+
+    /* {interval, tolerance} in nanoseconds; interval 0 = unlimited. */
+    private static long[] limits(int rate, int burst) {
+        if (rate <= 0) return new long[]{0, 0};
+        long iv = 1_000_000_000L / rate;
+        return new long[]{iv, iv * (Math.max(1, burst) - 1)};
+    }
+
+    static int eventIndex(String evt) {
+        for (int i = 0; i < EVENTS.length - 1; i++)
+            if (EVENTS[i].equals(evt)) return i;
+        return EVENTS.length - 1;
+    }
+
+    /* 0 when admitted, otherwise the wait in nanoseconds. */
+    static long admitIp(String ip) {
+        if (!enabled || ipInterval == 0) return 0;
+        long now = System.nanoTime();
+        long wait = BY_IP.computeIfAbsent(ip, k -> new Bucket(ipInterval, ipTolerance)).acquire(now);
+        if (wait > 0) ipRejected.inc();
+        return wait;
+    }
+
+    static long admitSession(String steamID, String evt) {
+        if (!enabled || steamID == null || steamID.isEmpty()) return 0;
+        int e = eventIndex(evt);
+        if (interval[e] == 0) return 0;
+
+        Bucket[] buckets = BY_SESSION.computeIfAbsent(steamID, k -> new Bucket[EVENTS.length]);
+        Bucket b = buckets[e];
+        if (b == null) {
+            synchronized (buckets) {
+                if ((b = buckets[e]) == null) buckets[e] = b = new Bucket(interval[e], tolerance[e]);
+            }
+        }
+        long wait = b.acquire(System.nanoTime());
+        if (wait > 0) sessionRejected[e].inc();
+        return wait;
+    }
+
+    static void sweep() {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        BY_IP.values().removeIf(b -> b.idle(now));
+        BY_SESSION.values().removeIf(bs -> {
+            for (Bucket b : bs) if (b != null && !b.idle(now)) return false;
+            return true;
+        });
+    }
+}
@@ -0,0 +1,409 @@
+package club.kron.pumpin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Running statistics fed by the pos and objects handlers, so extensions can ask "where do players spend
+ * time / reset" without re-scanning snapshots:
+ *
+ *   grid cells   agg-cell-size (default 10) squares on the x/z plane: position samples, dwell time and
+ *                resets (a jump of more than agg-reset-distance, default 25, or the player model leaving
+ *                the objects snapshot – a crash or respawn), counted where the player was before it
+ *   zones        named boxes from agg-zones-file (default "zones.txt", "name minX minY minZ maxX maxY
+ *                maxZ" per line, edited with "zone add|remove"): total and per-player dwell, occupancy
+ *   players      distance travelled, not counting resets
+ *
+ * Dwell between two updates is charged to where the player was, capped at agg-max-gap-ms (5000). Cells
+ * live in 64 independently locked stripes (at most agg-max-cells, default 200000, then new cells are not
+ * tracked); zones and players use atomics, so updates from many request threads do not serialise.
+ */
+final class Aggregates {
+
+    static final int SAMPLES = 0, DWELL_MS = 1, RESETS = 2;
+
+    private static final int STRIPES = 64;
+
+    private static final class Stripe {
+        final Map<Long, long[]> cells = new HashMap<>();
+    }
+
+    private static final Stripe[] GRID = new Stripe[STRIPES];
+    static { for (int i = 0; i < STRIPES; i++) GRID[i] = new Stripe(); }
+
+    private static final AtomicInteger cellCount = new AtomicInteger();
+
+    static final class Zone {
+        final String name;
+        final double minX, minY, minZ, maxX, maxY, maxZ;
+        final LongAdder dwellMillis = new LongAdder();
+        final AtomicInteger inside = new AtomicInteger();
+
+        Zone(String name, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            this.name = name;
+            this.minX = Math.min(minX, maxX); this.maxX = Math.max(minX, maxX);
+            this.minY = Math.min(minY, maxY); this.maxY = Math.max(minY, maxY);
+            this.minZ = Math.min(minZ, maxZ); this.maxZ = Math.max(minZ, maxZ);
+        }
+
+        boolean contains(double x, double y, double z) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+        }
+    }
+
+    private static volatile Zone[] zones = new Zone[0];
+
+    private static final class Player {
+        double x, y, z;
+        long at;
+        boolean seen, hadModel, dead;
+        final AtomicLong distanceMm = new AtomicLong();
+        final Map<String, Long> zoneDwell = new ConcurrentHashMap<>();
+        final List<Zone> in = new ArrayList<>(2);
+    }
+
+    private static final Map<String, Player> PLAYERS = new ConcurrentHashMap<>();
+
+    private static boolean enabled = true;
+    private static double cellSize = 10, resetDistance = 25;
+    private static long maxGapMillis = 5000;
+    private static int maxCells = 200_000;
+    private static File zonesFile = new File("zones.txt");
+
+    private static final Metrics.Counter dropped =
+            Metrics.counter("deserver_agg_cells_dropped_total", "Samples not tracked because agg-max-cells was reached");
+
+    static {
+        Metrics.gauge("deserver_agg_cells", "Grid cells with statistics", cellCount::get);
+    }
+
+    private Aggregates() {}
+
+    static void configure() {
+        enabled = Boolean.parseBoolean(Main.property("aggregates", "true"));
+        cellSize = Math.max(0.5, parseDouble(Main.property("agg-cell-size", "10"), 10));
+        resetDistance = Math.max(1, parseDouble(Main.property("agg-reset-distance", "25"), 25));
+        maxGapMillis = Math.max(1, Main.intProperty("agg-max-gap-ms", 5000));
+        maxCells = Math.max(1, Main.intProperty("agg-max-cells", 200_000));
+        zonesFile = new File(Main.property("agg-zones-file", "zones.txt"));
+        loadZones();
+    }
+
+    /* ---- updates ---- */
+
+    static void pos(String steamID, double x, double y, double z) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        Player p = PLAYERS.computeIfAbsent(steamID, k -> new Player());
+        synchronized (p) {
+            if (p.dead) {
+                pos(steamID, x, y, z);
+                return;
+            }
+            if (p.seen) {
+                long dt = Math.min(maxGapMillis, Math.max(0, now - p.at));
+                double step = Math.sqrt(sq(x - p.x) + sq(y - p.y) + sq(z - p.z));
+                if (step > resetDistance) {
+                    add(p.x, p.z, RESETS, 1);
+                } else {
+                    p.distanceMm.addAndGet(Math.round(step * 1000));
+                }
+                add(p.x, p.z, DWELL_MS, dt);
+                for (Zone zn : p.in) {
+                    zn.dwellMillis.add(dt);
+                    p.zoneDwell.merge(zn.name, dt, Long::sum);
+                }
+            }
+            p.x = x; p.y = y; p.z = z;
+            p.at = now;
+            p.seen = true;
+            add(x, z, SAMPLES, 1);
+            enterZones(p);
+        }
+    }
+
+    /* A player model that disappears from the snapshot counts as a reset where the player last was. */
+    static void objects(String steamID, boolean hasPlayerModel) {
+        if (!enabled) return;
+        Player p = PLAYERS.get(steamID);
+        if (p == null) return;
+        synchronized (p) {
+            if (p.hadModel && !hasPlayerModel && p.seen) add(p.x, p.z, RESETS, 1);
+            p.hadModel = hasPlayerModel;
+        }
+    }
+
+    static void remove(String steamID) {
+        Player p = PLAYERS.remove(steamID);
+        if (p == null) return;
+        synchronized (p) {
+            p.dead = true;
+            for (Zone zn : p.in) zn.inside.decrementAndGet();
+            p.in.clear();
+        }
+    }
+
+    private static void enterZones(Player p) {
+        Zone[] all = zones;
+        for (int i = p.in.size() - 1; i >= 0; i--) {
+            Zone zn = p.in.get(i);
+            if (!zn.contains(p.x, p.y, p.z) || !isCurrent(zn, all)) {
+                p.in.remove(i);
+                zn.inside.decrementAndGet();
+            }
+        }
+        for (Zone zn : all) {
+            if (zn.contains(p.x, p.y, p.z) && !p.in.contains(zn)) {
+                p.in.add(zn);
+                zn.inside.incrementAndGet();
+            }
+        }
+    }
+
+    private static boolean isCurrent(Zone zn, Zone[] all) {
+        for (Zone z : all) if (z == zn) return true;
+        return false;
+    }
+
+    private static void add(double x, double z, int field, long n) {
+        long key = cellKey(x, z);
+        Stripe s = GRID[stripe(key)];
+        synchronized (s) {
+            long[] c = s.cells.get(key);
+            if (c == null) {
+                if (cellCount.get() >= maxCells) { dropped.inc(); return; }
+                s.cells.put(key, c = new long[3]);
+                cellCount.incrementAndGet();
+            }
+            c[field] += n;
+        }
+    }
+
+    private static long cellKey(double x, double z) {
+        long cx = (long) Math.floor(x / cellSize), cz = (long) Math.floor(z / cellSize);
+        return cx << 32 | (cz & 0xFFFFFFFFL);
+    }
+
+    private static int stripe(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58);
+    }
+
+    /* ---- queries, each a single lookup ---- */
+
+    /* {samples, dwell ms, resets} of the cell containing (x, z). */
+    static long[] cell(double x, double z) {
+        long key = cellKey(x, z);
+        Stripe s = GRID[stripe(key)];
+        synchronized (s) {
+            long[] c = s.cells.get(key);
+            return c == null ? new long[3] : c.clone();
+        }
+    }
+
+    static double cellSize() { return cellSize; }
+
+    static Zone zone(String name) {
+        for (Zone z : zones) if (z.name.equalsIgnoreCase(name)) return z;
+        return null;
+    }
+
+    static long playerZoneDwell(String steamID, String zone) {
+        Player p = PLAYERS.get(steamID);
+        Long v = p == null ? null : p.zoneDwell.get(zone);
+        return v == null ? 0 : v;
+    }
+
+    /* Meters travelled by a connected player; -1 when unknown. */
+    static double distance(String steamID) {
+        Player p = PLAYERS.get(steamID);
+        return p == null ? -1 : p.distanceMm.get() / 1000.0;
+    }
+
+    /* ---- zones ---- */
+
+    static void defineZone(String name, double minX, double minY, double minZ,
+                           double maxX, double maxY, double maxZ) {
+        Zone zn = new Zone(name, minX, minY, minZ, maxX, maxY, maxZ);
+        synchronized (Aggregates.class) {
+            List<Zone> l = new ArrayList<>(List.of(zones));
+            l.removeIf(z -> z.name.equalsIgnoreCase(name));
+            l.add(zn);
+            zones = l.toArray(new Zone[0]);
+            saveZones();
+        }
+    }
+
+    static boolean removeZone(String name) {
+        synchronized (Aggregates.class) {
+            List<Zone> l = new ArrayList<>(List.of(zones));
+            if (!l.removeIf(z -> z.name.equalsIgnoreCase(name))) return false;
+            zones = l.toArray(new Zone[0]);
+            saveZones();
+            return true;
+        }
+    }
+
+    private static void loadZones() {
+        List<Zone> l = new ArrayList<>();
+        if (zonesFile.exists()) {
+            try {
+                for (String line : Files.readAllLines(zonesFile.toPath(), StandardCharsets.UTF_8)) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] t = line.split("\\s+");
+                    try {
+                        l.add(new Zone(t[0], Double.parseDouble(t[1]), Double.parseDouble(t[2]), Double.parseDouble(t[3]),
+                                Double.parseDouble(t[4]), Double.parseDouble(t[5]), Double.parseDouble(t[6])));
+                    } catch (RuntimeException e) {
+                        Main.log("[WARN] Ignoring zone line '" + line + "' in " + zonesFile.getPath());
+                    }
+                }
+            } catch (IOException e) {
+                Main.log("[WARN] Could not read " + zonesFile.getPath() + ": " + e.getMessage());
+            }
+        }
+        synchronized (Aggregates.class) { zones = l.toArray(new Zone[0]); }
+    }
+
+    private static void saveZones() {
+        try (PrintWriter pw = new PrintWriter(zonesFile, StandardCharsets.UTF_8)) {
+            pw.println("# name minX minY minZ maxX maxY maxZ");
+            for (Zone z : zones)
+                pw.println(String.format(Locale.ROOT, "%s %s %s %s %s %s %s", z.name,
+                        z.minX, z.minY, z.minZ, z.maxX, z.maxY, z.maxZ));
+        } catch (IOException e) {
+            Main.log("[WARN] Could not write " + zonesFile.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /* ---- export ---- */
+
+    /* Writes everything as JSON; cells are [x, z, samples, dwellMs, resets] with x/z the cell's corner. */
+    static File export(File target) throws IOException {
+        if (target == null)
+            target = new File("aggregates-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        try (PrintWriter pw = new PrintWriter(target, StandardCharsets.UTF_8)) {
+            pw.print(String.format(Locale.ROOT, "{\"cellSize\":%s,\"cells\":[", cellSize));
+            boolean first = true;
+            for (Stripe s : GRID) {
+                List<long[]> rows = new ArrayList<>();
+                synchronized (s) {
+                    for (Map.Entry<Long, long[]> e : s.cells.entrySet()) {
+                        long[] c = e.getValue();
+                        rows.add(new long[]{e.getKey() >> 32, (int) (long) e.getKey(), c[0], c[1], c[2]});
+                    }
+                }
+                for (long[] r : rows) {
+                    pw.print(first ? "" : ",");
+                    pw.print(String.format(Locale.ROOT, "[%s,%s,%d,%d,%d]",
+                            r[0] * cellSize, r[1] * cellSize, r[2], r[3], r[4]));
+                    first = false;
+                }
+            }
+            pw.print("],\"zones\":{");
+            first = true;
+            for (Zone z : zones) {
+                pw.print((first ? "" : ",") + Main.jsonString(z.name) + ":{\"dwellMs\":" + z.dwellMillis.sum() +
+                        ",\"inside\":" + z.inside.get() + "}");
+                first = false;
+            }
+            pw.print("},\"players\":{");
+            first = true;
+            for (Map.Entry<String, Player> e : PLAYERS.entrySet()) {
+                Player p = e.getValue();
+                StringBuilder zd = new StringBuilder();
+                for (Map.Entry<String, Long> d : p.zoneDwell.entrySet())
+                    zd.append(zd.length() == 0 ? "" : ",").append(Main.jsonString(d.getKey())).append(':').append(d.getValue());
+                pw.print((first ? "" : ",") + Main.jsonString(e.getKey()) + ":{\"distance\":" +
+                        String.format(Locale.ROOT, "%.3f", p.distanceMm.get() / 1000.0) + ",\"zoneDwellMs\":{" + zd + "}}");
+                first = false;
+            }
+            pw.println("}}");
+        }
+        return target;
+    }
+
+    static void reset() {
+        for (Stripe s : GRID) {
+            synchronized (s) {
+                cellCount.addAndGet(-s.cells.size());
+                s.cells.clear();
+            }
+        }
+        for (Zone z : zones) z.dwellMillis.reset();
+        for (Player p : PLAYERS.values()) {
+            p.distanceMm.set(0);
+            p.zoneDwell.clear();
+        }
+    }
+
+    /* ---- console ---- */
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0) return false;
+        if ("zone".equalsIgnoreCase(tok[0])) {
+            String sub = tok.length > 1 ? tok[1].toLowerCase() : "list";
+            if ("add".equals(sub) && tok.length == 9) {
+                try {
+                    defineZone(tok[2], Double.parseDouble(tok[3]), Double.parseDouble(tok[4]), Double.parseDouble(tok[5]),
+                            Double.parseDouble(tok[6]), Double.parseDouble(tok[7]), Double.parseDouble(tok[8]));
+                    Main.log("[INFO] Zone '" + tok[2] + "' saved to " + zonesFile.getPath());
+                } catch (NumberFormatException e) {
+                    Main.log("[WARN] Usage: zone add <name> minX minY minZ maxX maxY maxZ");
+                }
+            } else if ("remove".equals(sub) && tok.length == 3) {
+                Main.log(removeZone(tok[2]) ? "[INFO] Zone '" + tok[2] + "' removed" : "[WARN] No zone '" + tok[2] + "'");
+            } else if ("list".equals(sub)) {
+                if (zones.length == 0) Main.log("[INFO] No zones (zone add <name> minX minY minZ maxX maxY maxZ)");
+                for (Zone z : zones)
+                    Main.log(String.format(Locale.ROOT, "[INFO]   %-16s (%.1f,%.1f,%.1f)-(%.1f,%.1f,%.1f)  inside %d, dwell %.1f s",
+                            z.name, z.minX, z.minY, z.minZ, z.maxX, z.maxY, z.maxZ, z.inside.get(), z.dwellMillis.sum() / 1000.0));
+            } else {
+                Main.log("[WARN] Usage: zone [list | add <name> minX minY minZ maxX maxY maxZ | remove <name>]");
+            }
+            return true;
+        }
+        if (!"agg".equalsIgnoreCase(tok[0])) return false;
+        String sub = tok.length > 1 ? tok[1].toLowerCase() : "status";
+        switch (sub) {
+            case "export":
+                try {
+                    File f = export(tok.length > 2 ? new File(tok[2]) : null);
+                    Main.log("[INFO] Aggregates written to " + f.getPath());
+                } catch (IOException e) {
+                    Main.log("[WARN] Aggregates export failed: " + e.getMessage());
+                }
+                break;
+            case "reset":
+                reset();
+                Main.log("[INFO] Aggregates reset.");
+                break;
+            default:
+                Main.log("[INFO] Aggregates " + (enabled ? "on" : "off") + " – " + cellCount.get() + " cells of " +
+                        cellSize + " m, " + zones.length + " zones, " + PLAYERS.size() + " players (agg export [file] | reset)");
+        }
+        return true;
+    }
+
+    private static double sq(double d) { return d * d; }
+
+    private static double parseDouble(String s, double def) {
+        try { return Double.parseDouble(s.trim()); } catch (NumberFormatException e) { return def; }
+    }
+}
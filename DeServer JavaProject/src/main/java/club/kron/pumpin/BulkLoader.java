@@ -0,0 +1,281 @@
+package club.kron.pumpin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * POST /admin/bulk – streams create/edit commands into client queues.
+ *
+ * The request must carry X-DeServer-Token with the contents of admin-token-file (default
+ * "admin.token", generated on first start and readable only by the server's user). The body is
+ * read line by line as it arrives (Content-Length, chunked, or until the sender closes):
+ *
+ *   create <steamID|*> <src> x y z rx ry rz [...]     console syntax, "*" = every connected client
+ *   edit   <steamID|*> <target> [...]
+ *   {"steamID":"…","cmd":"…",…}                       a ready command; forwarded as is
+ *   # comment
+ *
+ * Parsed commands are grouped per client and queued every bulk-batch lines (default 512), one
+ * hand-off per client and batch. The response streams one JSON line per rejected line, a progress
+ * line about once a second, and a final summary; the connection is served on its own thread.
+ */
+final class BulkLoader {
+
+    private static final AtomicInteger streams = new AtomicInteger();
+
+    private static final Metrics.Counter linesOk =
+            Metrics.counter("deserver_bulk_lines_total", "Lines received on /admin/bulk", Metrics.label("result", "ok"));
+    private static final Metrics.Counter linesFailed =
+            Metrics.counter("deserver_bulk_lines_total", "Lines received on /admin/bulk", Metrics.label("result", "error"));
+    private static final Metrics.Counter queued =
+            Metrics.counter("deserver_bulk_commands_queued_total", "Commands queued through /admin/bulk");
+
+    private static volatile byte[] token;
+
+    private BulkLoader() {}
+
+    /* Loads or creates the admin token. */
+    static void configure() {
+        File f = new File(Main.property("admin-token-file", "admin.token"));
+        try {
+            if (!f.exists()) {
+                byte[] raw = new byte[24];
+                new SecureRandom().nextBytes(raw);
+                Files.writeString(f.toPath(), HexFormat.of().formatHex(raw) + System.lineSeparator());
+                f.setReadable(false, false);
+                f.setReadable(true, true);
+                f.setWritable(false, false);
+                f.setWritable(true, true);
+                Main.log("[INFO] Created admin token in " + f.getPath() + " (for POST /admin/bulk).");
+            }
+            token = Files.readString(f.toPath()).trim().getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            token = null;
+            Main.log("[WARN] Admin token unavailable (" + e.getMessage() + "); /admin/bulk is disabled.");
+        }
+    }
+
+    /* True when presented matches the admin token. */
+    static boolean authorized(String presented) {
+        byte[] expected = token;
+        return expected != null && presented != null &&
+                MessageDigest.isEqual(expected, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Called by the request handler after the headers. Answers and returns false when the request is
+     * refused; otherwise takes over in/out (closing them when done) and returns true.
+     */
+    static boolean begin(String clientIp, String presented, long contentLength, boolean chunked,
+                         InputStream in, OutputStream rawOut) throws IOException {
+        if (!authorized(presented)) {
+            HttpResponse.start(HttpResponse.FORBIDDEN).send(rawOut, HttpResponse.TEXT, "Forbidden");
+            Main.log("[WARN] Rejected /admin/bulk from " + clientIp + " (bad or missing token)");
+            return false;
+        }
+        int max = Math.max(1, Main.intProperty("bulk-max-streams", 4));
+        if (streams.incrementAndGet() > max) {
+            streams.decrementAndGet();
+            HttpResponse.start(HttpResponse.UNAVAILABLE).send(rawOut, HttpResponse.TEXT, "Too many bulk streams");
+            return false;
+        }
+
+        Body body = new Body(in, chunked, chunked ? 0 : contentLength < 0 ? Long.MAX_VALUE : contentLength);
+        Thread t = new Thread(() -> {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(rawOut, StandardCharsets.UTF_8));
+            try {
+                HttpResponse.start(HttpResponse.OK).stream(rawOut, HttpResponse.NDJSON);
+                run(clientIp, body, out);
+            } catch (IOException e) {
+                Main.log("[WARN] Bulk stream from " + clientIp + " aborted: " + e.getMessage());
+            } finally {
+                streams.decrementAndGet();
+                out.close();
+                try { in.close(); } catch (IOException ignore) {}
+            }
+        }, "bulk-" + clientIp);
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    private static void run(String clientIp, Body body, PrintWriter out) throws IOException {
+        int batchSize = Math.max(1, Main.intProperty("bulk-batch", 512));
+        int maxLine = Math.max(256, Main.intProperty("bulk-max-line", 65536));
+        long started = System.nanoTime(), lastProgress = started;
+
+        Map<String, List<String>> batch = new LinkedHashMap<>();
+        Set<String> clients = new TreeSet<>();
+        List<String> everyone = connected();
+        long lines = 0, ok = 0, errors = 0, commands = 0;
+        int pending = 0;
+
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        for (boolean more = true; more; ) {
+            line.reset();
+            boolean tooLong = false;
+            int c;
+            while ((c = body.read()) != -1 && c != '\n') {
+                if (line.size() < maxLine) line.write(c);
+                else tooLong = true;
+            }
+            more = c != -1;
+            if (!more && line.size() == 0) break;
+            lines++;
+
+            String text = line.toString(StandardCharsets.UTF_8).trim();
+            if (text.isEmpty() || text.charAt(0) == '#') continue;
+
+            String error = null;
+            try {
+                if (tooLong) throw new IllegalArgumentException("line longer than " + maxLine + " bytes");
+                String sid, json;
+                if (text.charAt(0) == '{') {
+                    sid = Main.extractJson(text, "steamID");
+                    if (sid.isEmpty()) throw new IllegalArgumentException("missing \"steamID\"");
+                    if (Main.extractJson(text, "cmd").isEmpty()) throw new IllegalArgumentException("missing \"cmd\"");
+                    json = text;
+                } else {
+                    String[] tok = text.split("\\s+");
+                    java.util.function.Consumer<String> strict = t -> {
+                        throw new IllegalArgumentException("unknown token '" + t + "'");
+                    };
+                    if ("create".equalsIgnoreCase(tok[0]))    json = Main.createCommandJson(tok, strict);
+                    else if ("edit".equalsIgnoreCase(tok[0])) json = Main.editCommandJson(tok, strict);
+                    else throw new IllegalArgumentException("unknown command '" + tok[0] + "' (create, edit or JSON)");
+                    sid = tok[1];
+                }
+                for (String target : "*".equals(sid) ? everyone : List.of(sid)) {
+                    batch.computeIfAbsent(target, k -> new ArrayList<>()).add(json);
+                    pending++;
+                }
+                ok++;
+                linesOk.inc();
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            if (error != null) {
+                errors++;
+                linesFailed.inc();
+                out.print("{\"line\":" + lines + ",\"error\":" + Main.jsonString(error) + "}\n");
+                out.flush();
+            }
+
+            if (pending >= batchSize || !more) {
+                commands += flush(batch, clients);
+                pending = 0;
+                everyone = connected();
+            }
+            long now = System.nanoTime();
+            if (now - lastProgress >= 1_000_000_000L) {
+                lastProgress = now;
+                out.print(String.format(java.util.Locale.ROOT,
+                        "{\"lines\":%d,\"queued\":%d,\"errors\":%d,\"linesPerSec\":%.0f}\n",
+                        lines, commands, errors, lines / ((now - started) / 1e9)));
+                out.flush();
+            }
+            if (out.checkError()) throw new IOException("client went away after " + lines + " lines");
+        }
+        commands += flush(batch, clients);
+
+        long ms = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        out.print(String.format(java.util.Locale.ROOT,
+                "{\"done\":true,\"lines\":%d,\"ok\":%d,\"errors\":%d,\"queued\":%d,\"clients\":%d,\"ms\":%d,\"linesPerSec\":%.0f}\n",
+                lines, ok, errors, commands, clients.size(), ms, lines * 1000.0 / ms));
+        out.flush();
+        Main.log("[INFO] Bulk from " + clientIp + ": " + lines + " lines, " + commands + " commands queued for " +
+                clients.size() + " client(s), " + errors + " error(s) in " + ms + " ms");
+    }
+
+    private static long flush(Map<String, List<String>> batch, Set<String> clients) {
+        long n = 0;
+        for (Map.Entry<String, List<String>> e : batch.entrySet()) {
+            Main.enqueueCommands(e.getKey(), e.getValue(), CommandLanes.BULK);
+            clients.add(e.getKey());
+            n += e.getValue().size();
+        }
+        batch.clear();
+        queued.add(n);
+        return n;
+    }
+
+    private static List<String> connected() {
+        Set<String> active = Main.getActiveClients();
+        String[] keys;
+        synchronized (active) { keys = active.toArray(new String[0]); }
+        Set<String> ids = new TreeSet<>();
+        for (String key : keys) ids.add(key.split("\\|", 3)[1]);
+        return new ArrayList<>(ids);
+    }
+
+    /* Bytes of the request body, counted down by Content-Length or by chunk sizes. */
+    private static final class Body {
+        private final InputStream in;
+        private final boolean chunked;
+        private long remaining;
+        private boolean eof, firstChunk = true;
+
+        Body(InputStream in, boolean chunked, long length) {
+            this.in = new BufferedInputStream(in);
+            this.chunked = chunked;
+            this.remaining = length;
+        }
+
+        int read() throws IOException {
+            while (!eof && remaining <= 0) {
+                if (!chunked) { eof = true; break; }
+                if (!firstChunk) readLine();                   // CRLF closing the previous chunk
+                firstChunk = false;
+                String size = readLine();
+                if (size == null) { eof = true; break; }
+                int semi = size.indexOf(';');
+                try {
+                    remaining = Long.parseLong((semi < 0 ? size : size.substring(0, semi)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("bad chunk size '" + size + "'");
+                }
+                if (remaining == 0) {
+                    for (String t; (t = readLine()) != null && !t.isEmpty(); ) { }   // trailers
+                    eof = true;
+                }
+            }
+            if (eof) return -1;
+            int c = in.read();
+            if (c == -1) {
+                eof = true;
+                return -1;
+            }
+            remaining--;
+            return c;
+        }
+
+        /* A chunk-size or trailer line (ASCII), without its line ending; null at end of stream. */
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder(16);
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                if (sb.length() >= 4096) throw new IOException("chunk header line too long");
+                if (c != '\r') sb.append((char) c);
+            }
+            return c == -1 && sb.length() == 0 ? null : sb.toString();
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package club.kron.pumpin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Clustered mode: every node owns the steamIDs that hash onto its segments of a consistent-hash ring.
+ * State for a steamID only lives on its owner; other nodes forward HTTP events, /cmd polls, queued
+ * commands and ServerAPI reads over a small framed TCP protocol. Membership is heartbeat based and
+ * sessions are handed off to their new owner whenever the ring changes. Each heartbeat also refreshes a
+ * copy of every member's active clients, so getActiveClients() never waits on the network; it may lag
+ * by about a heartbeat.
+ *
+ * server.properties: cluster-port (0 = standalone), cluster-host, cluster-seeds=host:port,...,
+ * cluster-secret (required, the same on every node), cluster-max-frame-mb (64).
+ *
+ * Every connection starts with a challenge: the accepting node sends 16 random bytes and the caller
+ * answers with their HMAC-SHA256 under cluster-secret; anything else is dropped before a frame is read.
+ * Frames larger than cluster-max-frame-mb in total are refused.
+ */
+final class Cluster {
+
+    private static final int VNODES = 64;
+    private static final long HEARTBEAT_MS = 1_000;
+    private static final long MEMBER_TIMEOUT_MS = 4_000;
+    private static final int CONNECT_TIMEOUT_MS = 1_000;
+    private static final int READ_TIMEOUT_MS = 3_000;
+
+    private static final byte HELLO = 1, LEAVE = 2, ENQUEUE = 3, EVENT = 4, POLL = 5,
+            IS_PAUSED = 6, IS_RUNNING = 7, OBJECTS = 8, INPUTS = 9, ACTIVE = 10, HANDOFF = 11;
+    private static final int NONCE_BYTES = 16, MAC_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final String[] OP_NAMES =
+            {"?", "hello", "leave", "enqueue", "event", "poll", "paused", "running", "objects", "inputs", "active", "handoff"};
+
+    private static final class Member {
+        final String id;
+        final String host;
+        final int port;
+        volatile long lastSeen = System.currentTimeMillis();
+        volatile String[] active = new String[0];       // its active-client keys as of the last heartbeat
+        final ConcurrentLinkedQueue<Conn> pool = new ConcurrentLinkedQueue<>();
+
+        Member(String id) {
+            this.id = id;
+            int c = id.lastIndexOf(':');
+            this.host = id.substring(0, c);
+            this.port = Integer.parseInt(id.substring(c + 1));
+        }
+    }
+
+    private static final class Conn {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        Conn(Socket s) throws IOException {
+            socket = s;
+            in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        }
+        void close() { try { socket.close(); } catch (IOException ignore) {} }
+    }
+
+    private static final class Ring {
+        final int[] points;
+        final Member[] owners;
+        Ring(int[] points, Member[] owners) { this.points = points; this.owners = owners; }
+
+        Member ownerOf(String sid) {
+            if (points.length == 0) return null;
+            int i = Arrays.binarySearch(points, hash(sid));
+            if (i < 0) i = -i - 1;
+            return owners[i == points.length ? 0 : i];
+        }
+    }
+
+    private static final Map<String, Member> MEMBERS = new ConcurrentHashMap<>();
+    private static final Set<String> CONTACTS = ConcurrentHashMap.newKeySet();
+    private static final Object RING_LOCK = new Object();
+    private static final Set<String> REJECTED = ConcurrentHashMap.newKeySet();
+
+    private static volatile Member self;
+    private static volatile Ring ring = new Ring(new int[0], new Member[0]);
+    private static volatile boolean leaving;
+    private static ServerSocket listener;
+    private static ExecutorService workers;
+    private static byte[] secret;
+    private static long maxFrameBytes = 64L << 20;
+
+    private static final Metrics.Counter authFailures = Metrics.counter("deserver_cluster_auth_failures_total",
+            "Cluster connections dropped for a wrong or missing cluster-secret");
+
+    private Cluster() {}
+
+    static void start() {
+        int port = Main.intProperty("cluster-port", 0);
+        if (port <= 0) return;
+
+        String key = Main.property("cluster-secret", "").trim();
+        if (key.length() < 16) {
+            Main.log("[ERROR] cluster-secret must be set to at least 16 characters, the same on every node. Running standalone.");
+            return;
+        }
+        secret = key.getBytes(StandardCharsets.UTF_8);
+        maxFrameBytes = Math.max(1, Main.intProperty("cluster-max-frame-mb", 64)) * (1L << 20);
+
+        String bind = Main.property("server-ip", "0.0.0.0");
+        String host = Main.property("cluster-host", "0.0.0.0".equals(bind) ? "127.0.0.1" : bind);
+        try {
+            listener = new ServerSocket(port, 128, InetAddress.getByName(bind));
+        } catch (IOException e) {
+            Main.log("[ERROR] Cluster port " + port + " unavailable (" + e.getMessage() + "). Running standalone.");
+            return;
+        }
+
+        self = new Member(host + ':' + port);
+        MEMBERS.put(self.id, self);
+        for (String seed : Main.property("cluster-seeds", "").split(",")) {
+            seed = seed.trim();
+            if (seed.isEmpty() || seed.equals(self.id)) continue;
+            if (!seed.matches(".+:\\d{1,5}")) {
+                Main.log("[WARN] Ignoring cluster seed '" + seed + "' (expected host:port)");
+                continue;
+            }
+            CONTACTS.add(seed);
+        }
+        rebuildRing();
+
+        workers = Executors.newVirtualThreadPerTaskExecutor();
+        Metrics.gauge("deserver_cluster_members", "Live cluster nodes including this one", () -> MEMBERS.size());
+
+        Thread acceptor = new Thread(Cluster::acceptLoop, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Thread hb = new Thread(Cluster::heartbeatLoop, "cluster-heartbeat");
+        hb.setDaemon(true);
+        hb.start();
+
+        Main.log("[INFO] Cluster node " + self.id + " up, seeds: " +
+                (CONTACTS.isEmpty() ? "(none)" : String.join(",", CONTACTS)));
+    }
+
+    static boolean enabled() { return self != null; }
+
+    static boolean isLocal(String sid) {
+        if (self == null) return true;
+        Member owner = ring.ownerOf(sid);
+        return owner == null || owner == self;
+    }
+
+    static String ownerOf(String sid) {
+        Member owner = ring.ownerOf(sid);
+        return owner == null ? "local" : owner.id;
+    }
+
+    /* ---------- forwarding (false/null = could not reach the owner, caller keeps it locally) ---------- */
+
+    static boolean enqueue(String sid, String json, int lane) {
+        return forward(sid, ENQUEUE, sid, json, CommandLanes.NAMES[lane]) != null;
+    }
+
+    /* The owner's pacing hints for sid ({} when it has pacing off), or null when it could not be reached. */
+    static String[] forwardEvent(String clientIp, String evt, String playerName, String sid, String body) {
+        return forward(sid, EVENT, clientIp, evt, playerName, sid, body);
+    }
+
+    /* The owner's commands JSON, followed by its pacing hints when it has pacing on. */
+    static String[] poll(String sid) {
+        return forward(sid, POLL, sid);
+    }
+
+    /* {poll, upload} from reply[from], reply[from + 1]; null when the owner sent none. */
+    static int[] hints(String[] reply, int from) {
+        if (reply == null || reply.length < from + 2) return null;
+        try {
+            return new int[]{Integer.parseInt(reply[from]), Integer.parseInt(reply[from + 1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static Boolean isPaused(String sid) {
+        String[] r = forward(sid, IS_PAUSED, sid);
+        return r == null ? null : Boolean.valueOf(r[0]);
+    }
+
+    static Boolean isRunning(String sid) {
+        String[] r = forward(sid, IS_RUNNING, sid);
+        return r == null ? null : Boolean.valueOf(r[0]);
+    }
+
+    static String[] objects(String sid) {
+        return forward(sid, OBJECTS, sid);
+    }
+
+    static List<String> pollInputs(String sid) {
+        String[] r = forward(sid, INPUTS, sid);
+        return r == null ? null : Arrays.asList(r);
+    }
+
+    /* This node's clients plus the other members' as of their last heartbeat; no network calls. */
+    static Set<String> activeClients(Set<String> local) {
+        Set<String> all = new HashSet<>();
+        synchronized (local) { all.addAll(local); }
+        for (Member m : MEMBERS.values())
+            if (m != self) all.addAll(Arrays.asList(m.active));
+        return Collections.unmodifiableSet(all);
+    }
+
+    private static String[] forward(String sid, byte op, String... args) {
+        Member owner = ring.ownerOf(sid);
+        if (owner == null || owner == self) return null;
+        try {
+            return call(owner, op, args);
+        } catch (IOException e) {
+            failed(op, owner, e);
+            return null;
+        }
+    }
+
+    private static void failed(byte op, Member m, IOException e) {
+        Metrics.counter("deserver_cluster_forward_failures_total", "Cluster calls that could not be completed",
+                Metrics.label("op", OP_NAMES[op])).inc();
+        if (op != HELLO)
+            Main.log("[WARN] Cluster " + OP_NAMES[op] + " to " + m.id + " failed: " + e.getMessage());
+    }
+
+    /* ---------- wire protocol: op, argc, args → status, argc, values; strings are int-length-prefixed UTF-8 ---------- */
+
+    /*
+     * Only a failed write on a pooled connection is retried (the peer closed it while idle, so nothing
+     * was sent); once the request is out, a failure may come after the remote node applied it, and
+     * ENQUEUE / EVENT / HANDOFF / POLL must not run twice.
+     */
+    private static String[] call(Member m, byte op, String... args) throws IOException {
+        long started = System.nanoTime();
+        Conn c = m.pool.poll();
+        try {
+            send(c, op, args);
+        } catch (IOException stale) {
+            if (c != null) c.close();
+            c = null;
+        }
+        if (c == null) {
+            c = connect(m);
+            try {
+                send(c, op, args);
+            } catch (IOException e) {
+                c.close();
+                throw e;
+            }
+        }
+
+        byte status;
+        String[] values;
+        try {
+            status = c.in.readByte();
+            values = readStrings(c.in);
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        Metrics.histogram("deserver_cluster_call_seconds", "Round trip of inter-node calls",
+                Metrics.label("op", OP_NAMES[op])).recordSince(started);
+        if (status != 0) {
+            c.close();
+            throw new IOException(values.length > 0 ? values[0] : "remote error");
+        }
+        m.pool.offer(c);
+        return values;
+    }
+
+    private static void send(Conn c, byte op, String... args) throws IOException {
+        if (c == null) return;
+        c.out.writeByte(op);
+        writeStrings(c.out, args);
+        c.out.flush();
+    }
+
+    private static Conn connect(Member m) throws IOException {
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(new InetSocketAddress(m.host, m.port), CONNECT_TIMEOUT_MS);
+            s.setSoTimeout(READ_TIMEOUT_MS);
+            Conn c = new Conn(s);
+            byte[] nonce = new byte[NONCE_BYTES];
+            c.in.readFully(nonce);
+            c.out.write(mac(nonce));
+            c.out.flush();
+            return c;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private static byte[] mac(byte[] nonce) {
+        try {
+            javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
+            mac.init(new javax.crypto.spec.SecretKeySpec(secret, "HmacSHA256"));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String... values) throws IOException {
+        out.writeShort(values.length);
+        for (String v : values) {
+            if (v == null) { out.writeInt(-1); continue; }
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int n = in.readUnsignedShort();
+        String[] values = new String[n];
+        long budget = maxFrameBytes;
+        for (int i = 0; i < n; i++) {
+            int len = in.readInt();
+            if (len < 0) continue;
+            if (len > budget) throw new IOException("frame larger than cluster-max-frame-mb");
+            budget -= len;
+            byte[] b = new byte[len];
+            in.readFully(b);
+            values[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    private static void acceptLoop() {
+        while (!listener.isClosed()) {
+            try {
+                Socket s = listener.accept();
+                s.setTcpNoDelay(true);
+                workers.submit(() -> serve(s));
+            } catch (IOException e) {
+                if (!listener.isClosed()) Main.log("[WARN] Cluster accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void serve(Socket s) {
+        try (s) {
+            s.setSoTimeout(READ_TIMEOUT_MS);
+            Conn c = new Conn(s);
+            byte[] nonce = new byte[NONCE_BYTES], answer = new byte[MAC_BYTES];
+            RANDOM.nextBytes(nonce);
+            c.out.write(nonce);
+            c.out.flush();
+            c.in.readFully(answer);
+            if (!MessageDigest.isEqual(mac(nonce), answer)) {
+                authFailures.inc();
+                String ip = s.getInetAddress().getHostAddress();
+                if (REJECTED.add(ip))                           // heartbeats retry every second
+                    Main.log("[WARN] Cluster connection from " + ip + " rejected (wrong cluster-secret)");
+                return;
+            }
+            s.setSoTimeout(0);                              // pooled callers may idle between calls
+            while (true) {
+                byte op;
+                try { op = c.in.readByte(); } catch (EOFException eof) { return; }
+                String[] args = readStrings(c.in);
+                String[] result;
+                byte status = 0;
+                try {
+                    result = handle(op, args);
+                } catch (RuntimeException e) {
+                    status = 1;
+                    result = new String[]{String.valueOf(e.getMessage())};
+                }
+                c.out.writeByte(status);
+                writeStrings(c.out, result);
+                c.out.flush();
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static String[] handle(byte op, String[] a) {
+        switch (op) {
+            case HELLO: {
+                join(MEMBERS.getOrDefault(a[0], new Member(a[0])));
+                return MEMBERS.keySet().toArray(new String[0]);
+            }
+            case LEAVE: {
+                if (MEMBERS.remove(a[0]) != null) {
+                    Main.log("[INFO] Cluster node " + a[0] + " left");
+                    membershipChanged();
+                }
+                return new String[0];
+            }
+            case ENQUEUE:
+                // Nodes from before command lanes send no lane
+                int lane = a.length > 2 ? CommandLanes.lane(a[2]) : -1;
+                Main.enqueueLocal(a[0], a[1], lane < 0 ? CommandLanes.NORMAL : lane);
+                return new String[0];
+            case EVENT:
+                Main.dispatchEvent(a[0], a[4], a[1], a[2], a[3]);
+                return !Pacing.enabled() ? new String[0] : new String[]{
+                        String.valueOf(Pacing.pollMs(a[3], false)), String.valueOf(Pacing.uploadMs(a[3]))};
+            case POLL: {
+                // Pacing is worked out here, where the session lives, so the entry node needs no extra calls
+                String cmds = Main.dequeueCommandsJson(a[0]);
+                return !Pacing.enabled() ? new String[]{cmds} : new String[]{cmds,
+                        String.valueOf(Pacing.pollMs(a[0], !"[]".equals(cmds))), String.valueOf(Pacing.uploadMs(a[0]))};
+            }
+            case IS_PAUSED:
+                return new String[]{String.valueOf(Main.isPausedLocal(a[0]))};
+            case IS_RUNNING:
+                return new String[]{String.valueOf(Main.isRunningLocal(a[0]))};
+            case OBJECTS:
+                return new String[]{Main.getObjectsSnapshotLocal(a[0])};
+            case INPUTS:
+                return Main.pollInputsLocal(a[0]).toArray(new String[0]);
+            case ACTIVE: {
+                Set<String> local = Main.getLocalActiveClients();
+                synchronized (local) { return local.toArray(new String[0]); }
+            }
+            case HANDOFF:
+                Main.importSession(a[0], Arrays.asList(a).subList(1, a.length));
+                return new String[0];
+            default:
+                throw new IllegalArgumentException("unknown op " + op);
+        }
+    }
+
+    /* ---------- membership & rebalancing ---------- */
+
+    private static void join(Member candidate) {
+        Member m = MEMBERS.get(candidate.id);
+        if (m != null) {
+            m.lastSeen = System.currentTimeMillis();
+            return;
+        }
+        if (leaving || MEMBERS.putIfAbsent(candidate.id, candidate) != null) return;
+        CONTACTS.add(candidate.id);
+        Main.log("[INFO] Cluster node " + candidate.id + " joined");
+        membershipChanged();
+    }
+
+    private static void heartbeatLoop() {
+        while (!leaving) {
+            Set<String> targets = new HashSet<>(CONTACTS);
+            targets.addAll(MEMBERS.keySet());
+            targets.remove(self.id);
+
+            for (String id : targets) {
+                workers.submit(() -> {
+                    Member m = MEMBERS.getOrDefault(id, new Member(id));
+                    try {
+                        String[] known = call(m, HELLO, self.id);
+                        join(m);
+                        for (String k : known) if (!k.equals(self.id)) CONTACTS.add(k);
+                        Member live = MEMBERS.get(id);
+                        if (live != null) live.active = call(live, ACTIVE);
+                    } catch (IOException ignore) {
+                    }
+                });
+            }
+
+            long cutoff = System.currentTimeMillis() - MEMBER_TIMEOUT_MS;
+            boolean changed = false;
+            for (Iterator<Member> it = MEMBERS.values().iterator(); it.hasNext(); ) {
+                Member m = it.next();
+                if (m != self && m.lastSeen < cutoff) {
+                    it.remove();
+                    for (Conn c; (c = m.pool.poll()) != null; ) c.close();
+                    Main.log("[WARN] Cluster node " + m.id + " timed out");
+                    changed = true;
+                }
+            }
+            if (changed) rebuildRing();
+            rebalance();
+
+            try { Thread.sleep(HEARTBEAT_MS); } catch (InterruptedException e) { return; }
+        }
+    }
+
+    private static void membershipChanged() {
+        rebuildRing();
+        workers.submit(Cluster::rebalance);
+    }
+
+    private static void rebuildRing() {
+        synchronized (RING_LOCK) {
+            List<Member> live = new ArrayList<>(MEMBERS.values());
+            if (leaving) live.remove(self);
+            live.sort(Comparator.comparing(m -> m.id));
+
+            int n = live.size() * VNODES;
+            long[] packed = new long[n];
+            for (int i = 0; i < live.size(); i++)
+                for (int v = 0; v < VNODES; v++)
+                    packed[i * VNODES + v] = ((long) hash(live.get(i).id + '#' + v) << 32) | i;
+            Arrays.sort(packed);
+
+            int[] points = new int[n];
+            Member[] owners = new Member[n];
+            for (int i = 0; i < n; i++) {
+                points[i] = (int) (packed[i] >> 32);
+                owners[i] = live.get((int) packed[i]);
+            }
+            ring = new Ring(points, owners);
+        }
+    }
+
+    /* Moves every session this node holds but no longer owns to its owner. */
+    private static synchronized void rebalance() {
+        int moved = 0;
+        for (String sid : Main.localSteamIDs()) {
+            Member owner = ring.ownerOf(sid);
+            if (owner == null || owner == self) continue;
+
+            List<String> state = Main.exportSession(sid);
+            String[] args = new String[state.size() + 1];
+            args[0] = sid;
+            for (int i = 0; i < state.size(); i++) args[i + 1] = state.get(i);
+            try {
+                call(owner, HANDOFF, args);
+                moved++;
+            } catch (IOException e) {
+                failed(HANDOFF, owner, e);
+                Main.importSession(sid, state);
+            }
+        }
+        if (moved > 0) {
+            Metrics.counter("deserver_cluster_handoffs_total", "Sessions handed off to another node").add(moved);
+            Main.log("[INFO] Cluster rebalance: handed off " + moved + " session(s)");
+        }
+    }
+
+    static void leave() {
+        if (self == null || leaving) return;
+        leaving = true;
+        rebuildRing();
+        rebalance();
+        for (Member m : MEMBERS.values()) {
+            if (m == self) continue;
+            try { call(m, LEAVE, self.id); } catch (IOException ignore) {}
+            for (Conn c; (c = m.pool.poll()) != null; ) c.close();
+        }
+        try { listener.close(); } catch (IOException ignore) {}
+        Main.log("[INFO] Left cluster.");
+    }
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (!"cluster".equalsIgnoreCase(tok[0])) return false;
+        if (self == null) {
+            Main.log("[INFO] Cluster mode off (set cluster-port in server.properties).");
+            return true;
+        }
+        if (tok.length > 1 && "owner".equalsIgnoreCase(tok[1]) && tok.length > 2) {
+            Main.log("[INFO] SteamID " + tok[2] + " → " + ownerOf(tok[2]));
+            return true;
+        }
+        Ring r = ring;
+        Map<String, Integer> share = new TreeMap<>();
+        for (int i = 0; i < r.points.length; i++) {
+            long width = (i == 0 ? (long) r.points[0] - Integer.MIN_VALUE + ((long) Integer.MAX_VALUE - r.points[r.points.length - 1])
+                                 : (long) r.points[i] - r.points[i - 1]);
+            share.merge(r.owners[i].id, (int) (width >>> 16), Integer::sum);
+        }
+        Main.log("[INFO] Cluster members (" + MEMBERS.size() + "), self = " + self.id + ":");
+        for (Member m : MEMBERS.values()) {
+            int units = share.getOrDefault(m.id, 0);
+            Main.log("[INFO]   " + m.id + (m == self ? " (self)" : "") +
+                    String.format("  ring share %.1f%%", 100.0 * units / 65536.0));
+        }
+        return true;
+    }
+
+    /* FNV-1a with a murmur3 finalizer; stable across JVMs so every node builds the same ring. */
+    private static int hash(String s) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,113 @@
+package club.kron.pumpin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * One client's pending commands in three lanes: urgent (teleports, console create / edit), normal (the
+ * default for extensions) and bulk (/admin/bulk). A /cmd poll takes at most cmd-poll-max-count (256)
+ * commands and cmd-poll-max-bytes (65536) of JSON, shared between the lanes by deficit round robin
+ * with weights cmd-weight-urgent / normal / bulk (8 / 4 / 1), so a teleport queued behind thousands of
+ * creates goes out on the next poll and every answer stays small. Order is kept within a lane; urgent
+ * commands come first in the answer. A single command over the byte budget goes out on its own.
+ */
+final class CommandLanes {
+
+    static final int URGENT = 0, NORMAL = 1, BULK = 2;
+    static final String[] NAMES = {"urgent", "normal", "bulk"};
+
+    private static final int QUANTUM = 1024;                // bytes of deficit per weight unit and round
+
+    private static int maxCount = 256, maxBytes = 64 << 10;
+    private static final int[] WEIGHT = {8, 4, 1};
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<String>[] lanes = new Queue[]{
+            new ConcurrentLinkedQueue<String>(), new ConcurrentLinkedQueue<String>(), new ConcurrentLinkedQueue<String>()};
+    private final long[] deficit = new long[3];
+
+    static void configure() {
+        maxCount = Math.max(1, Main.intProperty("cmd-poll-max-count", 256));
+        maxBytes = Math.max(256, Main.intProperty("cmd-poll-max-bytes", 64 << 10));
+        for (int l = 0; l < NAMES.length; l++)
+            WEIGHT[l] = Math.max(1, Main.intProperty("cmd-weight-" + NAMES[l], WEIGHT[l]));
+    }
+
+    /* Lane index for "urgent" / "normal" / "bulk"; -1 for anything else. */
+    static int lane(String name) {
+        for (int l = 0; l < NAMES.length; l++) if (NAMES[l].equalsIgnoreCase(name)) return l;
+        return -1;
+    }
+
+    /* StateStore record kind of a lane; normal keeps the kind queues had before lanes existed. */
+    static byte kind(int lane) {
+        return lane == URGENT ? StateStore.CMD_URGENT : lane == BULK ? StateStore.CMD_BULK : StateStore.CMD;
+    }
+
+    /* importSession / snapshot field name of a lane. */
+    static String field(int lane) {
+        return lane == NORMAL ? "cmd" : "cmd." + NAMES[lane];
+    }
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length < 2 || !"queue".equalsIgnoreCase(tok[0])) return false;
+        int[] n = Main.queuedCommands(tok[1]);
+        Main.log("[INFO] " + tok[1] + ": " + n[URGENT] + " urgent, " + n[NORMAL] + " normal, " + n[BULK] +
+                " bulk command(s) queued; up to " + maxCount + " / " + maxBytes / 1024 + " KB per poll");
+        return true;
+    }
+
+    Queue<String> queue(int lane) {
+        return lanes[lane];
+    }
+
+    int size() {
+        return lanes[0].size() + lanes[1].size() + lanes[2].size();
+    }
+
+    boolean isEmpty() {
+        return lanes[0].isEmpty() && lanes[1].isEmpty() && lanes[2].isEmpty();
+    }
+
+    /* Takes this poll's share of every lane, urgent first. */
+    synchronized List<String> drain(String steamID) {
+        // Plan against the queue heads first: producers only append, and only this method removes
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Iterator<String>[] it = new Iterator[3];
+        String[] head = new String[3];
+        int[] take = new int[3];
+        for (int l = 0; l < 3; l++) {
+            it[l] = lanes[l].iterator();
+            head[l] = it[l].hasNext() ? it[l].next() : null;
+        }
+        int count = 0;
+        long bytes = 0;
+        planning:
+        while (count < maxCount && (head[0] != null || head[1] != null || head[2] != null)) {
+            for (int l = 0; l < 3; l++) {
+                if (head[l] == null) continue;
+                deficit[l] += (long) WEIGHT[l] * QUANTUM;
+                while (head[l] != null) {
+                    int size = head[l].length() + 3;
+                    if (size > deficit[l]) break;
+                    if (count > 0 && bytes + size > maxBytes) break planning;
+                    deficit[l] -= size;
+                    bytes += size;
+                    take[l]++;
+                    head[l] = it[l].hasNext() ? it[l].next() : null;
+                    if (++count == maxCount) break planning;
+                }
+            }
+        }
+        List<String> out = new ArrayList<>(count);
+        for (int l = 0; l < 3; l++) {
+            if (take[l] > 0) out.addAll(StateStore.drain(kind(l), steamID, lanes[l], take[l]));
+            if (lanes[l].isEmpty()) deficit[l] = 0;
+        }
+        return out;
+    }
+}
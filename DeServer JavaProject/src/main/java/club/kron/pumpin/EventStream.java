@@ -0,0 +1,334 @@
+package club.kron.pumpin;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * GET /events – a live feed of what players do, for dashboards and anti-cheat tools that should not
+ * have to be extensions. Server-Sent Events by default, or one JSON object per line with format=ndjson:
+ *
+ *   curl -N 'http://127.0.0.1:19299/events?type=session,pos&steamID=7656119…'
+ *
+ *   event: pos
+ *   data: {"t":1760000000000,"steamID":"…","playerName":"…","x":1.0,"y":2.0,"z":3.0,"rx":0.0,"ry":90.0,"rz":0.0}
+ *
+ * Types: session (connect / running / disconnect / timeout), pos, input (key or axis), pause, ack.
+ * type= and steamID= take comma-separated lists; both default to everything.
+ *
+ * Each event is encoded once, only when some subscriber wants its type, and the same bytes are queued
+ * to every matching subscriber. Every subscriber has its own writer thread and a ring of events-buffer
+ * (1024) events; when the ring is full the oldest event is dropped, so a slow consumer never holds up
+ * ingest. Drops are reported in-band as a "dropped" event. Idle streams get a heartbeat every
+ * events-heartbeat-seconds (15). At most events-max-subscribers (16) streams are open at once; remote
+ * addresses must present the admin token in X-DeServer-Token, loopback does not need it.
+ */
+final class EventStream {
+
+    static final int SESSION = 0, POS = 1, INPUT = 2, PAUSE = 3, ACK = 4;
+    private static final String[] TYPES = {"session", "pos", "input", "pause", "ack"};
+    private static final int ALL = (1 << TYPES.length) - 1;
+
+    private static final byte[][] SSE_PREFIX = new byte[TYPES.length][];
+    private static final byte[] SSE_END = ascii("\n\n");
+    private static final byte[] LINE_END = ascii("\n");
+    private static final byte[] SSE_HEARTBEAT = ascii(": heartbeat\n\n");
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) SSE_PREFIX[i] = ascii("event: " + TYPES[i] + "\ndata: ");
+    }
+
+    private static final class Event {
+        final int type;
+        final String steamID;
+        final byte[] json;
+
+        Event(int type, String steamID, byte[] json) {
+            this.type = type; this.steamID = steamID; this.json = json;
+        }
+    }
+
+    private static final CopyOnWriteArrayList<Subscriber> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+    private static volatile int wanted;                      // union of the subscribers' type masks
+
+    private static final Metrics.Counter[] published = new Metrics.Counter[TYPES.length];
+    private static final Metrics.Counter dropped =
+            Metrics.counter("deserver_event_stream_dropped_total", "Events dropped for slow subscribers");
+
+    static {
+        for (int i = 0; i < TYPES.length; i++)
+            published[i] = Metrics.counter("deserver_event_stream_events_total", "Events encoded for subscribers",
+                    Metrics.label("type", TYPES[i]));
+        Metrics.gauge("deserver_event_stream_subscribers", "Open /events streams", SUBSCRIBERS::size);
+    }
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private EventStream() {}
+
+    /* ---- publishing (called on the request path) ---- */
+
+    static boolean wants(int type) {
+        return (wanted & 1 << type) != 0;
+    }
+
+    static void session(String steamID, String playerName, String state) {
+        if (!wants(SESSION)) return;
+        publish(SESSION, steamID, head(steamID, playerName).append(",\"state\":\"").append(state).append("\"}"));
+    }
+
+    static void pos(String steamID, String playerName, double x, double y, double z, double rx, double ry, double rz) {
+        if (!wants(POS)) return;
+        publish(POS, steamID, head(steamID, playerName)
+                .append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z)
+                .append(",\"rx\":").append(rx).append(",\"ry\":").append(ry).append(",\"rz\":").append(rz).append('}'));
+    }
+
+    static void key(String steamID, String playerName, String key) {
+        if (!wants(INPUT)) return;
+        publish(INPUT, steamID, head(steamID, playerName).append(",\"key\":").append(Main.jsonString(key)).append('}'));
+    }
+
+    static void axis(String steamID, String playerName, String axis, float value) {
+        if (!wants(INPUT)) return;
+        publish(INPUT, steamID, head(steamID, playerName)
+                .append(",\"axis\":").append(Main.jsonString(axis)).append(",\"val\":").append(value).append('}'));
+    }
+
+    static void pause(String steamID, String playerName, boolean paused) {
+        if (!wants(PAUSE)) return;
+        publish(PAUSE, steamID, head(steamID, playerName).append(",\"paused\":").append(paused).append('}'));
+    }
+
+    static void ack(String steamID, String playerName, String cmd, String label) {
+        if (!wants(ACK)) return;
+        publish(ACK, steamID, head(steamID, playerName)
+                .append(",\"cmd\":").append(Main.jsonString(cmd)).append(",\"label\":").append(Main.jsonString(label)).append('}'));
+    }
+
+    private static StringBuilder head(String steamID, String playerName) {
+        return new StringBuilder(160).append("{\"t\":").append(System.currentTimeMillis())
+                .append(",\"steamID\":").append(Main.jsonString(steamID))
+                .append(",\"playerName\":").append(Main.jsonString(playerName));
+    }
+
+    private static void publish(int type, String steamID, StringBuilder json) {
+        Event e = new Event(type, steamID, json.toString().getBytes(StandardCharsets.UTF_8));
+        published[type].inc();
+        for (Subscriber s : SUBSCRIBERS) if (s.matches(e)) s.offer(e);
+    }
+
+    /* ---- subscribing ---- */
+
+    /* Handles GET /events; returns true when the connection now belongs to a writer thread. */
+    static boolean subscribe(String clientIp, String path, String token, InputStream in, OutputStream out)
+            throws IOException {
+        if (!isLoopback(clientIp) && !BulkLoader.authorized(token)) {
+            HttpResponse.start(HttpResponse.FORBIDDEN).send(out, HttpResponse.TEXT, "Forbidden");
+            Main.log("[WARN] Rejected /events from " + clientIp + " (remote subscribers need the admin token)");
+            return false;
+        }
+        int types = ALL;
+        Set<String> steamIDs = null;
+        boolean sse = true;
+        int q = path.indexOf('?');
+        if (q >= 0) {
+            for (String pair : path.substring(q + 1).split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq < 0) continue;
+                String k = pair.substring(0, eq), v = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                switch (k) {
+                    case "type" -> {
+                        types = 0;
+                        for (String t : v.split(",")) {
+                            int i = Arrays.asList(TYPES).indexOf(t.trim().toLowerCase());
+                            if (i < 0) {
+                                HttpResponse.start(HttpResponse.BAD_REQUEST).send(out, HttpResponse.TEXT,
+                                        "Unknown event type '" + t + "' (" + String.join(", ", TYPES) + ")");
+                                return false;
+                            }
+                            types |= 1 << i;
+                        }
+                    }
+                    case "steamID" -> {
+                        steamIDs = new HashSet<>();
+                        for (String s : v.split(",")) if (!s.isBlank()) steamIDs.add(s.trim());
+                    }
+                    case "format" -> sse = !"ndjson".equalsIgnoreCase(v);
+                    default -> { }
+                }
+            }
+        }
+
+        int max = Math.max(1, Main.intProperty("events-max-subscribers", 16));
+        Subscriber s = new Subscriber(clientIp, types, steamIDs, sse, in, out,
+                Math.max(16, Main.intProperty("events-buffer", 1024)));
+        synchronized (SUBSCRIBERS) {
+            if (SUBSCRIBERS.size() >= max) {
+                HttpResponse.start(HttpResponse.UNAVAILABLE).send(out, HttpResponse.TEXT, "Too many event subscribers");
+                return false;
+            }
+            HttpResponse.start(HttpResponse.OK).stream(out, sse ? HttpResponse.EVENT_STREAM : HttpResponse.NDJSON);
+            SUBSCRIBERS.add(s);
+            rebuildMask();
+        }
+        Thread t = new Thread(s, "events-" + s.id);
+        t.setDaemon(true);
+        t.start();
+        Main.log("[INFO] Event subscriber #" + s.id + " from " + clientIp + ": " + s.describe());
+        return true;
+    }
+
+    static void closeAll() {
+        for (Subscriber s : SUBSCRIBERS) s.close();
+    }
+
+    static boolean handleConsole(String line) {
+        if (!"events".equalsIgnoreCase(line.trim())) return false;
+        if (SUBSCRIBERS.isEmpty()) Main.log("[INFO] No event subscribers.");
+        for (Subscriber s : SUBSCRIBERS) {
+            long[] st = s.stats();
+            Main.log("[INFO] #" + s.id + " " + s.remote + " " + s.describe() + ": " + st[0] + " sent, " +
+                    st[1] + " queued, " + st[2] + " dropped");
+        }
+        return true;
+    }
+
+    private static void rebuildMask() {
+        int m = 0;
+        for (Subscriber s : SUBSCRIBERS) m |= s.types;
+        wanted = m;
+    }
+
+    private static void remove(Subscriber s) {
+        synchronized (SUBSCRIBERS) {
+            if (!SUBSCRIBERS.remove(s)) return;
+            rebuildMask();
+        }
+        long[] st = s.stats();
+        Main.log("[INFO] Event subscriber #" + s.id + " from " + s.remote + " closed (" + st[0] + " sent, " +
+                st[2] + " dropped)");
+    }
+
+    private static boolean isLoopback(String ip) {
+        try {
+            return InetAddress.getByName(ip).isLoopbackAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class Subscriber implements Runnable {
+        final int id = ids.incrementAndGet();
+        final String remote;
+        final int types;
+        final Set<String> steamIDs;                      // null = everyone
+        final boolean sse;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private final Event[] ring;                      // guarded by this
+        private int head, size;
+        private long sent, droppedCount, droppedReported;
+        private volatile boolean closed;
+
+        Subscriber(String remote, int types, Set<String> steamIDs, boolean sse, InputStream in, OutputStream out,
+                   int capacity) {
+            this.remote = remote; this.types = types; this.steamIDs = steamIDs; this.sse = sse;
+            this.in = in; this.out = out;
+            this.ring = new Event[capacity];
+        }
+
+        boolean matches(Event e) {
+            return (types & 1 << e.type) != 0 && (steamIDs == null || steamIDs.contains(e.steamID));
+        }
+
+        synchronized void offer(Event e) {
+            if (size == ring.length) {
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                droppedCount++;
+                dropped.inc();
+            }
+            ring[(head + size) % ring.length] = e;
+            if (size++ == 0) notify();
+        }
+
+        synchronized long[] stats() {
+            return new long[]{sent, size, droppedCount};
+        }
+
+        String describe() {
+            StringBuilder b = new StringBuilder(sse ? "sse" : "ndjson").append(", types=");
+            for (int i = 0, n = 0; i < TYPES.length; i++) if ((types & 1 << i) != 0) b.append(n++ > 0 ? "," : "").append(TYPES[i]);
+            return b.append(steamIDs == null ? "" : ", steamIDs=" + String.join(",", steamIDs)).toString();
+        }
+
+        @Override public void run() {
+            long heartbeatMs = Math.max(1, Main.intProperty("events-heartbeat-seconds", 15)) * 1000L;
+            OutputStream o = new BufferedOutputStream(out, 16 * 1024);
+            Event[] batch = new Event[ring.length];
+            try {
+                while (!closed) {
+                    int n;
+                    long lost;
+                    synchronized (this) {
+                        if (size == 0) wait(heartbeatMs);
+                        n = size;
+                        for (int i = 0; i < n; i++) {
+                            batch[i] = ring[head];
+                            ring[head] = null;
+                            head = (head + 1) % ring.length;
+                        }
+                        size = 0;
+                        lost = droppedCount - droppedReported;
+                        droppedReported = droppedCount;
+                        sent += n;
+                    }
+                    if (closed) break;
+                    if (lost > 0) {
+                        byte[] json = ascii("{\"t\":" + System.currentTimeMillis() + ",\"dropped\":" + lost + "}");
+                        if (sse) o.write(ascii("event: dropped\ndata: "));
+                        o.write(json);
+                        o.write(sse ? SSE_END : LINE_END);
+                    }
+                    for (int i = 0; i < n; i++) {
+                        Event e = batch[i];
+                        batch[i] = null;
+                        if (sse) o.write(SSE_PREFIX[e.type]);
+                        o.write(e.json);
+                        o.write(sse ? SSE_END : LINE_END);
+                    }
+                    if (n == 0 && lost == 0) o.write(sse ? SSE_HEARTBEAT : LINE_END);
+                    o.flush();
+                }
+            } catch (IOException | InterruptedException ignore) {
+                // the consumer went away
+            } finally {
+                close();
+                remove(this);
+            }
+        }
+
+        void close() {
+            closed = true;
+            synchronized (this) { notify(); }
+            try { out.close(); } catch (IOException ignore) {}
+            try { in.close(); } catch (IOException ignore) {}
+        }
+    }
+}
@@ -3,8 +3,15 @@ package club.kron.pumpin;
 import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 final class ExtensionManager {
 
@@ -13,56 +20,316 @@ final class ExtensionManager {
         final File jar;
         final URLClassLoader cl;
         final Extension instance;
-        ExtHolder(String id, File jar, URLClassLoader cl, Extension instance) {
+        final int version;
+        final File copy;
+        final AtomicInteger calls = new AtomicInteger();
+        ExtHolder(String id, File jar, URLClassLoader cl, Extension instance, int version, File copy) {
             this.id = id; this.jar = jar; this.cl = cl; this.instance = instance;
+            this.version = version; this.copy = copy;
         }
     }
 
     private static final Map<String, ExtHolder> LOADED = new ConcurrentHashMap<>();
+    private static final List<String> ENABLE_ORDER = new CopyOnWriteArrayList<>();
     private static final ServerAPI API = new ServerAPI();
 
+    static {
+        Metrics.gauge("deserver_extensions_loaded", "Extensions currently enabled", () -> LOADED.size());
+    }
+
+    private static Metrics.Histogram callbackTimer(String id, String callback) {
+        return Metrics.histogram("deserver_extension_callback_seconds", "Time spent inside extension callbacks",
+                Metrics.label("ext", id) + ',' + Metrics.label("callback", callback));
+    }
+
+    private static void commit(FlightEvents.ExtensionCallback flight, String id, String callback, long inputSize) {
+        if (!flight.shouldCommit()) return;
+        flight.extension = id;
+        flight.callback = callback;
+        flight.inputSize = inputSize;
+        flight.commit();
+    }
+
+    private static void callbackFailed(String id, String callback) {
+        Metrics.counter("deserver_extension_callback_errors_total", "Extension callbacks that threw",
+                Metrics.label("ext", id) + ',' + Metrics.label("callback", callback)).inc();
+    }
+
     static boolean forwardConsoleInput(String line) {
+        enableLazy();
         boolean handled = false;
         for (ExtHolder h : LOADED.values()) {
+            long started = System.nanoTime();
+            FlightEvents.ExtensionCallback flight = new FlightEvents.ExtensionCallback();
+            flight.begin();
+            h.calls.incrementAndGet();
             try {
                 if (h.instance.onConsoleInput(line))
                     handled = true;
             } catch (Throwable t) {
+                callbackFailed(h.id, "onConsoleInput");
                 Main.log("[EXT] " + h.id + ".onConsoleInput error: " + t.getMessage());
+            } finally {
+                h.calls.decrementAndGet();
+                callbackTimer(h.id, "onConsoleInput").recordSince(started);
+                commit(flight, h.id, "onConsoleInput", line.length());
             }
         }
         return handled;
     }
 
+    /*
+     * A jar between "opened" and "enabled". Manifest attributes:
+     *   DeServer-Depends: other.jar, SomeExtension   enabled only after these (jar names or extension ids)
+     *   DeServer-Enable:  startup | bound | lazy     startup (default) is awaited before the listener starts,
+     *                                                bound is enabled once the port is bound, lazy on first use
+     * "First use" is the first console line or game request, or extension-lazy-ms (30000) after the port is
+     * bound, whichever comes first, so lazy jars also come up in GUI mode, where there is no console loop.
+     */
+    private static final class Candidate {
+        final File jar;
+        final String name;
+        int version;
+        File copy;
+        volatile URLClassLoader cl;
+        final List<Extension> exts = new ArrayList<>();
+        List<String> depends = Collections.emptyList();
+        String mode = "startup";
+        final List<Candidate> deps = new ArrayList<>();
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        volatile long loadNanos, waitNanos, enableNanos;
+        volatile String error;
+
+        Candidate(File jar) {
+            this.jar = jar;
+            String n = jar.getName();
+            this.name = n.toLowerCase().endsWith(".jar") ? n.substring(0, n.length() - 4) : n;
+        }
+    }
+
+    private static final Map<String, Candidate> PENDING = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> VERSIONS = new ConcurrentHashMap<>();
+    private static final List<Candidate> TIMINGS = new CopyOnWriteArrayList<>();
+    private static final ExecutorService POOL = Executors.newVirtualThreadPerTaskExecutor();
+
     static void loadAll() {
         File dir = API.getExtensionsRoot();
         if (!dir.exists()) dir.mkdirs();
 
+        File[] stale = versionsDir().listFiles();
+        if (stale != null) for (File f : stale) f.delete();
+
         File[] jars = dir.listFiles(f -> f.isFile() && f.getName().toLowerCase().endsWith(".jar"));
         if (jars == null || jars.length == 0) {
             Main.log("[EXT] No extensions found.");
             return;
         }
-        for (File jar : jars) loadJar(jar);
-        Main.log("[EXT] Total enabled: " + LOADED.size());
+        long started = System.nanoTime();
+
+        List<Future<Candidate>> opening = new ArrayList<>();
+        for (File jar : jars) opening.add(POOL.submit(() -> open(jar)));
+        List<Candidate> all = new ArrayList<>();
+        for (Future<Candidate> f : opening) {
+            try {
+                Candidate c = f.get();
+                if (c != null) all.add(c);
+            } catch (InterruptedException | ExecutionException e) {
+                Main.log("[EXT] Error opening extension: " + e.getMessage());
+            }
+        }
+        resolve(all);
+
+        List<CompletableFuture<Boolean>> startup = new ArrayList<>();
+        for (Candidate c : all) {
+            TIMINGS.add(c);
+            if ("startup".equals(c.mode)) startup.add(start(c));
+            else PENDING.put(c.name, c);
+        }
+        for (CompletableFuture<Boolean> f : startup) f.join();
+
+        long enableSum = 0;
+        for (Candidate c : all) enableSum += c.enableNanos;
+        Main.log("[EXT] Total enabled: " + LOADED.size() + " in " + millis(System.nanoTime() - started) +
+                " ms (onEnable total " + millis(enableSum) + " ms" +
+                (PENDING.isEmpty() ? "" : ", " + PENDING.size() + " deferred") + ')');
+        for (Candidate c : all) if ("startup".equals(c.mode)) Main.log(timing(c));
     }
 
-    static boolean loadJar(File jar) {
-        if (jar == null || !jar.isFile()) {
-            Main.log("[EXT] load: file not found – " + jar);
-            return false;
+    /* Called once the HTTP port is bound. */
+    static void onBound() {
+        for (Candidate c : PENDING.values()) {
+            if (!"bound".equals(c.mode)) continue;
+            start(c).thenRun(() -> Main.log(timing(c)));
+        }
+        long delay = Math.max(0, Main.intProperty("extension-lazy-ms", 30_000));
+        if (delay == 0 || PENDING.isEmpty()) return;
+        POOL.submit(() -> {
+            Thread.sleep(delay);
+            startLazy();
+            return null;
+        });
+    }
+
+    /* Called for every game request; lazy jars start in the background so the request is not held up. */
+    static void onRequest() {
+        if (!PENDING.isEmpty()) startLazy();
+    }
+
+    private static void enableLazy() {
+        if (PENDING.isEmpty()) return;
+        for (Candidate c : PENDING.values()) {
+            if ("lazy".equals(c.mode) && PENDING.remove(c.name, c) && start(c).join()) Main.log(timing(c));
         }
+    }
+
+    private static void startLazy() {
+        for (Candidate c : PENDING.values()) {
+            if ("lazy".equals(c.mode) && PENDING.remove(c.name, c))
+                start(c).thenAccept(ok -> { if (ok) Main.log(timing(c)); });
+        }
+    }
+
+    private static Candidate open(File jar) {
+        Candidate c = new Candidate(jar);
+        long started = System.nanoTime();
+        // Each version loads from its own copy, so the jar in extensions/ can be replaced while it runs
+        c.version = VERSIONS.merge(c.name, 1, Integer::sum);
+        c.copy = new File(versionsDir(), c.name + "-v" + c.version + ".jar");
         try {
-            URLClassLoader cl = new URLClassLoader(new URL[]{jar.toURI().toURL()}, Main.class.getClassLoader());
-            ServiceLoader<Extension> sl = ServiceLoader.load(Extension.class, cl);
-            Iterator<Extension> it = sl.iterator();
-            if (!it.hasNext()) {
+            versionsDir().mkdirs();
+            Files.copy(jar.toPath(), c.copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            Main.log("[EXT] Error loading " + jar.getName() + ": " + e.getMessage());
+            return null;
+        }
+        try (JarFile jf = new JarFile(c.copy)) {
+            Manifest mf = jf.getManifest();
+            if (mf != null) {
+                Attributes a = mf.getMainAttributes();
+                String dep = a.getValue("DeServer-Depends");
+                if (dep != null && !dep.isBlank()) {
+                    List<String> list = new ArrayList<>();
+                    for (String d : dep.split(",")) {
+                        d = d.trim();
+                        if (d.toLowerCase().endsWith(".jar")) d = d.substring(0, d.length() - 4);
+                        if (!d.isEmpty()) list.add(d);
+                    }
+                    c.depends = list;
+                }
+                String mode = a.getValue("DeServer-Enable");
+                if (mode != null) {
+                    mode = mode.trim().toLowerCase();
+                    if ("startup".equals(mode) || "bound".equals(mode) || "lazy".equals(mode)) c.mode = mode;
+                    else Main.log("[EXT] " + jar.getName() + ": unknown DeServer-Enable '" + mode + "', using startup");
+                }
+            }
+
+            c.cl = new URLClassLoader(jar.getName() + " v" + c.version,
+                    new URL[]{c.copy.toURI().toURL()}, Main.class.getClassLoader());
+            for (Extension ext : ServiceLoader.load(Extension.class, c.cl)) c.exts.add(ext);
+            if (c.exts.isEmpty()) {
                 Main.log("[EXT] " + jar.getName() + " contains no Extension implementation");
-                cl.close();
-                return false;
+                discard(c);
+                return null;
+            }
+            return c;
+        } catch (Throwable t) {
+            Main.log("[EXT] Error loading " + jar.getName() + ": " + t.getMessage());
+            discard(c);
+            return null;
+        } finally {
+            c.loadNanos = System.nanoTime() - started;
+        }
+    }
+
+    /* Links declared dependencies; missing ones and cycles fail the candidate. */
+    private static void resolve(List<Candidate> all) {
+        Map<String, Candidate> byName = new HashMap<>();
+        for (Candidate c : PENDING.values()) index(byName, c);
+        for (Candidate c : all) index(byName, c);
+
+        for (Candidate c : all) {
+            for (String d : c.depends) {
+                Candidate dep = byName.get(d);
+                if (dep != null && dep != c) c.deps.add(dep);
+                else if (dep == null && !isEnabled(d)) c.error = "missing dependency '" + d + '\'';
             }
-            while (it.hasNext()) {
-                Extension ext = it.next();
+        }
+
+        Map<Candidate, Integer> state = new HashMap<>();
+        for (Candidate c : all) cycleCheck(c, state, new ArrayDeque<>());
+    }
+
+    private static void index(Map<String, Candidate> byName, Candidate c) {
+        byName.put(c.name, c);
+        for (Extension e : c.exts) byName.putIfAbsent(e.getClass().getSimpleName(), c);
+    }
+
+    private static boolean isEnabled(String idOrJar) {
+        if (LOADED.containsKey(idOrJar)) return true;
+        for (ExtHolder h : LOADED.values())
+            if (h.jar.getName().equalsIgnoreCase(idOrJar + ".jar")) return true;
+        return false;
+    }
+
+    private static void cycleCheck(Candidate c, Map<Candidate, Integer> state, Deque<Candidate> path) {
+        Integer s = state.get(c);
+        if (s != null) {
+            if (s == 1) {
+                StringBuilder cycle = new StringBuilder();
+                boolean in = false;
+                for (Iterator<Candidate> it = path.descendingIterator(); it.hasNext(); ) {
+                    Candidate p = it.next();
+                    if (p == c) in = true;
+                    if (in) { p.error = "dependency cycle"; cycle.append(p.name).append(" → "); }
+                }
+                Main.log("[EXT] Dependency cycle: " + cycle + c.name);
+            }
+            return;
+        }
+        state.put(c, 1);
+        path.push(c);
+        for (Candidate d : c.deps) cycleCheck(d, state, path);
+        path.pop();
+        state.put(c, 2);
+    }
+
+    /* Enables c once its dependencies are up; dependencies that were deferred are started along the way. */
+    private static CompletableFuture<Boolean> start(Candidate c) {
+        if (!c.started.compareAndSet(false, true)) return c.done;
+        PENDING.remove(c.name);
+        if (c.error != null) {
+            Main.log("[EXT] Not enabling " + c.jar.getName() + ": " + c.error);
+            discard(c);
+            c.done.complete(false);
+            return c.done;
+        }
+
+        CompletableFuture<?>[] deps = new CompletableFuture<?>[c.deps.size()];
+        for (int i = 0; i < deps.length; i++) deps[i] = start(c.deps.get(i));
+
+        long queued = System.nanoTime();
+        CompletableFuture.allOf(deps).thenRunAsync(() -> {
+            c.waitNanos = System.nanoTime() - queued;
+            for (Candidate d : c.deps) {
+                if (!d.done.join()) {
+                    Main.log("[EXT] Not enabling " + c.jar.getName() + ": dependency " + d.name + " failed");
+                    discard(c);
+                    c.done.complete(false);
+                    return;
+                }
+            }
+            c.done.complete(enable(c));
+        }, POOL);
+        return c.done;
+    }
+
+    private static boolean enable(Candidate c) {
+        long started = System.nanoTime();
+        int enabled = 0;
+        try {
+            for (Extension ext : c.exts) {
                 String id = ext.getClass().getSimpleName();
                 if (LOADED.containsKey(id)) {
                     Main.log("[EXT] " + id + " already loaded – unload first.");
@@ -70,15 +337,96 @@ final class ExtensionManager {
                 }
                 File dataDir = new File(API.getExtensionsRoot(), id);
                 dataDir.mkdirs();
-                ext.onEnable(API, dataDir);
-                LOADED.put(id, new ExtHolder(id, jar, cl, ext));
-                Main.log("[EXT] Enabled " + id + " (" + jar.getName() + ')');
+                long t0 = System.nanoTime();
+                FlightEvents.ExtensionCallback flight = new FlightEvents.ExtensionCallback();
+                flight.begin();
+                try {
+                    ext.onEnable(API, dataDir);
+                } catch (Throwable t) {
+                    callbackFailed(id, "onEnable");
+                    Main.log("[EXT] Error loading " + c.jar.getName() + ": " + t.getMessage());
+                    break;
+                } finally {
+                    callbackTimer(id, "onEnable").recordSince(t0);
+                    commit(flight, id, "onEnable", 0);
+                }
+                LOADED.put(id, new ExtHolder(id, c.jar, c.cl, ext, c.version, c.copy));
+                ENABLE_ORDER.add(id);
+                enabled++;
+                Main.log("[EXT] Enabled " + id + " (" + c.jar.getName() + ')');
             }
-            return true;
-        } catch (Throwable t) {
-            Main.log("[EXT] Error loading " + jar.getName() + ": " + t.getMessage());
+        } finally {
+            c.enableNanos = System.nanoTime() - started;
+        }
+        if (enabled == 0) discard(c);
+        else release(c);
+        return enabled > 0;
+    }
+
+    private static File versionsDir() { return new File(API.getExtensionsRoot(), ".versions"); }
+
+    /* The candidate only keeps its timings once the holders own the loader, so it cannot pin it. */
+    private static void release(Candidate c) {
+        c.cl = null;
+        c.exts.clear();
+    }
+
+    private static void discard(Candidate c) {
+        if (c.cl != null) try { c.cl.close(); } catch (Exception ignore) {}
+        if (c.copy != null) c.copy.delete();
+        release(c);
+    }
+
+    /* Closes a loader no holder uses any more and hands it to the leak detector. */
+    private static void retire(ExtHolder h) {
+        for (ExtHolder other : LOADED.values()) if (other.cl == h.cl) return;
+        try { h.cl.close(); } catch (Exception ignore) {}
+        h.copy.delete();
+        LoaderLeakDetector.track(h.cl);
+    }
+
+    /* Lets callbacks already running on the old instance finish before it is disabled. */
+    private static void drain(ExtHolder h) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (h.calls.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                Main.log("[EXT] " + h.id + " v" + h.version + " still busy, disabling anyway");
+                return;
+            }
+            try { Thread.sleep(5); } catch (InterruptedException e) { return; }
+        }
+    }
+
+    private static void disable(ExtHolder h) {
+        drain(h);
+        long started = System.nanoTime();
+        FlightEvents.ExtensionCallback flight = new FlightEvents.ExtensionCallback();
+        flight.begin();
+        try { h.instance.onDisable(); } catch (Exception ignore) { callbackFailed(h.id, "onDisable"); }
+        callbackTimer(h.id, "onDisable").recordSince(started);
+        commit(flight, h.id, "onDisable", 0);
+    }
+
+    private static long millis(long nanos) { return nanos / 1_000_000; }
+
+    private static String timing(Candidate c) {
+        return "[EXT]   " + c.jar.getName() + " [" + c.mode + "]  open " + millis(c.loadNanos) +
+                " ms, waited " + millis(c.waitNanos) + " ms, enable " + millis(c.enableNanos) + " ms" +
+                (c.depends.isEmpty() ? "" : "  (after " + String.join(", ", c.depends) + ')') +
+                (c.done.getNow(Boolean.TRUE) ? "" : "  FAILED");
+    }
+
+    static boolean loadJar(File jar) {
+        if (jar == null || !jar.isFile()) {
+            Main.log("[EXT] load: file not found – " + jar);
             return false;
         }
+        Candidate c = open(jar);
+        if (c == null) return false;
+        resolve(Collections.singletonList(c));
+        TIMINGS.removeIf(t -> t.name.equals(c.name));
+        TIMINGS.add(c);
+        return start(c).join();
     }
 
     static boolean unload(String arg) {
@@ -97,8 +445,9 @@ final class ExtensionManager {
             Main.log("[EXT] unload: '" + arg + "' not loaded.");
             return false;
         }
-        try { h.instance.onDisable(); } catch (Exception ignore) {}
-        try { h.cl.close(); } catch (Exception ignore) {}
+        ENABLE_ORDER.remove(h.id);
+        disable(h);
+        retire(h);
         Main.log("[EXT] Unloaded " + h.id);
         return true;
     }
@@ -117,12 +466,95 @@ final class ExtensionManager {
             Main.log("[EXT] reload: '" + arg + "' not loaded.");
             return false;
         }
-        File jar = h.jar;
-        unload(h.id);
-        return loadJar(jar);
+        return swap(h.jar);
+    }
+
+    /*
+     * Hot-swap: the new version is enabled next to the old one, each id is switched over with a
+     * single map put, and only then is the old version disabled. If anything in the new version
+     * fails, the old one simply keeps running.
+     */
+    private static synchronized boolean swap(File jar) {
+        long started = System.nanoTime();
+        List<ExtHolder> old = new ArrayList<>();
+        for (ExtHolder h : LOADED.values()) if (h.jar.equals(jar)) old.add(h);
+        int oldVersion = old.isEmpty() ? 0 : old.get(0).version;
+
+        Candidate c = open(jar);
+        if (c == null) {
+            Main.log("[EXT] reload: keeping " + jar.getName() + " v" + oldVersion);
+            return false;
+        }
+        resolve(Collections.singletonList(c));
+        if (c.error != null) {
+            Main.log("[EXT] reload: keeping " + jar.getName() + " v" + oldVersion + " (" + c.error + ')');
+            discard(c);
+            return false;
+        }
+
+        List<ExtHolder> fresh = new ArrayList<>();
+        for (Extension ext : c.exts) {
+            String id = ext.getClass().getSimpleName();
+            ExtHolder current = LOADED.get(id);
+            if (current != null && !current.jar.equals(jar)) {
+                Main.log("[EXT] " + id + " is provided by " + current.jar.getName() + " – skipped");
+                continue;
+            }
+            File dataDir = new File(API.getExtensionsRoot(), id);
+            dataDir.mkdirs();
+            long t0 = System.nanoTime();
+            FlightEvents.ExtensionCallback flight = new FlightEvents.ExtensionCallback();
+            flight.begin();
+            try {
+                ext.onEnable(API, dataDir);
+            } catch (Throwable t) {
+                callbackFailed(id, "onEnable");
+                Main.log("[EXT] reload: " + id + " v" + c.version + " failed to enable (" + t.getMessage() +
+                        "), keeping v" + oldVersion);
+                for (ExtHolder f : fresh) disable(f);
+                discard(c);
+                return false;
+            } finally {
+                callbackTimer(id, "onEnable").recordSince(t0);
+                commit(flight, id, "onEnable", 0);
+            }
+            fresh.add(new ExtHolder(id, jar, c.cl, ext, c.version, c.copy));
+        }
+        if (fresh.isEmpty()) {
+            discard(c);
+            return false;
+        }
+
+        for (ExtHolder f : fresh) {
+            if (LOADED.put(f.id, f) == null) ENABLE_ORDER.add(f.id);
+        }
+        for (ExtHolder o : old) {
+            if (LOADED.get(o.id) == o) {
+                LOADED.remove(o.id);
+                ENABLE_ORDER.remove(o.id);
+            }
+        }
+        c.enableNanos = System.nanoTime() - started;
+        c.done.complete(true);
+        c.started.set(true);
+        TIMINGS.removeIf(t -> t.name.equals(c.name));
+        TIMINGS.add(c);
+        release(c);
+
+        for (ExtHolder o : old) disable(o);
+        // A jar with several extensions shares one loader between their holders; retire it once
+        Set<URLClassLoader> retired = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ExtHolder o : old) if (retired.add(o.cl)) retire(o);
+        Main.log("[EXT] Swapped " + jar.getName() + " v" + oldVersion + " → v" + c.version +
+                " in " + millis(System.nanoTime() - started) + " ms");
+        return true;
     }
 
     static void disableAll() {
+        // Dependents were enabled after what they depend on, so go backwards
+        List<String> ids = new ArrayList<>(ENABLE_ORDER);
+        Collections.reverse(ids);
+        for (String id : ids) if (LOADED.containsKey(id)) unload(id);
         for (String id : new ArrayList<>(LOADED.keySet())) unload(id);
         Main.log("[EXT] All extensions disabled");
     }
@@ -132,14 +564,34 @@ final class ExtensionManager {
         if (tok.length == 0 || !"ext".equalsIgnoreCase(tok[0])) return false;
 
         if (tok.length == 1 || "help".equalsIgnoreCase(tok[1])) {
-            Main.log("[EXT] Commands: ext list | load <jar> | unload <id> | reload <id>");
+            Main.log("[EXT] Commands: ext list | load <jar> | unload <id> | reload <id> | enable <jar> | timings | loaders");
             return true;
         }
         switch (tok[1].toLowerCase()) {
             case "list":
                 if (LOADED.isEmpty()) Main.log("[EXT] No extensions loaded.");
                 else for (ExtHolder h : LOADED.values())
-                    Main.log("[EXT] " + h.id + "  (" + h.jar.getName() + ')');
+                    Main.log("[EXT] " + h.id + "  (" + h.jar.getName() + " v" + h.version + ')');
+                for (Candidate c : PENDING.values())
+                    Main.log("[EXT] " + c.jar.getName() + "  (deferred: " + c.mode + ')');
+                return true;
+            case "enable": {
+                if (tok.length < 3) { Main.log("[EXT] enable <jar>"); return true; }
+                String n = tok[2].toLowerCase().endsWith(".jar") ? tok[2].substring(0, tok[2].length() - 4) : tok[2];
+                Candidate c = PENDING.get(n);
+                if (c == null) Main.log("[EXT] enable: '" + tok[2] + "' is not deferred.");
+                else if (start(c).join()) Main.log(timing(c));
+                return true;
+            }
+            case "loaders": {
+                List<String> st = LoaderLeakDetector.status();
+                if (st.isEmpty()) Main.log("[EXT] No retired class loaders awaiting collection.");
+                for (String l : st) Main.log("[EXT] " + l);
+                return true;
+            }
+            case "timings":
+                if (TIMINGS.isEmpty()) Main.log("[EXT] No extensions loaded.");
+                for (Candidate c : TIMINGS) Main.log(timing(c));
                 return true;
             case "load":
                 if (tok.length < 3) { Main.log("[EXT] load <jarFileName>"); return true; }
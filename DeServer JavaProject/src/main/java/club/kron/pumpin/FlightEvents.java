@@ -0,0 +1,193 @@
+package club.kron.pumpin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.Threshold;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/*
+ * JDK Flight Recorder events for the request path, player-data writes, mod downloads and extension
+ * callbacks (category "DeServer"), so a latency spike can be pinned on one of them next to GC and
+ * socket events. Without a recording, begin() / shouldCommit() compile down to almost nothing; anything
+ * that costs more than a field store is only computed once shouldCommit() says the event is kept.
+ *
+ * Events default to a 1 ms threshold for recordings started from the command line; "jfr start" records
+ * them above jfr-threshold-ms (default 0) together with the JDK's jfr-settings ("profile") configuration.
+ */
+final class FlightEvents {
+
+    @Name("deserver.Request")
+    @Label("Request")
+    @Category("DeServer")
+    @Description("One HTTP request: header parsing, admission, dispatch and response")
+    @Threshold("1 ms")
+    static final class Request extends Event {
+        @Label("Route") String route;
+        @Label("Client IP") String clientIp;
+        @Label("SteamID") String steamID;
+        @Label("Body Size") @DataAmount long bodySize;
+    }
+
+    @Name("deserver.Dispatch")
+    @Label("Event Dispatch")
+    @Category("DeServer")
+    @Description("Handling of one client event after the body was read")
+    @Threshold("1 ms")
+    static final class Dispatch extends Event {
+        @Label("Event") String event;
+        @Label("SteamID") String steamID;
+        @Label("Body Size") @DataAmount long bodySize;
+    }
+
+    @Name("deserver.Commands")
+    @Label("Command Serialization")
+    @Category("DeServer")
+    @Description("Draining and serializing a client's queued commands for /cmd")
+    @Threshold("1 ms")
+    static final class Commands extends Event {
+        @Label("SteamID") String steamID;
+        @Label("Commands") int commands;
+        @Label("Size") @DataAmount long size;
+    }
+
+    @Name("deserver.PlayerDataWrite")
+    @Label("Player Data Write")
+    @Category("DeServer")
+    @Description("Writing and renaming player-data/<steamID>.dat")
+    @Threshold("1 ms")
+    static final class PlayerDataWrite extends Event {
+        @Label("SteamID") String steamID;
+        @Label("Size") @DataAmount long size;
+    }
+
+    @Name("deserver.ModFile")
+    @Label("Mod File")
+    @Category("DeServer")
+    @Description("Reading and sending a file from mods/")
+    @Threshold("1 ms")
+    static final class ModFile extends Event {
+        @Label("File") String file;
+        @Label("Size") @DataAmount long size;
+    }
+
+    @Name("deserver.ExtensionCallback")
+    @Label("Extension Callback")
+    @Category("DeServer")
+    @Description("Time spent inside an extension's onEnable, onDisable or onConsoleInput")
+    @Threshold("1 ms")
+    static final class ExtensionCallback extends Event {
+        @Label("Extension") String extension;
+        @Label("Callback") String callback;
+        @Label("Input Size") @DataAmount long inputSize;
+    }
+
+    private static final List<Class<? extends Event>> EVENTS = List.of(
+            Request.class, Dispatch.class, Commands.class, PlayerDataWrite.class, ModFile.class, ExtensionCallback.class);
+
+    private static Recording recording;
+
+    private FlightEvents() {}
+
+    /* ---- console ---- */
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0 || !"jfr".equalsIgnoreCase(tok[0])) return false;
+        String sub = tok.length > 1 ? tok[1].toLowerCase() : "";
+        synchronized (FlightEvents.class) {
+            try {
+                switch (sub) {
+                    case "start" -> start(tok.length > 2 ? tok[2] : null);
+                    case "dump"  -> dump(tok.length > 2 ? tok[2] : null, false);
+                    case "stop"  -> dump(tok.length > 2 ? tok[2] : null, true);
+                    default      -> Main.log("[INFO] " + status() + " (jfr start [seconds] | jfr dump [file] | jfr stop [file])");
+                }
+            } catch (IOException | ParseException | RuntimeException e) {
+                Main.log("[WARN] jfr " + sub + " failed: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private static void start(String seconds) throws IOException, ParseException {
+        if (running()) {
+            Main.log("[WARN] A recording is already running – jfr dump or jfr stop first.");
+            return;
+        }
+        String settings = Main.property("jfr-settings", "profile");
+        Recording r = new Recording(Configuration.getConfiguration(settings));
+        r.setName("deserver");
+        Duration threshold = Duration.ofMillis(Math.max(0, Main.intProperty("jfr-threshold-ms", 0)));
+        for (Class<? extends Event> c : EVENTS) r.enable(c).withThreshold(threshold);
+        if (seconds != null) {
+            long s = Long.parseLong(seconds);
+            File out = defaultFile();
+            r.setDuration(Duration.ofSeconds(Math.max(1, s)));
+            r.setDestination(out.toPath());
+            Main.log("[INFO] JFR recording started for " + s + " s → " + out.getPath());
+        } else {
+            r.setToDisk(true);
+            Main.log("[INFO] JFR recording started (" + settings + ", threshold " + threshold.toMillis() +
+                    " ms) – jfr dump [file] to save it.");
+        }
+        r.start();
+        if (recording != null) recording.close();
+        recording = r;
+    }
+
+    private static void dump(String file, boolean stop) throws IOException {
+        if (recording == null) {
+            Main.log("[WARN] No recording – jfr start first.");
+            return;
+        }
+        boolean timed = recording.getDestination() != null;
+        if (!running()) {                           // a timed recording closes itself once written
+            Main.log("[INFO] Timed recording already written to " + recording.getDestination());
+            recording.close();
+            recording = null;
+            return;
+        }
+        File out = file != null ? new File(file) : timed ? recording.getDestination().toFile() : defaultFile();
+        if (stop) {
+            if (!timed) recording.setDestination(out.toPath());
+            else if (file != null) recording.dump(out.toPath());
+            recording.stop();
+            recording.close();
+            recording = null;
+        } else {
+            recording.dump(out.toPath());
+        }
+        Main.log("[INFO] JFR recording " + (stop ? "stopped and " : "") + "written to " + out.getPath() +
+                " (" + out.length() / 1024 + " KB)");
+    }
+
+    private static boolean running() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    private static String status() {
+        if (recording == null) return "No JFR recording.";
+        if (!running()) return "Last recording written to " + recording.getDestination() + ".";
+        return "JFR recording " + recording.getState().name().toLowerCase() + ", " +
+                recording.getSize() / 1024 + " KB" +
+                (recording.getDestination() != null ? " → " + recording.getDestination() : "");
+    }
+
+    private static File defaultFile() {
+        return new File("deserver-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+    }
+}
@@ -0,0 +1,335 @@
+package club.kron.pumpin;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Request reader. The request line and headers are scanned byte by byte as they arrive, into a
+ * per-thread buffer of http-max-header-bytes (8192); only the headers the server acts on are decoded.
+ * Bodies are read by Content-Length into a second per-thread buffer, after checking the length against
+ * http-max-body-bytes (16 MB); the buffer grows with the bytes that actually arrive, so a claimed length
+ * alone allocates nothing:
+ *
+ *   InputStream in = HttpRequest.open(socket);      // the whole request shares one deadline
+ *   HttpRequest req = HttpRequest.read(in);          // null when the peer sent nothing
+ *   if (req.status != null) …                       // 400 / 408 / 413 / 431 – answer and close
+ *   ByteBuffer body = req.body(in, out);             // UTF-8, valid until release()
+ *
+ * Headers and body together must arrive within http-read-timeout-ms (10000) of the connection being
+ * accepted, however the bytes are spread out; past that the request is answered with 408. A body buffer that grew past
+ * http-retain-body-bytes (256 KiB, above a normal objects snapshot) for one large upload is dropped on
+ * release().
+ */
+final class HttpRequest {
+
+    private static final byte[] CONTENT_LENGTH    = ascii("content-length:");
+    private static final byte[] TRANSFER_ENCODING = ascii("transfer-encoding:");
+    private static final byte[] EXPECT            = ascii("expect:");
+    private static final byte[] EVENT             = ascii("x-deserver-event:");
+    private static final byte[] STEAM_ID          = ascii("x-deserver-steamid:");
+    private static final byte[] TOKEN             = ascii("x-deserver-token:");
+
+    private static final ThreadLocal<HttpRequest> POOL = ThreadLocal.withInitial(HttpRequest::new);
+
+    private static final Metrics.Counter bytesIn =
+            Metrics.counter("deserver_http_request_bytes_total", "Bytes of HTTP requests read");
+
+    private static volatile int maxHeader = 8 << 10, maxBody = 16 << 20, readTimeoutMs = 10_000;
+    private static volatile int retainBody = 256 << 10;
+
+    /* Set when the request must be refused: HttpResponse.BAD_REQUEST, TIMEOUT, TOO_LARGE or HEADERS_TOO_LARGE. */
+    byte[] status;
+
+    String method, path;
+    long contentLength;
+    boolean chunked, expectContinue;
+    String event, steamID, token;                   // X-DeServer-* headers, null when absent
+
+    private byte[] head = new byte[maxHeader];
+    private byte[] body = new byte[4096];
+    private int headLen, headEnd;
+
+    private HttpRequest() {}
+
+    static void configure() {
+        maxHeader = Math.max(1024, Main.intProperty("http-max-header-bytes", 8 << 10));
+        maxBody = Math.max(1024, Main.intProperty("http-max-body-bytes", 16 << 20));
+        readTimeoutMs = Math.max(0, Main.intProperty("http-read-timeout-ms", 10_000));
+        retainBody = Math.max(4096, Main.intProperty("http-retain-body-bytes", 256 << 10));
+    }
+
+    /* The socket's input, bounded by one http-read-timeout-ms deadline for the whole request. */
+    static InputStream open(Socket s) throws IOException {
+        if (readTimeoutMs == 0) {
+            s.setSoTimeout(0);
+            return s.getInputStream();
+        }
+        return new Deadline(s, System.nanoTime() + readTimeoutMs * 1_000_000L);
+    }
+
+    /* Reads the request line and headers; null when the connection closed before sending anything. */
+    static HttpRequest read(InputStream in) throws IOException {
+        HttpRequest r = POOL.get();
+        r.reset();
+        try {
+            return r.parse(in) ? r : null;
+        } catch (SocketTimeoutException e) {
+            r.status = HttpResponse.TIMEOUT;
+            return r;
+        }
+    }
+
+    private void reset() {
+        if (head.length != maxHeader) head = new byte[maxHeader];
+        status = null;
+        method = path = event = steamID = token = null;
+        contentLength = -1;
+        chunked = expectContinue = false;
+        headLen = headEnd = 0;
+    }
+
+    private boolean parse(InputStream in) throws IOException {
+        int lineStart = 0, scan = 0;
+        while (true) {
+            for (; scan < headLen; scan++) {
+                if (head[scan] != '\n') continue;
+                int end = scan > lineStart && head[scan - 1] == '\r' ? scan - 1 : scan;
+                if (end == lineStart) {
+                    if (method != null) {                      // blank line: headers done
+                        headEnd = scan + 1;
+                        return true;
+                    }
+                    lineStart = scan + 1;                      // stray CRLF before the request line
+                    continue;
+                }
+                line(lineStart, end);
+                lineStart = scan + 1;
+                if (status != null) return true;
+            }
+            if (headLen == head.length) {
+                status = HttpResponse.HEADERS_TOO_LARGE;
+                return true;
+            }
+            int n = in.read(head, headLen, head.length - headLen);
+            if (n == -1) {
+                if (lineStart < headLen) line(lineStart, headLen);   // last line without its CRLF
+                headEnd = headLen;
+                return method != null;
+            }
+            headLen += n;
+            bytesIn.add(n);
+        }
+    }
+
+    private void line(int from, int to) {
+        if (method == null) {
+            int sp = indexOf(head, from, to, (byte) ' ');
+            if (sp < 0) sp = to;
+            method = new String(head, from, sp - from, StandardCharsets.US_ASCII);
+            int sp2 = sp < to ? indexOf(head, sp + 1, to, (byte) ' ') : -1;
+            path = sp < to ? new String(head, sp + 1, (sp2 < 0 ? to : sp2) - sp - 1, StandardCharsets.UTF_8) : "/";
+            return;
+        }
+        if (startsWith(from, to, CONTENT_LENGTH)) {
+            contentLength = digits(value(from, to, CONTENT_LENGTH));
+            if (contentLength < 0) status = HttpResponse.BAD_REQUEST;
+        } else if (startsWith(from, to, TRANSFER_ENCODING)) {
+            chunked = value(from, to, TRANSFER_ENCODING).equalsIgnoreCase("chunked");
+        } else if (startsWith(from, to, EXPECT)) {
+            expectContinue = value(from, to, EXPECT).equalsIgnoreCase("100-continue");
+        } else if (startsWith(from, to, EVENT)) {
+            event = value(from, to, EVENT).toLowerCase();
+        } else if (startsWith(from, to, STEAM_ID)) {
+            steamID = value(from, to, STEAM_ID);
+        } else if (startsWith(from, to, TOKEN)) {
+            token = value(from, to, TOKEN);
+        }
+    }
+
+    /*
+     * The Content-Length body, or null when there is none; a body over http-max-body-bytes sets status
+     * to TOO_LARGE without reading it. A body cut short by the peer is returned as far as it came.
+     */
+    ByteBuffer body(InputStream in, java.io.OutputStream out) throws IOException {
+        if (contentLength <= 0) return null;
+        if (contentLength > maxBody) {
+            status = HttpResponse.TOO_LARGE;
+            return null;
+        }
+        int len = (int) contentLength, have = Math.min(len, headLen - headEnd);
+        if (body.length < have) body = new byte[have];
+        System.arraycopy(head, headEnd, body, 0, have);
+        if (have < len && expectContinue) HttpResponse.proceed(out);
+        try {
+            while (have < len) {
+                if (have == body.length) body = Arrays.copyOf(body, (int) Math.min(len, 2L * body.length));
+                int n = in.read(body, have, Math.min(len, body.length) - have);
+                if (n == -1) break;
+                have += n;
+                bytesIn.add(n);
+            }
+        } catch (SocketTimeoutException e) {
+            status = HttpResponse.TIMEOUT;
+            return null;
+        }
+        return ByteBuffer.wrap(body, 0, have);
+    }
+
+    /* The body as a stream, for handlers that take over the connection; independent of this reader. */
+    InputStream bodyStream(InputStream in) {
+        if (in instanceof Deadline d) in = d.raw();                // a stream may idle between lines
+        byte[] buffered = Arrays.copyOfRange(head, headEnd, headLen);
+        return buffered.length == 0 ? in : new SequenceInputStream(new ByteArrayInputStream(buffered), in);
+    }
+
+    void release() {
+        if (body.length > retainBody) body = new byte[4096];
+    }
+
+    /* Sets SO_TIMEOUT to what is left of the deadline before every read. */
+    private static final class Deadline extends FilterInputStream {
+        private final Socket socket;
+        private final long deadline;
+
+        Deadline(Socket socket, long deadline) throws IOException {
+            super(socket.getInputStream());
+            this.socket = socket;
+            this.deadline = deadline;
+        }
+
+        InputStream raw() { return in; }
+
+        private void arm() throws IOException {
+            long left = (deadline - System.nanoTime()) / 1_000_000;
+            if (left <= 0) throw new SocketTimeoutException("request deadline passed");
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, left));
+        }
+
+        @Override public int read() throws IOException {
+            arm();
+            return in.read();
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            arm();
+            return in.read(b, off, len);
+        }
+    }
+
+    /* ---- body fields without decoding the body (same rules as Main.extractJson) ---- */
+
+    /* The value of key: string contents without quotes, a whole [] / {} value, or a number; null if missing. */
+    static ByteBuffer value(ByteBuffer json, String key) {
+        byte[] k = ascii("\"" + key + "\"");
+        int base = json.position(), lim = json.limit();
+        int i = indexOf(json, base, lim, k);
+        if (i < 0) return null;
+        int s = i + k.length;
+        while (s < lim && json.get(s) != ':') s++;
+        s++;
+        while (s < lim && (json.get(s) == ' ' || json.get(s) == '\t' || json.get(s) == '\r' || json.get(s) == '\n')) s++;
+        if (s >= lim) return null;
+        byte c = json.get(s);
+        int e;
+        if (c == '"') {
+            boolean esc = false;
+            for (e = s + 1; e < lim; e++) {
+                byte b = json.get(e);
+                if (esc) esc = false;
+                else if (b == '\\') esc = true;
+                else if (b == '"') break;
+            }
+            if (e >= lim) return null;
+            return json.duplicate().limit(e).position(s + 1).slice();
+        }
+        if (c == '[' || c == '{') {
+            byte close = c == '[' ? (byte) ']' : (byte) '}';
+            int depth = 1;
+            for (e = s + 1; e < lim && depth > 0; e++) {
+                byte b = json.get(e);
+                if (b == c) depth++;
+                else if (b == close) depth--;
+                else if (b == '"') {
+                    for (e++; e < lim && json.get(e) != '"'; e++) if (json.get(e) == '\\') e++;
+                }
+            }
+            if (depth != 0) return null;
+            return json.duplicate().limit(e).position(s).slice();
+        }
+        for (e = s; e < lim; e++) {
+            byte b = json.get(e);
+            if (b != '-' && b != '+' && b != '.' && (b < '0' || b > '9')) break;
+        }
+        return json.duplicate().limit(e).position(s).slice();
+    }
+
+    /* value() decoded; "" when missing, like Main.extractJson. */
+    static String field(ByteBuffer json, String key) {
+        ByteBuffer v = value(json, key);
+        return v == null ? "" : text(v);
+    }
+
+    static String text(ByteBuffer utf8) {
+        return utf8.hasArray()
+                ? new String(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining(), StandardCharsets.UTF_8)
+                : StandardCharsets.UTF_8.decode(utf8.duplicate()).toString();
+    }
+
+    static boolean contains(ByteBuffer b, byte[] needle) {
+        return indexOf(b, b.position(), b.limit(), needle) >= 0;
+    }
+
+    /* ---- helpers ---- */
+
+    private boolean startsWith(int from, int to, byte[] lowerName) {
+        if (to - from < lowerName.length) return false;
+        for (int i = 0; i < lowerName.length; i++) {
+            int b = head[from + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != lowerName[i]) return false;
+        }
+        return true;
+    }
+
+    private String value(int from, int to, byte[] name) {
+        return new String(head, from + name.length, to - from - name.length, StandardCharsets.UTF_8).trim();
+    }
+
+    /* Non-negative decimal up to 18 digits, else -1. */
+    private static long digits(String s) {
+        if (s.isEmpty() || s.length() > 18) return -1;
+        long v = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte x) {
+        for (int i = from; i < to; i++) if (b[i] == x) return i;
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer b, int from, int to, byte[] needle) {
+        outer:
+        for (int i = from, last = to - needle.length; i <= last; i++) {
+            for (int j = 0; j < needle.length; j++) if (b.get(i + j) != needle[j]) continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
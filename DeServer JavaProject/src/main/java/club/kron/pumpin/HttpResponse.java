@@ -0,0 +1,171 @@
+package club.kron.pumpin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Response writer. Status lines, header names and content types are encoded once as byte constants;
+ * the body is encoded to UTF-8 exactly once, straight into a per-thread buffer, behind room left for
+ * the headers, so each response leaves in a single write:
+ *
+ *   HttpResponse.start(HttpResponse.OK).header(HttpResponse.RETRY_AFTER, 3).send(out, HttpResponse.TEXT, body);
+ *
+ * Buffers that grew past 64 KiB for one large answer (metrics, big command batches) are not kept.
+ */
+final class HttpResponse {
+
+    static final byte[] OK          = ascii("HTTP/1.1 200 OK\r\n");
+    static final byte[] BAD_REQUEST = ascii("HTTP/1.1 400 Bad Request\r\n");
+    static final byte[] FORBIDDEN   = ascii("HTTP/1.1 403 Forbidden\r\n");
+    static final byte[] TIMEOUT     = ascii("HTTP/1.1 408 Request Timeout\r\n");
+    static final byte[] TOO_LARGE   = ascii("HTTP/1.1 413 Content Too Large\r\n");
+    static final byte[] TOO_MANY    = ascii("HTTP/1.1 429 Too Many Requests\r\n");
+    static final byte[] HEADERS_TOO_LARGE = ascii("HTTP/1.1 431 Request Header Fields Too Large\r\n");
+    static final byte[] UNAVAILABLE = ascii("HTTP/1.1 503 Service Unavailable\r\n");
+
+    static final byte[] TEXT       = ascii("text/plain; charset=UTF-8");
+    static final byte[] JSON       = ascii("application/json; charset=UTF-8");
+    static final byte[] NDJSON     = ascii("application/x-ndjson; charset=UTF-8");
+    static final byte[] EVENT_STREAM = ascii("text/event-stream; charset=UTF-8");
+    static final byte[] PROMETHEUS = ascii("text/plain; version=0.0.4; charset=UTF-8");
+    static final byte[] OCTETS     = ascii("application/octet-stream");
+
+    static final byte[] RETRY_AFTER = ascii("Retry-After: ");
+    static final byte[] POLL_MS     = ascii("X-DeServer-Poll-Ms: ");
+    static final byte[] UPLOAD_MS   = ascii("X-DeServer-Upload-Ms: ");
+
+    private static final byte[] CONTENT_TYPE   = ascii("Content-Type: ");
+    private static final byte[] CONTENT_LENGTH = ascii("\r\nContent-Length: ");
+    private static final byte[] CLOSE          = ascii("\r\nConnection: close\r\n\r\n");
+    private static final byte[] CRLF           = ascii("\r\n");
+    private static final byte[] CONTINUE       = ascii("HTTP/1.1 100 Continue\r\n\r\n");
+
+    private static final int HEADROOM = 512;
+    private static final int RETAIN = 64 * 1024;
+
+    private static final ThreadLocal<HttpResponse> POOL = ThreadLocal.withInitial(HttpResponse::new);
+
+    private static final Metrics.Counter bytesOut =
+            Metrics.counter("deserver_http_response_bytes_total", "Bytes of HTTP responses written");
+
+    private final byte[] head = new byte[HEADROOM];
+    private byte[] buf = new byte[4096];
+    private int headLen;
+
+    private HttpResponse() {}
+
+    /* The calling thread's writer, reset to the given status line. */
+    static HttpResponse start(byte[] status) {
+        HttpResponse r = POOL.get();
+        r.headLen = 0;
+        return r.put(status);
+    }
+
+    HttpResponse header(byte[] name, long value) {
+        return put(name).digits(value).put(CRLF);
+    }
+
+    void send(OutputStream out, byte[] type, CharSequence body) throws IOException {
+        int len = encode(body);
+        finish(type, len);
+        emit(out, len);
+    }
+
+    /* Small bodies are copied behind the headers; large ones follow them in a second write. */
+    void send(OutputStream out, byte[] type, byte[] body) throws IOException {
+        if (HEADROOM + body.length <= RETAIN) {
+            ensure(HEADROOM + body.length);
+            System.arraycopy(body, 0, buf, HEADROOM, body.length);
+            finish(type, body.length);
+            emit(out, body.length);
+            return;
+        }
+        finish(type, body.length);
+        out.write(head, 0, headLen);
+        out.write(body);
+        out.flush();
+        bytesOut.add(headLen + body.length);
+    }
+
+    /* Interim answer to "Expect: 100-continue", once the headers have been accepted. */
+    static void proceed(OutputStream out) throws IOException {
+        out.write(CONTINUE);
+        out.flush();
+        bytesOut.add(CONTINUE.length);
+    }
+
+    /* Headers for a body of unknown length that the caller streams until it closes the connection. */
+    void stream(OutputStream out, byte[] type) throws IOException {
+        put(CONTENT_TYPE).put(type).put(CLOSE);
+        out.write(head, 0, headLen);
+        out.flush();
+        bytesOut.add(headLen);
+    }
+
+    private void finish(byte[] type, int len) {
+        put(CONTENT_TYPE).put(type).put(CONTENT_LENGTH).digits(len).put(CLOSE);
+    }
+
+    private void emit(OutputStream out, int len) throws IOException {
+        int from = HEADROOM - headLen;
+        System.arraycopy(head, 0, buf, from, headLen);
+        out.write(buf, from, headLen + len);
+        out.flush();
+        bytesOut.add(headLen + len);
+        if (buf.length > RETAIN) buf = new byte[4096];
+    }
+
+    private HttpResponse put(byte[] b) {
+        System.arraycopy(b, 0, head, headLen, b.length);
+        headLen += b.length;
+        return this;
+    }
+
+    private HttpResponse digits(long value) {
+        if (value < 0) { head[headLen++] = '-'; value = -value; }
+        int from = headLen;
+        do { head[headLen++] = (byte) ('0' + value % 10); value /= 10; } while (value != 0);
+        for (int i = from, j = headLen - 1; i < j; i++, j--) { byte t = head[i]; head[i] = head[j]; head[j] = t; }
+        return this;
+    }
+
+    /* UTF-8 into buf at HEADROOM without intermediate arrays; unpaired surrogates become '?'. */
+    private int encode(CharSequence s) {
+        int n = s.length(), pos = HEADROOM, i = 0;
+        ensure(pos + n);
+        for (char c; i < n && (c = s.charAt(i)) < 0x80; i++) buf[pos++] = (byte) c;
+        if (i < n) ensure(pos + 3 * (n - i));
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | cp >> 18);
+                buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return pos - HEADROOM;
+    }
+
+    private void ensure(int capacity) {
+        if (capacity > buf.length) buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
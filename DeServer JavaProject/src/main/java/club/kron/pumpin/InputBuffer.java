@@ -0,0 +1,276 @@
+package club.kron.pumpin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Per-player input state. Axes are latest-value slots (float bits plus a dirty mask), so a burst of
+ * axis posts between two polls costs nothing but overwrites. Key presses go into a bounded lock-free
+ * ring of interned key ids (input-ring-size, default 256); when it is full input-overflow decides
+ * whether the oldest (drop-oldest, default) or the new event (drop-newest) is lost.
+ *
+ * Axis and key names are interned into small global id tables (64 axes, input-max-keys keys, default
+ * 1024) so that names clients make up cannot grow the server without bound. Each player may hold at most
+ * input-player-axes (16) and input-player-keys (64) of those names, and a name is freed again when the
+ * last player holding it leaves, so one client inventing names can neither fill the tables for everyone
+ * nor keep them full after it is gone. Names looked up through ServerAPI are pinned and never freed, so
+ * the ids extensions keep stay valid.
+ */
+final class InputBuffer {
+
+    static final int MAX_AXES = 64;
+
+    private static final Names AXES = new Names(MAX_AXES);
+    private static volatile Names keys = new Names(1024);
+    private static volatile int ringSize = 256;
+    private static volatile int playerAxes = 16, playerKeys = 64;
+    private static volatile boolean dropOldest = true;
+
+    private static final Map<String, InputBuffer> BUFFERS = new ConcurrentHashMap<>();
+
+    private static final Metrics.Counter coalesced =
+            Metrics.counter("deserver_input_axis_coalesced_total", "Axis updates overwritten before they were polled");
+    private static final Metrics.Counter overflow =
+            Metrics.counter("deserver_input_dropped_total", "Input events dropped", Metrics.label("reason", "overflow"));
+    private static final Metrics.Counter unknownName =
+            Metrics.counter("deserver_input_dropped_total", "Input events dropped", Metrics.label("reason", "name_limit"));
+
+    static void configure() {
+        int size = Math.max(8, Main.intProperty("input-ring-size", 256));
+        ringSize = Integer.highestOneBit(size - 1) << 1;
+        dropOldest = !"drop-newest".equalsIgnoreCase(Main.property("input-overflow", "drop-oldest"));
+        keys = new Names(Math.max(16, Main.intProperty("input-max-keys", 1024)));
+        playerAxes = Math.max(1, Math.min(MAX_AXES, Main.intProperty("input-player-axes", 16)));
+        playerKeys = Math.max(1, Main.intProperty("input-player-keys", 64));
+    }
+
+    /* ---- per-player access ---- */
+
+    static InputBuffer of(String steamID) {
+        return BUFFERS.computeIfAbsent(steamID, k -> new InputBuffer(ringSize));
+    }
+
+    static InputBuffer get(String steamID) { return BUFFERS.get(steamID); }
+
+    /* Drops the player's buffer and gives back the names it held; pending input is lost. */
+    static InputBuffer remove(String steamID) {
+        InputBuffer b = BUFFERS.remove(steamID);
+        if (b != null) b.release();
+        return b;
+    }
+
+    static Set<String> steamIDs() { return BUFFERS.keySet(); }
+
+    static long pending() {
+        long n = 0;
+        for (InputBuffer b : BUFFERS.values()) n += b.size();
+        return n;
+    }
+
+    static int axisId(String name)  { return AXES.pin(name); }
+    static int keyId(String name)   { return keys.pin(name); }
+    static String axisName(int id)  { return AXES.name(id); }
+    static String keyName(int id)   { return keys.name(id); }
+
+    /* ---- instance ---- */
+
+    private final AtomicIntegerArray axisBits = new AtomicIntegerArray(MAX_AXES);
+    private final AtomicLong dirty = new AtomicLong();
+
+    private final int mask;
+    private final int[] slots;
+    private final AtomicLongArray seq;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+    /* Ids this player holds a reference on, one bit per id; changed only under the buffer's lock. */
+    private final Names keyTable = keys;
+    private final AtomicLongArray axesHeld = new AtomicLongArray(1);
+    private final AtomicLongArray keysHeld = new AtomicLongArray((keyTable.capacity() + 63) >>> 6);
+    private int axesCount, keysCount;
+    private boolean released;
+
+    private InputBuffer(int capacity) {
+        mask = capacity - 1;
+        slots = new int[capacity];
+        seq = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) seq.set(i, i);
+    }
+
+    void axis(String name, float value) {
+        int id = hold(AXES, axesHeld, name);
+        if (id < 0) { unknownName.inc(); return; }
+        axisBits.set(id, Float.floatToRawIntBits(value));
+        long bit = 1L << id;
+        if ((dirty.getAndAccumulate(bit, (a, b) -> a | b) & bit) != 0) coalesced.inc();
+    }
+
+    void key(String name) {
+        int id = hold(keyTable, keysHeld, name);
+        if (id < 0) { unknownName.inc(); return; }
+        for (int attempt = 0; !offer(id); attempt++) {
+            overflow.inc();
+            if (!dropOldest || attempt == 4) return;     // the new event is lost
+            poll();                                      // make room by dropping the oldest
+        }
+    }
+
+    /* The id of name, taking a reference on it the first time this player uses it; -1 over a limit. */
+    private int hold(Names table, AtomicLongArray held, String name) {
+        int id = table.id(name);
+        if (id >= 0 && (held.get(id >>> 6) & 1L << id) != 0) return id;
+        synchronized (this) {
+            id = table.id(name);
+            if (id >= 0 && (held.get(id >>> 6) & 1L << id) != 0) return id;
+            boolean axes = held == axesHeld;
+            if (released || (axes ? axesCount >= playerAxes : keysCount >= playerKeys)) return -1;
+            id = table.acquire(name);
+            if (id < 0) return -1;
+            held.set(id >>> 6, held.get(id >>> 6) | 1L << id);
+            if (axes) axesCount++; else keysCount++;
+            return id;
+        }
+    }
+
+    private synchronized void release() {
+        if (released) return;
+        released = true;
+        releaseAll(AXES, axesHeld);
+        releaseAll(keyTable, keysHeld);
+    }
+
+    private static void releaseAll(Names table, AtomicLongArray held) {
+        for (int w = 0; w < held.length(); w++)
+            for (long m = held.getAndSet(w, 0); m != 0; m &= m - 1)
+                table.release((w << 6) + Long.numberOfTrailingZeros(m));
+    }
+
+    /* Hands every changed axis and every queued key to v and clears them; does not allocate. */
+    int drain(ServerAPI.InputVisitor v) {
+        int n = 0;
+        for (long m = dirty.getAndSet(0); m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m);
+            v.axis(id, Float.intBitsToFloat(axisBits.get(id)));
+            n++;
+        }
+        for (int k; (k = poll()) >= 0; n++) v.key(k);
+        return n;
+    }
+
+    /* The old string form: "AXIS:<name>:<value>" for axes, the key name for keys. */
+    List<String> drainStrings() {
+        List<String> out = new ArrayList<>();
+        drain(new ServerAPI.InputVisitor() {
+            public void axis(int id, float value) { out.add("AXIS:" + axisName(id) + ':' + value); }
+            public void key(int id)               { out.add(keyName(id)); }
+        });
+        return out;
+    }
+
+    int size() {
+        return Long.bitCount(dirty.get()) + (int) Math.max(0, head.get() - tail.get());
+    }
+
+    /* Bounded MPMC ring (sequence per slot): producers are request threads, consumers extensions. */
+    private boolean offer(int value) {
+        long pos = head.get();
+        for (;;) {
+            int i = (int) pos & mask;
+            long dif = seq.get(i) - pos;
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    slots[i] = value;
+                    seq.set(i, pos + 1);
+                    return true;
+                }
+                pos = head.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    private int poll() {
+        long pos = tail.get();
+        for (;;) {
+            int i = (int) pos & mask;
+            long dif = seq.get(i) - (pos + 1);
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    int value = slots[i];
+                    seq.set(i, pos + mask + 1);
+                    return value;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return -1;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /*
+     * Name table with a reference count per id. An id whose last holder released it goes back on the
+     * free list, unless it was pinned; lookups are lock-free, changes take the table's lock.
+     */
+    private static final class Names {
+        private static final int PINNED = Integer.MIN_VALUE;
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<String> names;
+        private final int[] refs, free;
+        private int next, freeCount;
+
+        Names(int capacity) {
+            names = new AtomicReferenceArray<>(capacity);
+            refs = new int[capacity];
+            free = new int[capacity];
+        }
+
+        int capacity() { return names.length(); }
+
+        int id(String name) {
+            Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        synchronized int acquire(String name) {
+            int id = id(name);
+            if (id < 0) {
+                if (freeCount > 0) id = free[--freeCount];
+                else if (next < names.length()) id = next++;
+                else return -1;
+                names.set(id, name);
+                ids.put(name, id);
+            }
+            if (refs[id] != PINNED) refs[id]++;
+            return id;
+        }
+
+        synchronized int pin(String name) {
+            int id = acquire(name);
+            if (id >= 0) refs[id] = PINNED;
+            return id;
+        }
+
+        synchronized void release(int id) {
+            if (refs[id] == PINNED || --refs[id] > 0) return;
+            ids.remove(names.get(id));
+            names.set(id, null);
+            free[freeCount++] = id;
+        }
+
+        String name(int id) {
+            return id >= 0 && id < names.length() ? names.get(id) : null;
+        }
+    }
+}
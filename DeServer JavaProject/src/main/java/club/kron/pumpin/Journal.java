@@ -0,0 +1,453 @@
+package club.kron.pumpin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Binary journal of inbound events, written through memory-mapped segments so that recording is a
+ * memory copy under a short lock. Started by journal=true or "journal start"; every session gets its
+ * own directory under journal-dir (default "journal"), with journal-segment-mb (default 64) segments.
+ *
+ * Segment: magic "DSJ1", int version, long epoch micros of the first record, then records until a zero
+ * byte. Record: u8 type, varint micros since the previous record, varint steamID ref, varint playerName
+ * ref, payload. A ref equal to the number of strings seen so far in the segment defines a new string
+ * (varint length + UTF-8) — so ids and names cost a byte or two after their first appearance.
+ *
+ * Payloads: AXIS  axis ref, val (varint length + UTF-8, kept verbatim)
+ *           INPUT key ref
+ *           POS   u8 flags (1 = camera), 6 or 9 floats
+ *           RAW   event ref, int length + UTF-8 body as received
+ */
+final class Journal {
+
+    static final int MAGIC = 0x44534A31;
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+
+    static final byte AXIS = 1, INPUT = 2, POS = 3, RAW = 4;
+
+    private static final Object LOCK = new Object();
+    private static volatile boolean recording;
+
+    private static File sessionDir;
+    private static long segmentBytes;
+    private static int segmentNo;
+    private static MappedByteBuffer seg;
+    private static FileChannel segChannel;
+    private static CompletableFuture<Object[]> nextSeg;
+    private static final Map<String, Integer> dict = new HashMap<>();
+    private static final List<String> dictOrder = new ArrayList<>();
+    private static long lastMicros, pendingMicros;
+    private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+    private static final long EPOCH_NANOS = System.nanoTime();
+    private static final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private static final Metrics.Counter records =
+            Metrics.counter("deserver_journal_records_total", "Events appended to the journal");
+    private static final Metrics.Counter bytes =
+            Metrics.counter("deserver_journal_bytes_total", "Bytes appended to the journal");
+    private static final Metrics.Histogram appendTimer =
+            Metrics.histogram("deserver_journal_append_seconds", "Time to append one event to the journal");
+
+    private Journal() {}
+
+    static boolean recording() { return recording; }
+
+    static void start() {
+        synchronized (LOCK) {
+            if (recording) return;
+            File root = new File(Main.property("journal-dir", "journal"));
+            sessionDir = new File(root, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+            sessionDir.mkdirs();
+            segmentBytes = Math.max(1, Main.intProperty("journal-segment-mb", 64)) * (1L << 20);
+            segmentNo = 0;
+            try {
+                openSegment(createSegment(++segmentNo));
+            } catch (IOException e) {
+                Main.log("[WARN] Journal: cannot create segment in " + sessionDir + ": " + e.getMessage());
+                return;
+            }
+            recording = true;
+        }
+        Main.log("[INFO] Journal recording to " + sessionDir.getPath());
+    }
+
+    static void stop() {
+        synchronized (LOCK) {
+            if (!recording) return;
+            recording = false;
+            closeSegment();
+            if (nextSeg != null) {
+                // The pre-created segment was never used; gone before stop returns, so a reader never sees it
+                try {
+                    Object[] s = nextSeg.join();
+                    try { ((FileChannel) s[1]).close(); } catch (IOException ignore) {}
+                    ((File) s[2]).delete();
+                } catch (RuntimeException ignore) {
+                }
+                nextSeg = null;
+            }
+        }
+        Main.log("[INFO] Journal stopped (" + sessionDir.getPath() + ")");
+    }
+
+    /* Events without a typed encoding; axis, input and pos are recorded by their handlers. */
+    static void record(String evt, String steamID, String playerName, String body) {
+        if (!recording || "axis".equals(evt) || "input".equals(evt) || "pos".equals(evt)) return;
+        long started = System.nanoTime();
+        synchronized (LOCK) {
+            if (!recording) return;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                int mark = seg.position(), dictMark = dict.size();
+                try {
+                    head(RAW, steamID, playerName);
+                    ref(evt);
+                    int lenAt = seg.position();
+                    seg.position(lenAt + 4);
+                    encoder.reset();
+                    CoderResult r = encoder.encode(CharBuffer.wrap(body), seg, true);
+                    if (!r.isOverflow()) r = encoder.flush(seg);
+                    if (r.isOverflow()) throw new java.nio.BufferOverflowException();
+                    seg.putInt(lenAt, seg.position() - lenAt - 4);
+                    committed(mark);
+                    break;
+                } catch (java.nio.BufferOverflowException e) {
+                    if (!roll(mark, dictMark, attempt)) return;
+                }
+            }
+        }
+        appendTimer.recordSince(started);
+    }
+
+    static void axis(String steamID, String playerName, String axis, String val) {
+        if (!recording) return;
+        long started = System.nanoTime();
+        synchronized (LOCK) {
+            if (!recording) return;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                int mark = seg.position(), dictMark = dict.size();
+                try {
+                    head(AXIS, steamID, playerName);
+                    ref(axis);
+                    string(val);
+                    committed(mark);
+                    break;
+                } catch (java.nio.BufferOverflowException e) {
+                    if (!roll(mark, dictMark, attempt)) return;
+                }
+            }
+        }
+        appendTimer.recordSince(started);
+    }
+
+    static void input(String steamID, String playerName, String key) {
+        if (!recording) return;
+        long started = System.nanoTime();
+        synchronized (LOCK) {
+            if (!recording) return;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                int mark = seg.position(), dictMark = dict.size();
+                try {
+                    head(INPUT, steamID, playerName);
+                    ref(key);
+                    committed(mark);
+                    break;
+                } catch (java.nio.BufferOverflowException e) {
+                    if (!roll(mark, dictMark, attempt)) return;
+                }
+            }
+        }
+        appendTimer.recordSince(started);
+    }
+
+    /* Camera coordinates are NaN when the client did not send them. */
+    static void pos(String steamID, String playerName, double x, double y, double z,
+                    double rx, double ry, double rz, double cx, double cy, double cz) {
+        if (!recording) return;
+        long started = System.nanoTime();
+        synchronized (LOCK) {
+            if (!recording) return;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                int mark = seg.position(), dictMark = dict.size();
+                try {
+                    head(POS, steamID, playerName);
+                    boolean cam = !Double.isNaN(cx);
+                    seg.put((byte) (cam ? 1 : 0));
+                    seg.putFloat((float) x).putFloat((float) y).putFloat((float) z);
+                    seg.putFloat((float) rx).putFloat((float) ry).putFloat((float) rz);
+                    if (cam) seg.putFloat((float) cx).putFloat((float) cy).putFloat((float) cz);
+                    committed(mark);
+                    break;
+                } catch (java.nio.BufferOverflowException e) {
+                    if (!roll(mark, dictMark, attempt)) return;
+                }
+            }
+        }
+        appendTimer.recordSince(started);
+    }
+
+    /* ---- writer internals, all under LOCK ---- */
+
+    private static void head(byte type, String steamID, String playerName) {
+        long dt = Math.max(0, nowMicros() - lastMicros);
+        seg.put(type);
+        varint(dt);
+        ref(steamID);
+        ref(playerName);
+        pendingMicros = lastMicros + dt;
+    }
+
+    private static long nowMicros() {
+        return EPOCH_MICROS + (System.nanoTime() - EPOCH_NANOS) / 1000;
+    }
+
+    private static void ref(String s) {
+        Integer id = dict.get(s);
+        if (id != null) {
+            varint(id);
+            return;
+        }
+        varint(dict.size());
+        string(s);
+        dict.put(s, dict.size());
+        dictOrder.add(s);
+    }
+
+    private static void string(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        varint(b.length);
+        seg.put(b);
+    }
+
+    private static void varint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            seg.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        seg.put((byte) v);
+    }
+
+    private static void committed(int mark) {
+        if (seg.hasRemaining()) seg.put(seg.position(), (byte) 0);
+        lastMicros = pendingMicros;
+        records.inc();
+        bytes.add(seg.position() - mark);
+    }
+
+    /* Undoes a partial record, then moves to a fresh segment; false when the record cannot fit at all. */
+    private static boolean roll(int mark, int dictMark, int attempt) {
+        seg.position(mark);
+        seg.put(mark, (byte) 0);
+        // Strings defined by the partial record were never written
+        while (dictOrder.size() > dictMark) dict.remove(dictOrder.remove(dictOrder.size() - 1));
+        if (attempt > 0) {
+            Main.log("[WARN] Journal: event larger than a segment dropped (raise journal-segment-mb)");
+            return false;
+        }
+        closeSegment();
+        try {
+            Object[] next = nextSeg != null ? nextSeg.join() : createSegment(++segmentNo);
+            nextSeg = null;
+            openSegment(next);
+        } catch (IOException | RuntimeException e) {
+            Main.log("[WARN] Journal: cannot roll segment: " + e.getMessage() + " – recording stopped");
+            recording = false;
+            return false;
+        }
+        return true;
+    }
+
+    private static Object[] createSegment(int no) throws IOException {
+        File f = new File(sessionDir, String.format("events-%05d.dsj", no));
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Object[]{mb, ch, f};
+    }
+
+    private static void openSegment(Object[] s) {
+        seg = (MappedByteBuffer) s[0];
+        segChannel = (FileChannel) s[1];
+        dict.clear();
+        dictOrder.clear();
+        lastMicros = nowMicros();
+        seg.putInt(MAGIC).putInt(VERSION).putLong(lastMicros);
+        seg.put(seg.position(), (byte) 0);
+
+        // Map the next segment off the request path
+        int no = ++segmentNo;
+        nextSeg = CompletableFuture.supplyAsync(() -> {
+            try {
+                return createSegment(no);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void closeSegment() {
+        if (seg == null) return;
+        seg.force();
+        // Give back the unused tail of the preallocated segment; the end marker stays
+        try { segChannel.truncate(seg.position() + 1L); } catch (IOException ignore) {}
+        try { segChannel.close(); } catch (IOException ignore) {}
+        seg = null;
+        segChannel = null;
+    }
+
+    /* ---- reading ---- */
+
+    static final class Event {
+        long epochMicros;
+        String event, steamID, playerName;
+        String body;
+    }
+
+    /* Reads one session directory (or a single segment) in order; each event comes back with a client-shaped body. */
+    static final class Reader implements Closeable {
+        private final Iterator<File> files;
+        private ByteBuffer buf;
+        private FileChannel ch;
+        private final List<String> strings = new ArrayList<>();
+        private long micros;
+
+        Reader(File dirOrSegment) throws IOException {
+            List<File> list = new ArrayList<>();
+            if (dirOrSegment.isDirectory()) {
+                File[] fs = dirOrSegment.listFiles((d, n) -> n.endsWith(".dsj"));
+                if (fs != null) list.addAll(Arrays.asList(fs));
+                list.sort(Comparator.comparing(File::getName));
+            } else {
+                list.add(dirOrSegment);
+            }
+            if (list.isEmpty()) throw new IOException("no journal segments in " + dirOrSegment);
+            files = list.iterator();
+        }
+
+        boolean next(Event e) throws IOException {
+            while (buf == null || !buf.hasRemaining() || buf.get(buf.position()) == 0) {
+                if (!openNext()) return false;
+            }
+            byte type = buf.get();
+            micros += readVarint();
+            e.epochMicros = micros;
+            e.steamID = readRef();
+            e.playerName = readRef();
+            switch (type) {
+                case AXIS: {
+                    String axis = readRef(), val = readString();
+                    e.event = "axis";
+                    e.body = "{\"event\":\"axis\",\"axis\":\"" + axis + "\",\"val\":" + val + idFields(e) + '}';
+                    break;
+                }
+                case INPUT: {
+                    e.event = "input";
+                    e.body = "{\"event\":\"input\",\"key\":\"" + readRef() + '"' + idFields(e) + '}';
+                    break;
+                }
+                case POS: {
+                    boolean cam = buf.get() == 1;
+                    StringBuilder sb = new StringBuilder(192).append("{\"event\":\"pos\"")
+                            .append(idFields(e))
+                            .append(",\"x\":").append(buf.getFloat())
+                            .append(",\"y\":").append(buf.getFloat())
+                            .append(",\"z\":").append(buf.getFloat())
+                            .append(",\"rx\":").append(buf.getFloat())
+                            .append(",\"ry\":").append(buf.getFloat())
+                            .append(",\"rz\":").append(buf.getFloat());
+                    if (cam) sb.append(",\"camx\":").append(buf.getFloat())
+                               .append(",\"camy\":").append(buf.getFloat())
+                               .append(",\"camz\":").append(buf.getFloat());
+                    e.event = "pos";
+                    e.body = sb.append('}').toString();
+                    break;
+                }
+                case RAW: {
+                    e.event = readRef();
+                    int len = buf.getInt();
+                    byte[] b = new byte[len];
+                    buf.get(b);
+                    e.body = new String(b, StandardCharsets.UTF_8);
+                    break;
+                }
+                default:
+                    throw new IOException("corrupt journal record type " + type);
+            }
+            return true;
+        }
+
+        private static String idFields(Event e) {
+            return ",\"playerName\":\"" + e.playerName + "\",\"steamID\":\"" + e.steamID + '"';
+        }
+
+        private boolean openNext() throws IOException {
+            close();
+            if (!files.hasNext()) return false;
+            ch = FileChannel.open(files.next().toPath(), StandardOpenOption.READ);
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER || buf.getInt() != MAGIC) throw new IOException("not a journal segment");
+            if (buf.getInt() != VERSION) throw new IOException("unsupported journal version");
+            micros = buf.getLong();
+            strings.clear();
+            return true;
+        }
+
+        private long readVarint() {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        private String readString() {
+            byte[] b = new byte[(int) readVarint()];
+            buf.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        private String readRef() {
+            int id = (int) readVarint();
+            if (id < strings.size()) return strings.get(id);
+            String s = readString();
+            strings.add(s);
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buf = null;
+            if (ch != null) ch.close();
+            ch = null;
+        }
+    }
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0 || !"journal".equalsIgnoreCase(tok[0])) return false;
+        String sub = tok.length > 1 ? tok[1].toLowerCase() : "status";
+        switch (sub) {
+            case "start": start(); break;
+            case "stop":  stop(); break;
+            default:
+                Main.log("[INFO] Journal " + (recording ? "recording to " + sessionDir.getPath() : "off") +
+                        " – " + records.get() + " events, " + bytes.get() / 1024 + " KB written" +
+                        " (journal start | stop)");
+        }
+        return true;
+    }
+}
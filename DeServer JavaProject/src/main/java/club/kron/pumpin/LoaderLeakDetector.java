@@ -0,0 +1,126 @@
+package club.kron.pumpin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Watches class loaders of unloaded / swapped-out extensions. A loader that is still reachable
+ * extension-leak-seconds (default 30) after retirement, and survives one requested GC, is reported
+ * together with the live threads that still point into it.
+ */
+final class LoaderLeakDetector {
+
+    private static final class Retired extends WeakReference<ClassLoader> {
+        final String label;
+        final long retiredAt = System.currentTimeMillis();
+        boolean gcRequested, warned;
+
+        Retired(ClassLoader cl, String label) {
+            super(cl, QUEUE);
+            this.label = label;
+        }
+    }
+
+    private static final ReferenceQueue<ClassLoader> QUEUE = new ReferenceQueue<>();
+    private static final Set<Retired> RETIRED = ConcurrentHashMap.newKeySet();
+
+    private static final Metrics.Counter collected =
+            Metrics.counter("deserver_extension_loaders_collected_total", "Retired extension class loaders that were garbage collected");
+    private static final Metrics.Counter leaked =
+            Metrics.counter("deserver_extension_loader_leaks_total", "Retired extension class loaders still reachable after the grace period");
+
+    private static volatile Thread reaper;
+
+    static {
+        Metrics.gauge("deserver_extension_loaders_retired", "Retired extension class loaders not yet collected",
+                () -> RETIRED.size());
+        Metrics.gauge("deserver_classes_loaded", "Classes currently loaded in the JVM",
+                () -> ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        Metrics.gauge("deserver_metaspace_bytes", "Metaspace in use", () -> {
+            for (MemoryPoolMXBean p : ManagementFactory.getMemoryPoolMXBeans())
+                if ("Metaspace".equals(p.getName())) return p.getUsage().getUsed();
+            return 0;
+        });
+    }
+
+    private LoaderLeakDetector() {}
+
+    static void track(ClassLoader cl) {
+        RETIRED.add(new Retired(cl, cl.getName()));
+        if (reaper == null) startReaper();
+    }
+
+    private static synchronized void startReaper() {
+        if (reaper != null) return;
+        Thread t = new Thread(LoaderLeakDetector::reap, "loader-leak-detector");
+        t.setDaemon(true);
+        t.start();
+        reaper = t;
+    }
+
+    private static void reap() {
+        try {
+            while (true) {
+                for (Reference<? extends ClassLoader> r = QUEUE.remove(5_000); r != null; r = QUEUE.poll()) {
+                    if (RETIRED.remove(r)) collected.inc();
+                }
+                check();
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private static void check() {
+        long graceMs = Main.intProperty("extension-leak-seconds", 30) * 1000L;
+        long now = System.currentTimeMillis();
+        boolean gc = false;
+        for (Retired r : RETIRED) {
+            if (r.warned || now - r.retiredAt < graceMs) continue;
+            if (!r.gcRequested) {
+                r.gcRequested = true;
+                gc = true;
+                continue;
+            }
+            ClassLoader cl = r.get();
+            if (cl == null) continue;
+            r.warned = true;
+            leaked.inc();
+            List<String> suspects = suspects(cl);
+            Main.log("[EXT] Class loader of " + r.label + " still reachable " + (now - r.retiredAt) / 1000 +
+                    " s after unload – probable leak" +
+                    (suspects.isEmpty() ? " (static references or caches outside the extension)"
+                                        : " (threads: " + String.join(", ", suspects) + ')'));
+        }
+        // One hint per round so a late collection is not mistaken for a leak
+        if (gc) System.gc();
+    }
+
+    private static List<String> suspects(ClassLoader cl) {
+        List<String> out = new ArrayList<>();
+        for (Map.Entry<Thread, StackTraceElement[]> e : Thread.getAllStackTraces().entrySet()) {
+            Thread t = e.getKey();
+            boolean hit = t.getClass().getClassLoader() == cl || t.getContextClassLoader() == cl;
+            // Extension loaders are named, so frames running extension code point back to them
+            for (StackTraceElement f : e.getValue())
+                if (!hit && cl.getName() != null && cl.getName().equals(f.getClassLoaderName())) hit = true;
+            if (hit) out.add('\'' + t.getName() + '\'');
+        }
+        return out;
+    }
+
+    static List<String> status() {
+        List<String> out = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Retired r : RETIRED)
+            out.add(r.label + " retired " + (now - r.retiredAt) / 1000 + " s ago" + (r.warned ? " (leaked)" : ""));
+        return out;
+    }
+}
@@ -5,9 +5,13 @@ import java.awt.*;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
@@ -31,23 +35,53 @@ public class Main {
     private static String bindIp = DEFAULT_IP;
     private static int bindPort = DEFAULT_PORT;
 
-    private static final java.util.Map<String, java.util.Queue<String>> inputEvents =
-            new java.util.concurrent.ConcurrentHashMap<>();
+    private static final java.util.Map<String, String> serverProps = new java.util.LinkedHashMap<>();
+    private static final java.util.Map<String, String> propOverrides = new java.util.HashMap<>();
+
+    static String property(String key, String def) {
+        String v = propOverrides.get(key);
+        if (v == null) v = serverProps.get(key);
+        return v == null || v.isEmpty() ? def : v;
+    }
+
+    /* Same as --key=value on the command line: wins over server.properties. */
+    static void override(String key, String value) {
+        propOverrides.put(key, value);
+    }
 
+    static int intProperty(String key, int def) {
+        try { return Integer.parseInt(property(key, String.valueOf(def)).trim()); }
+        catch (NumberFormatException e) {
+            log("[WARN] Invalid " + key + " in " + PROP_FILE + ". Using default " + def + '.');
+            return def;
+        }
+    }
+
+    /* "AXIS:<name>:<value>" updates an axis slot, anything else is a key press. */
     public static void addInputEvent(String steamID, String key) {
         if (key == null || key.isEmpty()) return;
-        inputEvents
-                .computeIfAbsent(steamID, k -> new java.util.concurrent.ConcurrentLinkedQueue<>())
-                .add(key);
+        if (key.startsWith("AXIS:") && key.lastIndexOf(':') > 4) {
+            int c = key.lastIndexOf(':');
+            try {
+                InputBuffer.of(steamID).axis(key.substring(5, c), Float.parseFloat(key.substring(c + 1)));
+                return;
+            } catch (NumberFormatException ignore) {}
+        }
+        InputBuffer.of(steamID).key(key);
     }
 
     public static java.util.List<String> pollInputs(String steamID) {
-        java.util.Queue<String> q = inputEvents.get(steamID);
-        if (q == null || q.isEmpty()) return java.util.Collections.emptyList();
+        if (Cluster.enabled() && !Cluster.isLocal(steamID)) {
+            java.util.List<String> remote = Cluster.pollInputs(steamID);
+            if (remote != null) return remote;
+        }
+        return pollInputsLocal(steamID);
+    }
 
-        java.util.List<String> list = new java.util.ArrayList<>();
-        for (String k; (k = q.poll()) != null; ) list.add(k);
-        return list;
+    static java.util.List<String> pollInputsLocal(String steamID) {
+        InputBuffer b = InputBuffer.get(steamID);
+        if (b == null || b.size() == 0) return java.util.Collections.emptyList();
+        return b.drainStrings();
     }
 
     private static final java.util.Map<String, Long> clientLastSeen =
@@ -56,17 +90,14 @@ public class Main {
             new java.util.concurrent.ConcurrentHashMap<>();
     private static final java.util.Map<String, String> playerRotations =
             new java.util.concurrent.ConcurrentHashMap<>();
-    private static final long TIMEOUT_MS = 10_000;
-
-    private static final java.util.Map<String, String> playerObjects =
-            new java.util.concurrent.ConcurrentHashMap<>();
+    static final long TIMEOUT_MS = 10_000;
 
     private static boolean guiMode;
 
     private static final java.util.Set<String> runningClients =
             java.util.Collections.synchronizedSet(new java.util.HashSet<>());
 
-    private static final java.util.Map<String, java.util.Queue<String>> pendingCommands =
+    private static final java.util.Map<String, CommandLanes> pendingCommands =
             new java.util.concurrent.ConcurrentHashMap<>();
 
     private static final java.util.Set<String> activeClients =
@@ -76,6 +107,71 @@ public class Main {
     private static JFrame frame;
 
     private static ServerSocket serverSocket;
+    private static final java.util.List<java.nio.channels.ServerSocketChannel> listenerChannels =
+            new java.util.concurrent.CopyOnWriteArrayList<>();
+
+    private static final java.util.Map<String, Long> lastPersisted =
+            new java.util.concurrent.ConcurrentHashMap<>();
+
+    private static final Metrics.Counter requestErrors =
+            Metrics.counter("deserver_request_errors_total", "Requests that failed with an I/O error");
+    private static final Metrics.Histogram playerDataWrite =
+            Metrics.histogram("deserver_player_data_write_seconds", "Time spent in writePlayerData");
+    private static final Metrics.Counter playerDataWriteFailures =
+            Metrics.counter("deserver_player_data_write_failures_total", "Failed player-data writes");
+    private static final Metrics.Histogram timeoutSweep =
+            Metrics.histogram("deserver_timeout_sweep_seconds", "Duration of one timeout monitor pass");
+    private static final Metrics.Counter sessionTimeouts =
+            Metrics.counter("deserver_session_timeouts_total", "Sessions dropped by the timeout monitor");
+    private static final Metrics.Counter admissionMismatch =
+            Metrics.counter("deserver_admission_rejected_total", "Requests rejected with 429",
+                    Metrics.label("scope", "header_mismatch"));
+
+    static {
+        Metrics.gauge("deserver_sessions", "Active client sessions", () -> activeClients.size());
+        Metrics.gauge("deserver_running_clients", "Clients with a spawned Player_Human", () -> runningClients.size());
+        Metrics.gauge("deserver_paused_clients", "Clients sitting in a pause menu", () -> pausedClients.size());
+        Metrics.gauge("deserver_pending_commands", "Commands queued for all clients",
+                () -> queueDepth(pendingCommands));
+        Metrics.gauge("deserver_input_events", "Input events waiting to be polled",
+                InputBuffer::pending);
+        Metrics.gauge("deserver_persistence_lag_ms", "Age of the stalest player-data file among running clients",
+                Main::persistenceLagMs);
+    }
+
+    private static long queueDepth(java.util.Map<String, CommandLanes> queues) {
+        long n = 0;
+        for (CommandLanes q : queues.values()) n += q.size();
+        return n;
+    }
+
+    private static long persistenceLagMs() {
+        long now = System.currentTimeMillis(), lag = 0;
+        synchronized (runningClients) {
+            for (String sid : runningClients) {
+                Long t = lastPersisted.get(sid);
+                if (t != null) lag = Math.max(lag, now - t);
+            }
+        }
+        return lag;
+    }
+
+    private static void recordRequest(String route, long startNanos) {
+        Metrics.counter("deserver_requests_total", "Requests handled, by route",
+                Metrics.label("route", route)).inc();
+        Metrics.histogram("deserver_request_duration_seconds", "Request handling latency, by route",
+                Metrics.label("route", route)).recordSince(startNanos);
+    }
+
+    private static String routeFor(String evt) {
+        switch (evt) {
+            case "axis": case "input": case "pos": case "ack":
+            case "objects": case "disconnect": case "pause": case "connect":
+                return evt;
+            default:
+                return "other";
+        }
+    }
 
     public static void main(String[] args) {
 
@@ -94,6 +190,8 @@ public class Main {
                             arg.substring("--port=".length()) + "'. Using default " + DEFAULT_PORT + '.');
                     bindPort = DEFAULT_PORT;
                 }
+            } else if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+                override(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
             }
         }
 
@@ -101,10 +199,26 @@ public class Main {
             javax.swing.SwingUtilities.invokeLater(Main::createAndShowGui);
 
         handleServerProperties();
+        Admission.configure();
+        ObjectStore.configure();
+        HttpRequest.configure();
+        InputBuffer.configure();
+        BulkLoader.configure();
+        PlayerRecords.configure();
+        ModChunks.configure();
+        CommandLanes.configure();
+        Aggregates.configure();
+        Pacing.configure();
         log("[INFO] Server starting …");
         log("[INFO] Binding to IP: " + bindIp + ", port: " + bindPort);
         handlePlayersFolder();
 
+        StateStore.start();
+        Cluster.start();
+        Replicator.start();
+        Reconciler.start();
+        if (Boolean.parseBoolean(property("journal", "false"))) Journal.start();
+        Trails.start();
         ExtensionManager.loadAll();
 
         startListeningThread();
@@ -119,38 +233,91 @@ public class Main {
     }
 
     public static void enqueueCommand(String steamID, String cmdJson) {
-        pendingCommands
-                .computeIfAbsent(steamID, k -> new java.util.concurrent.ConcurrentLinkedQueue<>())
-                .add(cmdJson);
+        enqueueCommand(steamID, cmdJson, CommandLanes.NORMAL);
     }
 
-    private static String dequeueCommandsJson(String steamID) {
-        java.util.Queue<String> q = pendingCommands.get(steamID);
-        if (q == null || q.isEmpty()) return "[]";
+    static void enqueueCommand(String steamID, String cmdJson, int lane) {
+        if (Cluster.enabled() && !Cluster.isLocal(steamID) && Cluster.enqueue(steamID, cmdJson, lane)) return;
+        enqueueLocal(steamID, cmdJson, lane);
+    }
 
-        StringBuilder sb = new StringBuilder("[");
-        boolean first = true;
-        for (String cmd; (cmd = q.poll()) != null; ) {
-            if (!first) sb.append(',');
-            first = false;
+    static void enqueueLocal(String steamID, String cmdJson, int lane) {
+        StateStore.enqueue(CommandLanes.kind(lane), steamID, cmdJson, lanes(steamID).queue(lane));
+    }
 
-            String escaped = cmd
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"");
+    /* Queues a batch for one client with a single hand-off, in order. */
+    static void enqueueCommands(String steamID, java.util.List<String> cmds) {
+        enqueueCommands(steamID, cmds, CommandLanes.NORMAL);
+    }
 
-            sb.append('"').append(escaped).append('"');
+    static void enqueueCommands(String steamID, java.util.List<String> cmds, int lane) {
+        if (Cluster.enabled() && !Cluster.isLocal(steamID)) {
+            for (String c : cmds) enqueueCommand(steamID, c, lane);
+            return;
         }
+        StateStore.enqueueAll(CommandLanes.kind(lane), steamID, cmds, lanes(steamID).queue(lane));
+    }
+
+    private static CommandLanes lanes(String steamID) {
+        return pendingCommands.computeIfAbsent(steamID, k -> new CommandLanes());
+    }
+
+    /* Commands waiting for steamID on this node, per lane (urgent, normal, bulk). */
+    static int[] queuedCommands(String steamID) {
+        CommandLanes q = pendingCommands.get(steamID);
+        if (q == null) return new int[3];
+        return new int[]{q.queue(0).size(), q.queue(1).size(), q.queue(2).size()};
+    }
+
+    static String dequeueCommandsJson(String steamID) {
+        CommandLanes q = pendingCommands.get(steamID);
+        java.util.List<String> replicated = Replicator.drain(steamID);
+        if ((q == null || q.isEmpty()) && replicated.isEmpty()) return "[]";
+
+        FlightEvents.Commands flight = new FlightEvents.Commands();
+        flight.begin();
+        StringBuilder sb = new StringBuilder("[");
+        int n = 0;
+        if (q != null) {
+            for (String cmd : q.drain(steamID))
+                appendCommand(sb, cmd, n++ == 0);
+        }
+        for (String cmd : replicated)
+            appendCommand(sb, cmd, n++ == 0);
         sb.append(']');
+        if (flight.shouldCommit()) {
+            flight.steamID = steamID;
+            flight.commands = n;
+            flight.size = sb.length();
+            flight.commit();
+        }
         return sb.toString();
     }
 
-    private static void respondJson(PrintWriter out, String body) {
-        out.print("HTTP/1.1 200 OK\r\n");
-        out.print("Content-Type: application/json; charset=UTF-8\r\n");
-        out.print("Content-Length: " + body.getBytes().length + "\r\n");
-        out.print("Connection: close\r\n\r\n");
-        out.print(body);
-        out.flush();
+    /* s as a quoted JSON string. */
+    static String jsonString(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') b.append('\\').append(c);
+            else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+            else b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    private static void appendCommand(StringBuilder sb, String cmd, boolean first) {
+        if (!first) sb.append(',');
+
+        String escaped = cmd
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"");
+
+        sb.append('"').append(escaped).append('"');
+    }
+
+    static void respondJson(OutputStream out, String body) throws IOException {
+        HttpResponse.start(HttpResponse.OK).send(out, HttpResponse.JSON, body);
     }
 
     private static void handleServerProperties() {
@@ -165,6 +332,9 @@ public class Main {
                 List<String> lines = Files.readAllLines(Paths.get(PROP_FILE));
                 for (String line : lines) {
                     line = line.trim();
+                    int eq = line.indexOf('=');
+                    if (eq > 0 && !line.startsWith("#"))
+                        serverProps.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
                     if (line.startsWith("server-ip=")) {
                         fileIp = line.substring("server-ip=".length()).trim();
                     } else if (line.startsWith("server-port=")) {
@@ -211,6 +381,9 @@ public class Main {
             try (PrintWriter pw = new PrintWriter(propFile)) {
                 pw.println("server-ip=" + bindIp);
                 pw.println("server-port=" + bindPort);
+                for (java.util.Map.Entry<String, String> e : serverProps.entrySet())
+                    if (!"server-ip".equals(e.getKey()) && !"server-port".equals(e.getKey()))
+                        pw.println(e.getKey() + '=' + e.getValue());
                 log("[INFO] Wrote default " + PROP_FILE
                         + " with server-ip=" + bindIp
                         + " and server-port=" + bindPort);
@@ -269,7 +442,16 @@ public class Main {
         }
     }
 
+    /*
+     * listeners=N (default 1) opens N sockets on the same port with SO_REUSEPORT; the kernel spreads
+     * incoming connections over them and each gets its own thread that accepts and serves its
+     * connections. Session state is shared through the concurrent maps above. Where the platform has
+     * no SO_REUSEPORT (Windows) a single listener is used.
+     */
     private static void startListeningThread() {
+        int n = Math.max(1, intProperty("listeners", 1));
+        if (n > 1 && startReusePortListeners(n)) return;
+
         Thread t = new Thread(() -> {
             try {
                 try {
@@ -281,227 +463,483 @@ public class Main {
                 }
                 log("[INFO] HTTP server listening on " +
                         serverSocket.getInetAddress().getHostAddress() + ":" + bindPort);
+                ExtensionManager.onBound();
 
                 while (!serverSocket.isClosed()) {
                     Socket client = serverSocket.accept();
-                    String clientIp = client.getInetAddress().getHostAddress();
-
-                    try (BufferedReader in = new BufferedReader(
-                            new InputStreamReader(client.getInputStream(), "UTF-8"));
-                         PrintWriter out = new PrintWriter(client.getOutputStream())) {
-
-                        String reqLine = in.readLine();
-                        if (reqLine == null) { client.close(); continue; }
-
-                        String[] p = reqLine.split(" ");
-                        String method = p[0];
-                        String path   = p.length > 1 ? p[1] : "/";
-                        boolean isPost = "POST".equalsIgnoreCase(method);
-
-                        if (!isPost && ("/mods".equals(path) || "/mods/".equals(path))) {
-                            File dir = new File("mods");
-                            String[] files = dir.list((d, n) ->
-                                    n.toLowerCase().endsWith(".dll") || n.toLowerCase().endsWith(".cs"));
-                            if (files == null) files = new String[0];
-
-                            StringBuilder body = new StringBuilder("{\"mods\":[");
-                            for (int i = 0; i < files.length; i++) {
-                                if (i > 0) body.append(',');
-                                body.append('"').append(files[i]).append('"');
-                            }
-                            body.append("]}");
-                            respondJson(out, body.toString());
-                            continue;
-                        }
-                        if (!isPost && path.startsWith("/mods/")) {
-                            String fileName = URLDecoder.decode(
-                                    path.substring("/mods/".length()), "UTF-8");
-                            File f = new File("mods", fileName);
-                            if (!f.exists() || f.isDirectory()) {
-                                respondForbidden(out);
-                                continue;
-                            }
-                            byte[] bytes = java.nio.file.Files.readAllBytes(f.toPath());
-                            out.print("HTTP/1.1 200 OK\r\n");
-                            out.print("Content-Type: application/octet-stream\r\n");
-                            out.print("Content-Length: " + bytes.length + "\r\n");
-                            out.print("Connection: close\r\n\r\n");
-                            out.flush();
-                            client.getOutputStream().write(bytes);
-                            client.getOutputStream().flush();
-                            continue;
-                        }
+                    handleClient(client);
+                }
+            } catch (IOException e) {
+                log("[ERROR] ServerSocket error: " + e.getMessage());
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
 
-                        if (!isPost && path.startsWith("/cmd?steamID=")) {
-                            while (in.readLine() != null && !in.readLine().isEmpty()) {}
-                            String sid = URLDecoder.decode(
-                                    path.substring("/cmd?steamID=".length()), "UTF-8");
-                            String json = "{\"commands\":" + dequeueCommandsJson(sid) + "}";
-                            respondJson(out, json);
-                            continue;
-                        }
+    private static boolean startReusePortListeners(int n) {
+        java.net.InetSocketAddress addr;
+        try {
+            addr = new java.net.InetSocketAddress(InetAddress.getByName(bindIp), bindPort);
+        } catch (IOException e) {
+            log("[WARN] Could not resolve " + bindIp + " (" + e.getMessage() + "). Falling back to 0.0.0.0");
+            addr = new java.net.InetSocketAddress(bindPort);
+        }
+        try {
+            for (int i = 0; i < n; i++) {
+                java.nio.channels.ServerSocketChannel ch = java.nio.channels.ServerSocketChannel.open();
+                listenerChannels.add(ch);
+                if (!ch.supportedOptions().contains(java.net.StandardSocketOptions.SO_REUSEPORT)) {
+                    log("[WARN] SO_REUSEPORT is not supported here – using a single listener.");
+                    closeListeners();
+                    return false;
+                }
+                ch.setOption(java.net.StandardSocketOptions.SO_REUSEPORT, true);
+                ch.bind(addr, 50);
+            }
+        } catch (IOException e) {
+            log("[WARN] Could not open " + n + " listeners on " + addr + " (" + e.getMessage() +
+                    ") – using a single listener.");
+            closeListeners();
+            return false;
+        }
+        Pacing.workers(n);
+        log("[INFO] HTTP server listening on " + addr.getAddress().getHostAddress() + ":" + bindPort +
+                " (" + n + " listeners, SO_REUSEPORT)");
+        ExtensionManager.onBound();
+
+        int i = 0;
+        for (java.nio.channels.ServerSocketChannel ch : listenerChannels) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (ch.isOpen()) handleClient(ch.accept().socket());
+                } catch (java.nio.channels.ClosedChannelException e) {
+                    // shutting down
+                } catch (IOException e) {
+                    log("[ERROR] Listener error: " + e.getMessage());
+                }
+            }, "listener-" + i++);
+            t.setDaemon(true);
+            t.start();
+        }
+        return true;
+    }
 
-                        int contentLen = 0;
-                        for (String h; (h = in.readLine()) != null && !h.isEmpty(); ) {
-                            if (h.regionMatches(true, 0, "content-length:", 0, 15)) {
-                                try { contentLen = Integer.parseInt(h.substring(15).trim()); }
-                                catch (NumberFormatException ignore) {}
-                            }
-                        }
+    private static void closeListeners() {
+        for (java.nio.channels.ServerSocketChannel ch : listenerChannels)
+            try { ch.close(); } catch (IOException ignore) {}
+        listenerChannels.clear();
+    }
 
-                        String body = "";
-                        if (isPost && contentLen > 0) {
-                            char[] buf = new char[contentLen];
-                            int read = 0;
-                            while (read < contentLen) {
-                                int n = in.read(buf, read, contentLen - read);
-                                if (n == -1) break;
-                                read += n;
-                            }
-                            body = new String(buf, 0, read);
-                        }
+    private static void handleClient(Socket client) {
+        String clientIp = client.getInetAddress().getHostAddress();
+        boolean handedOff = false;
+        long started = System.nanoTime();
+        try {
+            handedOff = handleRequest(clientIp, HttpRequest.open(client), client.getOutputStream());
+            if (handedOff) client.setSoTimeout(0);              // bulk streams may idle between lines
+        } catch (IOException ex) {
+            requestErrors.inc();
+            log("[WARN] Error handling client " + clientIp + ": " + ex.getMessage());
+        } finally {
+            if (!handedOff) try { client.close(); } catch (IOException ignore) {}
+            Pacing.busy(System.nanoTime() - started);
+        }
+    }
 
-                        if (isPost && !body.isEmpty()) {
-                            String evt        = extractJson(body, "event").toLowerCase();
-                            String playerName = extractJson(body, "playerName");
-                            String steamID    = extractJson(body, "steamID");
-
-                            if (playerName.isEmpty()) playerName = "Ghost";
-                            if (steamID.isEmpty())    steamID    = "Unknown";
-
-                            String key = clientIp + "|" + steamID + "|" + playerName;
-                            if (!"disconnect".equals(evt))
-                                clientLastSeen.put(key, System.currentTimeMillis());
-
-                            switch (evt) {
-
-                                case "axis": {
-                                    String axis = extractJson(body, "axis");
-                                    String val  = extractJson(body, "val");
-                                    addInputEvent(steamID, "AXIS:" + axis + ':' + val);
-                                    break;
-                                }
-
-                                case "input": {
-                                    String keyName = extractJson(body, "key");
-                                    addInputEvent(steamID, keyName);
-                                    break;
-                                }
-
-                                case "pos": {
-                                    try {
-                                        double x  = Double.parseDouble(extractJson(body, "x"));
-                                        double y  = Double.parseDouble(extractJson(body, "y"));
-                                        double z  = Double.parseDouble(extractJson(body, "z"));
-                                        double rx = Double.parseDouble(extractJson(body, "rx"));
-                                        double ry = Double.parseDouble(extractJson(body, "ry"));
-                                        double rz = Double.parseDouble(extractJson(body, "rz"));
-
-                                        String pos = x + "," + y + "," + z;
-                                        String rot = rx + "," + ry + "," + rz;
-                                        playerPositions.put(steamID, pos);
-                                        playerRotations.put(steamID, rot);
-
-                                        String camX = extractJson(body, "camx");
-                                        if (!camX.isEmpty()) {
-                                            double cx = Double.parseDouble(camX);
-                                            double cy = Double.parseDouble(extractJson(body, "camy"));
-                                            double cz = Double.parseDouble(extractJson(body, "camz"));
-                                            cameraPositions.put(steamID, cx + "," + cy + "," + cz);
-                                        }
-                                    } catch (NumberFormatException ignore) {}
-                                    break;
-                                }
-
-                                case "ack": {
-                                    String cmdType = extractJson(body, "cmd");
-                                    String label   = extractJson(body, "label");
-                                    if (!SUPPRESS_ACK_LABELS.contains(label))
-                                        log("[INFO] Confirmed " + cmdType +
-                                                " → '" + label + "' for SteamID=" + steamID);
-                                    break;
-                                }
-
-                                case "objects": {
-                                    String data = extractJson(body, "data");
-                                    playerObjects.put(steamID, data);
-
-                                    if (!runningClients.contains(steamID) &&
-                                            data.contains("\"name\":\"Player_Human\"")) {
-                                        runningClients.add(steamID);
-                                        log("[INFO] Running state      from " + clientIp +
-                                                " | Name=\"" + playerName + "\", SteamID=" + steamID);
-                                    }
-                                    writePlayerData(steamID, playerName, clientIp,
-                                            playerPositions.get(steamID),
-                                            playerRotations.get(steamID));
-                                    break;
-                                }
-
-                                case "disconnect": {
-                                    log("[INFO] Disconnect        from " + clientIp +
-                                            " | Name=\"" + playerName + "\", SteamID=" + steamID);
-                                    clientLastSeen.remove(key);
-                                    playerPositions.remove(steamID);
-                                    playerRotations.remove(steamID);
-                                    playerObjects.remove(steamID);
-                                    cameraPositions.remove(steamID);
-                                    runningClients.remove(steamID);
-                                    pausedClients.remove(steamID);
-                                    activeClients.remove(key);
-                                    break;
-                                }
-
-                                case "pause": {
-                                    String state = extractJson(body, "state").toLowerCase();
-                                    boolean on = "on".equals(state) || "true".equals(state) || "1".equals(state);
-                                    if (on) {
-                                        if (pausedClients.add(steamID))
-                                            log("[INFO] Pause state        from " + clientIp +
-                                                    " | Name=\"" + playerName + "\", SteamID=" + steamID);
-                                    } else {
-                                        if (pausedClients.remove(steamID))
-                                            log("[INFO] Resume             from " + clientIp +
-                                                    " | Name=\"" + playerName + "\", SteamID=" + steamID);
-                                    }
-                                    break;
-                                }
-
-                                default: break;
-                            }
-
-                            if (!activeClients.contains(key) && !"disconnect".equals(evt)) {
-                                activeClients.add(key);
-                                log("[INFO] Connect           from " + clientIp +
-                                        " | Name=\"" + playerName + "\", SteamID=" + steamID);
-                            }
-                            respond(out, "OK");
-                        } else {
-                            respond(out, "Hello from Custom Server Stub – " + nowTimestamp());
-                        }
+    /* Returns true when the connection was handed to another thread, which then closes it. */
+    static boolean handleRequest(String clientIp, InputStream rawIn, OutputStream rawOut) throws IOException {
+        long started = System.nanoTime();
+        String route = "hello";
+        FlightEvents.Request flight = new FlightEvents.Request();
+        flight.begin();
+
+        HttpRequest req = null;
+        boolean handedOff = false;
+        try {
+
+            req = HttpRequest.read(rawIn);
+            if (req == null) return false;
+
+            long wait = Admission.admitIp(clientIp);
+            if (wait > 0) {
+                route = "rejected";
+                respondTooManyRequests(rawOut, wait);
+                return false;
+            }
+            if (req.status != null) {
+                route = "invalid";
+                respondInvalid(rawOut, req.status);
+                return false;
+            }
+
+            String path   = req.path;
+            boolean isPost = "POST".equalsIgnoreCase(req.method);
+
+            if (!isPost && "/metrics".equals(path)) {
+                route = "metrics";
+                HttpResponse.start(HttpResponse.OK).send(rawOut, HttpResponse.PROMETHEUS, Metrics.renderPrometheus());
+                return false;
+            }
+
+            if (!isPost && ("/mods".equals(path) || "/mods/".equals(path))) {
+                route = "mods_list";
+                File dir = new File("mods");
+                String[] files = dir.list((d, n) ->
+                        n.toLowerCase().endsWith(".dll") || n.toLowerCase().endsWith(".cs"));
+                if (files == null) files = new String[0];
+
+                StringBuilder body = new StringBuilder("{\"mods\":[");
+                for (int i = 0; i < files.length; i++) {
+                    if (i > 0) body.append(',');
+                    body.append('"').append(files[i]).append('"');
+                }
+                body.append("]}");
+                respondJson(rawOut, body.toString());
+                return false;
+            }
+            if (!isPost && (path.startsWith("/manifest/") || path.startsWith("/chunks/"))) {
+                boolean manifest = path.startsWith("/manifest/");
+                route = manifest ? "mods_manifest" : "mods_chunks";
+                String arg = URLDecoder.decode(path.substring(path.indexOf('/', 1) + 1), "UTF-8");
+                if (!(manifest ? ModChunks.sendManifest(arg, rawOut) : ModChunks.sendChunks(arg, rawOut)))
+                    respondForbidden(rawOut);
+                return false;
+            }
+            if (!isPost && path.startsWith("/mods/")) {
+                route = "mods_file";
+                String fileName = URLDecoder.decode(
+                        path.substring("/mods/".length()), "UTF-8");
+                File f = new File("mods", fileName);
+                if (!f.exists() || f.isDirectory()) {
+                    respondForbidden(rawOut);
+                    return false;
+                }
+                FlightEvents.ModFile mod = new FlightEvents.ModFile();
+                mod.begin();
+                byte[] bytes = java.nio.file.Files.readAllBytes(f.toPath());
+                HttpResponse.start(HttpResponse.OK).send(rawOut, HttpResponse.OCTETS, bytes);
+                if (mod.shouldCommit()) {
+                    mod.file = fileName;
+                    mod.size = bytes.length;
+                    mod.commit();
+                }
+                return false;
+            }
+
+            if (!isPost && (path.equals("/events") || path.startsWith("/events?"))) {
+                route = "events";
+                handedOff = EventStream.subscribe(clientIp, path, req.token, rawIn, rawOut);
+                return handedOff;
+            }
+
+            if (!isPost && path.startsWith("/cmd?steamID=")) {
+                route = "cmd";
+                String sid = URLDecoder.decode(
+                        path.substring("/cmd?steamID=".length()), "UTF-8");
+                flight.steamID = sid;
+                if ((wait = Admission.admitSession(sid, "cmd")) > 0) {
+                    route = "rejected";
+                    respondTooManyRequests(rawOut, wait);
+                    return false;
+                }
+                String[] remote = Cluster.enabled() && !Cluster.isLocal(sid) ? Cluster.poll(sid) : null;
+                String cmds = remote != null ? remote[0] : dequeueCommandsJson(sid);
+                String json = "{\"commands\":" + cmds;
+                if (Pacing.enabled()) {
+                    int[] hints = Cluster.hints(remote, 1);
+                    json += ",\"poll\":" + (hints != null ? hints[0] : Pacing.pollMs(sid, !"[]".equals(cmds))) +
+                            ",\"upload\":" + (hints != null ? hints[1] : Pacing.uploadMs(sid));
+                }
+                json += "}";
+                respondJson(rawOut, json);
+                return false;
+            }
+
+            if (isPost && "/admin/bulk".equals(path)) {
+                route = "bulk";
+                handedOff = BulkLoader.begin(clientIp, req.token, req.contentLength, req.chunked,
+                        req.bodyStream(rawIn), rawOut);
+                return handedOff;
+            }
+
+            // Clients that tag their requests are charged before the body is read
+            boolean admitted = false;
+            if (isPost && req.event != null && req.steamID != null) {
+                if ((wait = Admission.admitSession(req.steamID, req.event)) > 0) {
+                    route = "rejected";
+                    respondTooManyRequests(rawOut, wait);
+                    return false;
+                }
+                admitted = true;
+            }
+
+            ByteBuffer body = isPost ? req.body(rawIn, rawOut) : null;
+            if (req.status != null) {
+                route = "invalid";
+                respondInvalid(rawOut, req.status);
+                return false;
+            }
+
+            if (body != null && body.hasRemaining()) {
+                String evt        = HttpRequest.field(body, "event").toLowerCase();
+                route = routeFor(evt);
+                String playerName = HttpRequest.field(body, "playerName");
+                String steamID    = HttpRequest.field(body, "steamID");
+
+                if (playerName.isEmpty()) playerName = "Ghost";
+                if (steamID.isEmpty())    steamID    = "Unknown";
+                flight.steamID = steamID;
+                flight.bodySize = body.remaining();
+
+                // The headers were only a promise; a body that disagrees was charged to someone else's bucket
+                if (admitted && (!req.event.equals(evt) || !req.steamID.equals(steamID))) {
+                    route = "invalid";
+                    admissionMismatch.inc();
+                    respondInvalid(rawOut, HttpResponse.BAD_REQUEST);
+                    return false;
+                }
+                if (!admitted && (wait = Admission.admitSession(steamID, evt)) > 0) {
+                    route = "rejected";
+                    respondTooManyRequests(rawOut, wait);
+                    return false;
+                }
+
+                boolean local = !Cluster.enabled() || Cluster.isLocal(steamID);
+                int[] hints = null;
+                if (local && "objects".equals(evt) && !Journal.recording()) {
+                    // Snapshots go from the request buffer into the ObjectStore without becoming a String
+                    dispatchObjects(clientIp, body, playerName, steamID);
+                } else {
+                    String text = HttpRequest.text(body);
+                    String[] reply = local ? null : Cluster.forwardEvent(clientIp, evt, playerName, steamID, text);
+                    if (reply == null) dispatchEvent(clientIp, text, evt, playerName, steamID);
+                    else hints = Cluster.hints(reply, 0);
+                }
+                respondOk(rawOut, steamID, hints);
+            } else {
+                respond(rawOut, "Hello from Custom Server Stub – " + nowTimestamp());
+            }
+
+        } finally {
+            if (req != null) req.release();
+            if (!handedOff) rawIn.close();
+            recordRequest(route, started);
+            if (flight.shouldCommit()) {
+                flight.route = route;
+                flight.clientIp = clientIp;
+                flight.commit();
+            }
+        }
+        return false;
+    }
+
+    static void dispatchEvent(String clientIp, String body, String evt,
+                              String playerName, String steamID) {
+        FlightEvents.Dispatch flight = new FlightEvents.Dispatch();
+        flight.begin();
+        try {
+            dispatch(clientIp, body, evt, playerName, steamID);
+        } finally {
+            if (flight.shouldCommit()) {
+                flight.event = evt;
+                flight.steamID = steamID;
+                flight.bodySize = body.length();
+                flight.commit();
+            }
+        }
+    }
+
+    /* The "objects" event straight from the request bytes; body stays valid only for this call. */
+    static void dispatchObjects(String clientIp, ByteBuffer body, String playerName, String steamID) {
+        FlightEvents.Dispatch flight = new FlightEvents.Dispatch();
+        flight.begin();
+        try {
+            String key = beginEvent(clientIp, "objects", playerName, steamID);
+            ByteBuffer data = HttpRequest.value(body, "data");
+            objects(clientIp, playerName, steamID, data != null ? data : ByteBuffer.allocate(0));
+            endEvent(key, clientIp, "objects", playerName, steamID);
+        } finally {
+            if (flight.shouldCommit()) {
+                flight.event = "objects";
+                flight.steamID = steamID;
+                flight.bodySize = body.remaining();
+                flight.commit();
+            }
+        }
+    }
+
+    private static final byte[] PLAYER_HUMAN = "\"name\":\"Player_Human\"".getBytes(StandardCharsets.UTF_8);
+
+    private static void objects(String clientIp, String playerName, String steamID, ByteBuffer data) {
+        boolean running = HttpRequest.contains(data, PLAYER_HUMAN);
+        ObjectStore.put(steamID, data);
+        Aggregates.objects(steamID, running);
+        Reconciler.snapshot(steamID);
+        StateStore.touch(steamID, StateStore.OBJ | StateStore.FLAGS);
+
+        if (running && runningClients.add(steamID)) {
+            log("[INFO] Running state      from " + clientIp +
+                    " | Name=\"" + playerName + "\", SteamID=" + steamID);
+            EventStream.session(steamID, playerName, "running");
+        }
+        writePlayerData(steamID, playerName, clientIp,
+                playerPositions.get(steamID),
+                playerRotations.get(steamID));
+    }
+
+    /* Session bookkeeping shared by dispatch() and dispatchObjects(); returns the session key. */
+    private static String beginEvent(String clientIp, String evt, String playerName, String steamID) {
+        String key = clientIp + "|" + steamID + "|" + playerName;
+        if (!"disconnect".equals(evt))
+            clientLastSeen.put(key, System.currentTimeMillis());
+        ExtensionManager.onRequest();
+        return key;
+    }
+
+    private static void endEvent(String key, String clientIp, String evt, String playerName, String steamID) {
+        if (!"disconnect".equals(evt) && activeClients.add(key)) {
+            StateStore.touch(steamID, StateStore.SEEN);
+            log("[INFO] Connect           from " + clientIp +
+                    " | Name=\"" + playerName + "\", SteamID=" + steamID);
+            EventStream.session(steamID, playerName, "connect");
+        }
+    }
+
+    private static void dispatch(String clientIp, String body, String evt,
+                                 String playerName, String steamID) {
+        String key = beginEvent(clientIp, evt, playerName, steamID);
+        Journal.record(evt, steamID, playerName, body);
+
+        switch (evt) {
+
+            case "axis": {
+                String axis = extractJson(body, "axis");
+                String val  = extractJson(body, "val");
+                try {
+                    float v = Float.parseFloat(val);
+                    InputBuffer.of(steamID).axis(axis, v);
+                    EventStream.axis(steamID, playerName, axis, v);
+                } catch (NumberFormatException ignore) {}
+                Journal.axis(steamID, playerName, axis, val);
+                break;
+            }
 
-                    } catch (IOException ex) {
-                        log("[WARN] Error handling client " + clientIp + ": " + ex.getMessage());
-                    } finally {
-                        try { client.close(); } catch (IOException ignore) {}
+            case "input": {
+                String keyName = extractJson(body, "key");
+                if (!keyName.isEmpty()) {
+                    InputBuffer.of(steamID).key(keyName);
+                    EventStream.key(steamID, playerName, keyName);
+                }
+                Journal.input(steamID, playerName, keyName);
+                break;
+            }
+
+            case "pos": {
+                try {
+                    double x  = Double.parseDouble(extractJson(body, "x"));
+                    double y  = Double.parseDouble(extractJson(body, "y"));
+                    double z  = Double.parseDouble(extractJson(body, "z"));
+                    double rx = Double.parseDouble(extractJson(body, "rx"));
+                    double ry = Double.parseDouble(extractJson(body, "ry"));
+                    double rz = Double.parseDouble(extractJson(body, "rz"));
+
+                    String pos = x + "," + y + "," + z;
+                    String rot = rx + "," + ry + "," + rz;
+                    playerPositions.put(steamID, pos);
+                    playerRotations.put(steamID, rot);
+                    Replicator.update(steamID, x, y, z, rx, ry, rz);
+
+                    double cx = Double.NaN, cy = Double.NaN, cz = Double.NaN;
+                    String camX = extractJson(body, "camx");
+                    if (!camX.isEmpty()) {
+                        cx = Double.parseDouble(camX);
+                        cy = Double.parseDouble(extractJson(body, "camy"));
+                        cz = Double.parseDouble(extractJson(body, "camz"));
+                        cameraPositions.put(steamID, cx + "," + cy + "," + cz);
                     }
+                    StateStore.touch(steamID, StateStore.POS | StateStore.ROT | StateStore.CAM);
+                    Journal.pos(steamID, playerName, x, y, z, rx, ry, rz, cx, cy, cz);
+                    Trails.pos(steamID, x, y, z, rx, ry, rz);
+                    Aggregates.pos(steamID, x, y, z);
+                    EventStream.pos(steamID, playerName, x, y, z, rx, ry, rz);
+                } catch (NumberFormatException ignore) {}
+                break;
+            }
+
+            case "ack": {
+                String cmdType = extractJson(body, "cmd");
+                String label   = extractJson(body, "label");
+                Reconciler.ack(steamID, label);
+                EventStream.ack(steamID, playerName, cmdType, label);
+                if (!SUPPRESS_ACK_LABELS.contains(label) && !Replicator.isProxy(label))
+                    log("[INFO] Confirmed " + cmdType +
+                            " → '" + label + "' for SteamID=" + steamID);
+                break;
+            }
+
+            case "objects": {
+                String data = extractJson(body, "data");
+                objects(clientIp, playerName, steamID, utf8(data));
+                break;
+            }
+
+            case "disconnect": {
+                log("[INFO] Disconnect        from " + clientIp +
+                        " | Name=\"" + playerName + "\", SteamID=" + steamID);
+                clientLastSeen.remove(key);
+                playerPositions.remove(steamID);
+                playerRotations.remove(steamID);
+                ObjectStore.remove(steamID);
+                InputBuffer.remove(steamID);
+                cameraPositions.remove(steamID);
+                runningClients.remove(steamID);
+                pausedClients.remove(steamID);
+                activeClients.remove(key);
+                lastPersisted.remove(steamID);
+                Replicator.remove(steamID);
+                Aggregates.remove(steamID);
+                Reconciler.remove(steamID);
+                StateStore.touch(steamID, StateStore.ALL);
+                EventStream.session(steamID, playerName, "disconnect");
+                break;
+            }
+
+            case "pause": {
+                String state = extractJson(body, "state").toLowerCase();
+                boolean on = "on".equals(state) || "true".equals(state) || "1".equals(state);
+                StateStore.touch(steamID, StateStore.FLAGS);
+                EventStream.pause(steamID, playerName, on);
+                if (on) {
+                    if (pausedClients.add(steamID))
+                        log("[INFO] Pause state        from " + clientIp +
+                                " | Name=\"" + playerName + "\", SteamID=" + steamID);
+                } else {
+                    if (pausedClients.remove(steamID))
+                        log("[INFO] Resume             from " + clientIp +
+                                " | Name=\"" + playerName + "\", SteamID=" + steamID);
                 }
-            } catch (IOException e) {
-                log("[ERROR] ServerSocket error: " + e.getMessage());
+                break;
             }
-        });
-        t.setDaemon(true);
-        t.start();
+
+            default: break;
+        }
+
+        endEvent(key, clientIp, evt, playerName, steamID);
     }
 
-    private static void respondForbidden(PrintWriter out) {
-        String body = "Forbidden";
-        out.print("HTTP/1.1 403 Forbidden\r\n");
-        out.print("Content-Type: text/plain; charset=UTF-8\r\n");
-        out.print("Content-Length: " + body.getBytes().length + "\r\n");
-        out.print("Connection: close\r\n\r\n");
-        out.print(body);
-        out.flush();
+    private static void respondForbidden(OutputStream out) throws IOException {
+        HttpResponse.start(HttpResponse.FORBIDDEN).send(out, HttpResponse.TEXT, "Forbidden");
+    }
+
+    private static void respondInvalid(OutputStream out, byte[] status) throws IOException {
+        HttpResponse.start(status).send(out, HttpResponse.TEXT, "Request rejected");
+    }
+
+    private static void respondTooManyRequests(OutputStream out, long waitNanos) throws IOException {
+        HttpResponse.start(HttpResponse.TOO_MANY)
+                .header(HttpResponse.RETRY_AFTER, Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L))
+                .send(out, HttpResponse.TEXT, "Too Many Requests");
     }
 
     private static void handleTeleport(String rawLine) {
@@ -537,38 +975,82 @@ public class Main {
         String ply = "{\"cmd\":\"edit\",\"target\":\"Player_Human\",\"x\":" + x +
                 ",\"y\":" + y + ",\"z\":" + z + ",\"vx\":0,\"vy\":0,\"vz\":0}";
 
-        enqueueCommand(sid, ply);
+        enqueueCommand(sid, ply, CommandLanes.URGENT);
 
         log("[INFO] Teleported SteamID=" + sid + " to (" + x + "," + y + "," + z +
                 ").");
     }
 
+    // Listeners may serve two uploads of one player at once; they must not share the .tmp file
+    private static final Object[] PLAYER_DATA_LOCKS = new Object[64];
+    static { java.util.Arrays.setAll(PLAYER_DATA_LOCKS, i -> new Object()); }
+
     private static void writePlayerData(String steamID, String name,
                                         String ip, String pos, String rot) {
+        FlightEvents.PlayerDataWrite flight = new FlightEvents.PlayerDataWrite();
+        flight.begin();
+        synchronized (PLAYER_DATA_LOCKS[(steamID.hashCode() & 0x7fffffff) % PLAYER_DATA_LOCKS.length]) {
+            writePlayerDataLocked(steamID, name, ip, pos, rot);
+        }
+        if (flight.shouldCommit()) {
+            flight.steamID = steamID;
+            flight.size = new java.io.File("player-data", steamID + ".dat").length();
+            flight.commit();
+        }
+    }
+
+    private static void writePlayerDataLocked(String steamID, String name,
+                                              String ip, String pos, String rot) {
+        long started = System.nanoTime();
         java.io.File dir = new java.io.File("player-data");
         if (!dir.exists()) dir.mkdirs();
 
         java.io.File tmp = new java.io.File(dir, steamID + ".tmp");
         java.io.File real = new java.io.File(dir, steamID + ".dat");
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(tmp)) {
-            pw.println("playerName=" + name);
-            pw.println("lastIp=" + ip);
-            if (pos != null) pw.println("lastPos=" + pos);
-            if (rot != null) pw.println("lastRot=" + rot);
-            String objs = playerObjects.get(steamID);
-            if (objs != null) pw.println("objects=" + objs);
-            pw.println("updated=" + nowTimestamp());
+        String nl = System.lineSeparator();
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(tmp.toPath(),
+                java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE,
+                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder head = new StringBuilder(160)
+                    .append("playerName=").append(name).append(nl)
+                    .append("lastIp=").append(ip).append(nl);
+            if (pos != null) head.append("lastPos=").append(pos).append(nl);
+            if (rot != null) head.append("lastRot=").append(rot).append(nl);
+            writeFully(ch, utf8(head.toString()));
+
+            // The snapshot goes straight from its (possibly off-heap) buffer to the file
+            ObjectStore.read(steamID, objs -> {
+                writeFully(ch, utf8("objects="));
+                writeFully(ch, objs);
+                writeFully(ch, utf8(nl));
+                return null;
+            });
+            writeFully(ch, utf8("updated=" + nowTimestamp() + nl));
         } catch (IOException e) {
+            playerDataWriteFailures.inc();
             log("[WARN] Could not write " + real.getPath() + ": " + e.getMessage());
             return;
         }
         if (!tmp.renameTo(real)) tmp.renameTo(real);
+        PlayerRecords.invalidate(steamID);
+        lastPersisted.put(steamID, System.currentTimeMillis());
+        playerDataWrite.recordSince(started);
+    }
+
+    private static java.nio.ByteBuffer utf8(String s) {
+        return java.nio.ByteBuffer.wrap(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    private static void writeFully(java.nio.channels.WritableByteChannel ch, java.nio.ByteBuffer b)
+            throws IOException {
+        while (b.hasRemaining()) ch.write(b);
     }
 
     private static void startTimeoutMonitor() {
         Thread m = new Thread(() -> {
             try {
                 while (true) {
+                    long sweepStart = System.nanoTime();
                     long cutoff = System.currentTimeMillis() - TIMEOUT_MS;
 
                     for (java.util.Iterator<java.util.Map.Entry<String, Long>> it =
@@ -585,16 +1067,28 @@ public class Main {
                                     " | Name=\"" + playerName + "\", SteamID=" + steamID);
 
                             it.remove();
+                            sessionTimeouts.inc();
 
                             playerPositions.remove(steamID);
                             playerRotations.remove(steamID);
-                            playerObjects.remove(steamID);
+                            ObjectStore.remove(steamID);
+                            InputBuffer.remove(steamID);
                             cameraPositions.remove(steamID);
                             runningClients.remove(steamID);
                             pausedClients.remove(steamID);
                             activeClients.remove(key);
+                            lastPersisted.remove(steamID);
+                            Replicator.remove(steamID);
+                            Aggregates.remove(steamID);
+                            Reconciler.remove(steamID);
+                            StateStore.touch(steamID, StateStore.ALL);
+                            EventStream.session(steamID, playerName, "timeout");
                         }
                     }
+                    timeoutSweep.recordSince(sweepStart);
+                    Admission.sweep();
+                    Pacing.sample();
+                    Trails.tick();
 
                     Thread.sleep(2000);
                 }
@@ -606,7 +1100,7 @@ public class Main {
     }
 
 
-    private static String extractJson(String json, String key) {
+    static String extractJson(String json, String key) {
         String k = "\"" + key + "\"";
         int i = json.indexOf(k);
         if (i == -1) return "";
@@ -696,14 +1190,17 @@ public class Main {
         if (label != null) SUPPRESS_ACK_LABELS.add(label);
     }
 
-    private static void respond(PrintWriter out, String body) {
-        out.print("HTTP/1.1 200 OK\r\n");
-        out.print("Content-Type: text/plain; charset=UTF-8\r\n");
-        out.print("Content-Length: " + body.getBytes().length + "\r\n");
-        out.print("Connection: close\r\n");
-        out.print("\r\n");
-        out.print(body);
-        out.flush();
+    /* "OK" for an event, with the client's pacing hints; hints from the owning node when it was forwarded. */
+    private static void respondOk(OutputStream out, String steamID, int[] hints) throws IOException {
+        HttpResponse r = HttpResponse.start(HttpResponse.OK);
+        if (Pacing.enabled())
+            r.header(HttpResponse.POLL_MS, hints != null ? hints[0] : Pacing.pollMs(steamID, false))
+             .header(HttpResponse.UPLOAD_MS, hints != null ? hints[1] : Pacing.uploadMs(steamID));
+        r.send(out, HttpResponse.TEXT, "OK");
+    }
+
+    private static void respond(OutputStream out, String body) throws IOException {
+        HttpResponse.start(HttpResponse.OK).send(out, HttpResponse.TEXT, body);
     }
 
     private static void consoleCommandLoop() {
@@ -715,6 +1212,15 @@ public class Main {
 
                 if (ExtensionManager.forwardConsoleInput(line)) continue;
                 if (ExtensionManager.handleConsole(line))       continue;
+                if (Cluster.handleConsole(line))                continue;
+                if (Journal.handleConsole(line))                continue;
+                if (StateStore.handleConsole(line))             continue;
+                if (Trails.handleConsole(line))                 continue;
+                if (FlightEvents.handleConsole(line))           continue;
+                if (CommandLanes.handleConsole(line))           continue;
+                if (EventStream.handleConsole(line))            continue;
+                if (Aggregates.handleConsole(line))             continue;
+                if (Reconciler.handleConsole(line))             continue;
 
                 if (line.equalsIgnoreCase("help") || line.equals("?")) {
                     log("[INFO] Commands:");
@@ -722,9 +1228,19 @@ public class Main {
                     log("[INFO]   tp <steamID> <x> <y> <z>");
                     log("[INFO]   location <steamID>");
                     log("[INFO]   clientsideobject <steamID>");
-                    log("[INFO]   create <steamID> <src> x y z rx ry rz [ … ]");
-                    log("[INFO]   edit   <steamID> <targetName> [ … ]");
+                    log("[INFO]   create <steamID> <src> x y z rx ry rz [ … ] [lane urgent|normal|bulk]");
+                    log("[INFO]   edit   <steamID> <targetName> [ … ] [lane urgent|normal|bulk]");
+                    log("[INFO]   queue <steamID>  – commands waiting per lane");
+                    log("[INFO]   events  – open /events subscribers");
                     log("[INFO]   mod <steamID> load <file.dll>");
+                    log("[INFO]   metrics");
+                    log("[INFO]   cluster [owner <steamID>]");
+                    log("[INFO]   journal [start|stop]");
+                    log("[INFO]   state [snapshot]");
+                    log("[INFO]   trails | trail <steamID> [minutes] [step-ms]");
+                    log("[INFO]   agg [export [file]|reset] | zone [list|add|remove]");
+                    log("[INFO]   reconcile [steamID]  – declared objects and commands in flight");
+                    log("[INFO]   jfr [start [seconds]|dump [file]|stop [file]]");
                     log("[INFO]   ext <sub> …   (see ‘ext help’)");
                     continue;
                 }
@@ -740,146 +1256,33 @@ public class Main {
                 if (line.toLowerCase().startsWith("clientsideobject "))    { handleObjects(line);  continue; }
                 if (line.toLowerCase().startsWith("mod "))                 { handleMod(line);      continue; }
 
-
-
-                if (line.toLowerCase().startsWith("create ")) {
-                    String[] tok = line.split("\\s+");
-                    if (tok.length < 9) {
-                        log("[WARN] See ‘help’ for full syntax. Not enough arguments.");
-                        continue;
-                    }
-                    try {
-                        int idx = 1;
-                        String sid = tok[idx++];
-                        String src = tok[idx++];
-                        double x = Double.parseDouble(tok[idx++]);
-                        double y = Double.parseDouble(tok[idx++]);
-                        double z = Double.parseDouble(tok[idx++]);
-                        double rx = Double.parseDouble(tok[idx++]);
-                        double ry = Double.parseDouble(tok[idx++]);
-                        double rz = Double.parseDouble(tok[idx++]);
-
-                        String color = "none";
-                        String rename = "";
-                        double sx = 1, sy = 1, sz = 1;
-                        java.util.Map<String, Boolean> comps = new java.util.LinkedHashMap<>();
-
-                        while (idx < tok.length) {
-                            String t = tok[idx++];
-                            if ("color".equalsIgnoreCase(t) && idx < tok.length) color = tok[idx++];
-                            else if ("rename".equalsIgnoreCase(t) && idx < tok.length) rename = tok[idx++];
-                            else if ("scale".equalsIgnoreCase(t) && idx + 2 < tok.length) {
-                                sx = Double.parseDouble(tok[idx++]);
-                                sy = Double.parseDouble(tok[idx++]);
-                                sz = Double.parseDouble(tok[idx++]);
-                            } else if (t.contains(":")) {
-                                String[] kv = t.split(":", 2);
-                                comps.put(kv[0], !"off".equalsIgnoreCase(kv[1]));
-                            } else log("[WARN] Unknown token '" + t + "' – ignored.");
-                        }
-
-                        StringBuilder j = new StringBuilder()
-                                .append("{\"cmd\":\"create\"")
-                                .append(",\"src\":\"").append(src).append("\"")
-                                .append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z)
-                                .append(",\"rx\":").append(rx).append(",\"ry\":").append(ry).append(",\"rz\":").append(rz);
-
-                        if (!"none".equalsIgnoreCase(color)) j.append(",\"color\":\"").append(color).append("\"");
-                        if (!rename.isEmpty()) j.append(",\"rename\":\"").append(rename).append("\"");
-                        if (sx != 1 || sy != 1 || sz != 1)
-                            j.append(",\"sx\":").append(sx).append(",\"sy\":").append(sy).append(",\"sz\":").append(sz);
-                        if (!comps.isEmpty()) {
-                            j.append(",\"components\":{");
-                            boolean first = true;
-                            for (java.util.Map.Entry<String, Boolean> e : comps.entrySet()) {
-                                if (!first) j.append(',');
-                                first = false;
-                                j.append('"').append(e.getKey()).append("\":").append(e.getValue());
-                            }
-                            j.append('}');
-                        }
-                        j.append('}');
-
-                        enqueueCommand(sid, j.toString());
-                    } catch (Exception ex) {
-                        log("[WARN] Bad arguments: " + ex.getMessage());
-                    }
+                if (line.equalsIgnoreCase("metrics")) {
+                    for (String m : Metrics.summaryLines()) log("[INFO] " + m);
                     continue;
                 }
 
-                if (line.toLowerCase().startsWith("edit ")) {
-                    String[] tok = line.split("\\s+");
-                    if (tok.length < 3) {
-                        log("[WARN] Usage: edit <steamID> <targetName> …");
-                        continue;
-                    }
 
-                    int idx = 1;
-                    String sid = tok[idx++];
-                    String target = tok[idx++];
-
-                    boolean delete = false;
-                    Double x = null, y = null, z = null;
-                    Double rx = null, ry = null, rz = null;
-                    double sx = 1, sy = 1, sz = 1;
-                    boolean scaleGiven = false;
-                    String color = null;
-                    String copyTex = null;
-                    String rename = "";
-                    java.util.Map<String, Boolean> comps = new java.util.LinkedHashMap<>();
-
-                    while (idx < tok.length) {
-                        String t = tok[idx++];
-                        if ("delete".equalsIgnoreCase(t)) {
-                            delete = true;
-                        } else if ("pos".equalsIgnoreCase(t) && idx + 2 < tok.length) {
-                            x = Double.parseDouble(tok[idx++]);
-                            y = Double.parseDouble(tok[idx++]);
-                            z = Double.parseDouble(tok[idx++]);
-                        } else if ("rot".equalsIgnoreCase(t) && idx + 2 < tok.length) {
-                            rx = Double.parseDouble(tok[idx++]);
-                            ry = Double.parseDouble(tok[idx++]);
-                            rz = Double.parseDouble(tok[idx++]);
-                        } else if ("scale".equalsIgnoreCase(t) && idx + 2 < tok.length) {
-                            sx = Double.parseDouble(tok[idx++]);
-                            sy = Double.parseDouble(tok[idx++]);
-                            sz = Double.parseDouble(tok[idx++]);
-                            scaleGiven = true;
-                        } else if ("color".equalsIgnoreCase(t) && idx < tok.length) color = tok[idx++];
-                        else if ("copytex".equalsIgnoreCase(t) && idx < tok.length) copyTex = tok[idx++];
-                        else if ("rename".equalsIgnoreCase(t) && idx < tok.length) rename = tok[idx++];
-                        else if (t.contains(":")) {
-                            String[] kv = t.split(":", 2);
-                            comps.put(kv[0], !"off".equalsIgnoreCase(kv[1]));
-                        } else log("[WARN] Unknown token '" + t + "' – ignored.");
-                    }
 
-                    StringBuilder j = new StringBuilder()
-                            .append("{\"cmd\":\"edit\"")
-                            .append(",\"target\":\"").append(target).append("\"");
-                    if (delete) j.append(",\"delete\":true");
-                    if (x != null)
-                        j.append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z);
-                    if (rx != null)
-                        j.append(",\"rx\":").append(rx).append(",\"ry\":").append(ry).append(",\"rz\":").append(rz);
-                    if (scaleGiven)
-                        j.append(",\"sx\":").append(sx).append(",\"sy\":").append(sy).append(",\"sz\":").append(sz);
-                    if (color != null) j.append(",\"color\":\"").append(color).append("\"");
-                    if (copyTex != null) j.append(",\"copytex\":\"").append(copyTex).append("\"");
-                    if (!rename.isEmpty()) j.append(",\"rename\":\"").append(rename).append("\"");
-                    if (!comps.isEmpty()) {
-                        j.append(",\"components\":{");
-                        boolean first = true;
-                        for (java.util.Map.Entry<String, Boolean> e : comps.entrySet()) {
-                            if (!first) j.append(',');
-                            first = false;
-                            j.append('"').append(e.getKey()).append("\":").append(e.getValue());
+                if (line.toLowerCase().startsWith("create ") || line.toLowerCase().startsWith("edit ")) {
+                    String[] tok = line.split("\\s+");
+                    try {
+                        // "lane <urgent|normal|bulk>" anywhere after the SteamID; typed commands default to urgent
+                        int lane = CommandLanes.URGENT;
+                        java.util.List<String> rest = new java.util.ArrayList<>(java.util.List.of(tok));
+                        int at = rest.subList(2, rest.size()).indexOf("lane");
+                        if (at >= 0 && at + 3 < rest.size()) {
+                            lane = CommandLanes.lane(rest.get(at + 3));
+                            if (lane < 0) throw new IllegalArgumentException("Unknown lane '" + rest.get(at + 3) + "' (urgent, normal, bulk).");
+                            rest.subList(at + 2, at + 4).clear();
+                            tok = rest.toArray(new String[0]);
                         }
-                        j.append('}');
+                        String json = "create".equalsIgnoreCase(tok[0])
+                                ? createCommandJson(tok, t -> log("[WARN] Unknown token '" + t + "' – ignored."))
+                                : editCommandJson(tok, t -> log("[WARN] Unknown token '" + t + "' – ignored."));
+                        enqueueCommand(tok[1], json, lane);
+                    } catch (IllegalArgumentException ex) {
+                        log("[WARN] " + ex.getMessage());
                     }
-                    j.append('}');
-
-                    enqueueCommand(sid, j.toString());
                     continue;
                 }
 
@@ -890,6 +1293,130 @@ public class Main {
         }
     }
 
+    /* create <steamID> <src> x y z rx ry rz [color c] [rename n] [scale x y z] [Component:on|off …] */
+    static String createCommandJson(String[] tok, java.util.function.Consumer<String> unknownToken) {
+        if (tok.length < 9) throw new IllegalArgumentException("See ‘help’ for full syntax. Not enough arguments.");
+        int idx = 2;
+        String src = tok[idx++];
+        double x, y, z, rx, ry, rz;
+        String color = "none";
+        String rename = "";
+        double sx = 1, sy = 1, sz = 1;
+        java.util.Map<String, Boolean> comps = new java.util.LinkedHashMap<>();
+        try {
+            x = Double.parseDouble(tok[idx++]);
+            y = Double.parseDouble(tok[idx++]);
+            z = Double.parseDouble(tok[idx++]);
+            rx = Double.parseDouble(tok[idx++]);
+            ry = Double.parseDouble(tok[idx++]);
+            rz = Double.parseDouble(tok[idx++]);
+
+            while (idx < tok.length) {
+                String t = tok[idx++];
+                if ("color".equalsIgnoreCase(t) && idx < tok.length) color = tok[idx++];
+                else if ("rename".equalsIgnoreCase(t) && idx < tok.length) rename = tok[idx++];
+                else if ("scale".equalsIgnoreCase(t) && idx + 2 < tok.length) {
+                    sx = Double.parseDouble(tok[idx++]);
+                    sy = Double.parseDouble(tok[idx++]);
+                    sz = Double.parseDouble(tok[idx++]);
+                } else if (t.contains(":")) {
+                    String[] kv = t.split(":", 2);
+                    comps.put(kv[0], !"off".equalsIgnoreCase(kv[1]));
+                } else unknownToken.accept(t);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Bad arguments: " + ex.getMessage());
+        }
+
+        StringBuilder j = new StringBuilder()
+                .append("{\"cmd\":\"create\"")
+                .append(",\"src\":\"").append(src).append("\"")
+                .append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z)
+                .append(",\"rx\":").append(rx).append(",\"ry\":").append(ry).append(",\"rz\":").append(rz);
+
+        if (!"none".equalsIgnoreCase(color)) j.append(",\"color\":\"").append(color).append("\"");
+        if (!rename.isEmpty()) j.append(",\"rename\":\"").append(rename).append("\"");
+        if (sx != 1 || sy != 1 || sz != 1)
+            j.append(",\"sx\":").append(sx).append(",\"sy\":").append(sy).append(",\"sz\":").append(sz);
+        appendComponents(j, comps);
+        return j.append('}').toString();
+    }
+
+    /* edit <steamID> <target> [delete] [pos x y z] [rot x y z] [scale x y z] [color c] [copytex o] [rename n] [Component:on|off …] */
+    static String editCommandJson(String[] tok, java.util.function.Consumer<String> unknownToken) {
+        if (tok.length < 3) throw new IllegalArgumentException("Usage: edit <steamID> <targetName> …");
+        int idx = 2;
+        String target = tok[idx++];
+
+        boolean delete = false;
+        Double x = null, y = null, z = null;
+        Double rx = null, ry = null, rz = null;
+        double sx = 1, sy = 1, sz = 1;
+        boolean scaleGiven = false;
+        String color = null;
+        String copyTex = null;
+        String rename = "";
+        java.util.Map<String, Boolean> comps = new java.util.LinkedHashMap<>();
+
+        try {
+            while (idx < tok.length) {
+                String t = tok[idx++];
+                if ("delete".equalsIgnoreCase(t)) {
+                    delete = true;
+                } else if ("pos".equalsIgnoreCase(t) && idx + 2 < tok.length) {
+                    x = Double.parseDouble(tok[idx++]);
+                    y = Double.parseDouble(tok[idx++]);
+                    z = Double.parseDouble(tok[idx++]);
+                } else if ("rot".equalsIgnoreCase(t) && idx + 2 < tok.length) {
+                    rx = Double.parseDouble(tok[idx++]);
+                    ry = Double.parseDouble(tok[idx++]);
+                    rz = Double.parseDouble(tok[idx++]);
+                } else if ("scale".equalsIgnoreCase(t) && idx + 2 < tok.length) {
+                    sx = Double.parseDouble(tok[idx++]);
+                    sy = Double.parseDouble(tok[idx++]);
+                    sz = Double.parseDouble(tok[idx++]);
+                    scaleGiven = true;
+                } else if ("color".equalsIgnoreCase(t) && idx < tok.length) color = tok[idx++];
+                else if ("copytex".equalsIgnoreCase(t) && idx < tok.length) copyTex = tok[idx++];
+                else if ("rename".equalsIgnoreCase(t) && idx < tok.length) rename = tok[idx++];
+                else if (t.contains(":")) {
+                    String[] kv = t.split(":", 2);
+                    comps.put(kv[0], !"off".equalsIgnoreCase(kv[1]));
+                } else unknownToken.accept(t);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Bad arguments: " + ex.getMessage());
+        }
+
+        StringBuilder j = new StringBuilder()
+                .append("{\"cmd\":\"edit\"")
+                .append(",\"target\":\"").append(target).append("\"");
+        if (delete) j.append(",\"delete\":true");
+        if (x != null)
+            j.append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z);
+        if (rx != null)
+            j.append(",\"rx\":").append(rx).append(",\"ry\":").append(ry).append(",\"rz\":").append(rz);
+        if (scaleGiven)
+            j.append(",\"sx\":").append(sx).append(",\"sy\":").append(sy).append(",\"sz\":").append(sz);
+        if (color != null) j.append(",\"color\":\"").append(color).append("\"");
+        if (copyTex != null) j.append(",\"copytex\":\"").append(copyTex).append("\"");
+        if (!rename.isEmpty()) j.append(",\"rename\":\"").append(rename).append("\"");
+        appendComponents(j, comps);
+        return j.append('}').toString();
+    }
+
+    private static void appendComponents(StringBuilder j, java.util.Map<String, Boolean> comps) {
+        if (comps.isEmpty()) return;
+        j.append(",\"components\":{");
+        boolean first = true;
+        for (java.util.Map.Entry<String, Boolean> e : comps.entrySet()) {
+            if (!first) j.append(',');
+            first = false;
+            j.append('"').append(e.getKey()).append("\":").append(e.getValue());
+        }
+        j.append('}');
+    }
+
     private static void handleLocation(String rawLine) {
         String sid = rawLine.substring(9).trim();
         if (sid.isEmpty()) {
@@ -901,15 +1428,10 @@ public class Main {
         String rot = playerRotations.get(sid);
 
         if (pos == null || rot == null) {
-            java.io.File f = new java.io.File("player-data", sid + ".dat");
-            if (f.exists()) {
-                try {
-                    for (String l : java.nio.file.Files.readAllLines(f.toPath())) {
-                        if (l.startsWith("lastPos=")) pos = l.substring(8);
-                        if (l.startsWith("lastRot=")) rot = l.substring(8);
-                    }
-                } catch (IOException ignore) {
-                }
+            PlayerRecords.Record r = PlayerRecords.get(sid);
+            if (r != null) {
+                if (r.lastPos != null) pos = r.lastPos;
+                if (r.lastRot != null) rot = r.lastRot;
             }
         }
 
@@ -926,20 +1448,10 @@ public class Main {
             return;
         }
 
-        String objs = playerObjects.get(sid);
+        String objs = ObjectStore.getString(sid);
         if (objs == null) {
-            java.io.File f = new java.io.File("player-data", sid + ".dat");
-            if (f.exists()) {
-                try {
-                    for (String l : java.nio.file.Files.readAllLines(f.toPath())) {
-                        if (l.startsWith("objects=")) {
-                            objs = l.substring(8);
-                            break;
-                        }
-                    }
-                } catch (IOException ignore) {
-                }
-            }
+            PlayerRecords.Record r = PlayerRecords.get(sid);
+            if (r != null) objs = r.objects();
         }
 
         if (objs == null)
@@ -970,6 +1482,10 @@ public class Main {
     private static void shutdownAndExit() {
 
         ExtensionManager.disableAll();
+        Cluster.leave();
+        StateStore.stop();
+        Journal.stop();
+        Trails.stop();
 
         if (serverSocket != null && !serverSocket.isClosed()) {
             try {
@@ -979,21 +1495,151 @@ public class Main {
                 log("[WARN] Error closing ServerSocket: " + e.getMessage());
             }
         }
+        closeListeners();
+        EventStream.closeAll();
         System.exit(0);
     }
 
     public static boolean isPaused(String sid) {
+        if (Cluster.enabled() && !Cluster.isLocal(sid)) {
+            Boolean remote = Cluster.isPaused(sid);
+            if (remote != null) return remote;
+        }
+        return isPausedLocal(sid);
+    }
+
+    static boolean isPausedLocal(String sid) {
         return pausedClients.contains(sid);
     }
 
     public static boolean isRunning(String sid) {
+        if (Cluster.enabled() && !Cluster.isLocal(sid)) {
+            Boolean remote = Cluster.isRunning(sid);
+            if (remote != null) return remote;
+        }
+        return isRunningLocal(sid);
+    }
+
+    static boolean isRunningLocal(String sid) {
         return runningClients.contains(sid);
     }
 
     public static java.util.Set<String> getActiveClients() {
+        if (Cluster.enabled()) return Cluster.activeClients(activeClients);
         return activeClients;
     }
 
+    static java.util.Set<String> getLocalActiveClients() {
+        return activeClients;
+    }
+
+    static java.util.Set<String> localSteamIDs() {
+        java.util.Set<String> ids = new java.util.HashSet<>(pendingCommands.keySet());
+        ids.addAll(InputBuffer.steamIDs());
+        ids.addAll(playerPositions.keySet());
+        ids.addAll(ObjectStore.steamIDs());
+        for (String key : clientLastSeen.keySet()) ids.add(key.split("\\|", 3)[1]);
+        return ids;
+    }
+
+    /* Removes everything held for sid and returns it as tagged fields, for handing it to another node. */
+    static java.util.List<String> exportSession(String sid) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        CommandLanes cmds = pendingCommands.remove(sid);
+        if (cmds != null)
+            for (int l = 0; l < CommandLanes.NAMES.length; l++)
+                for (String c; (c = cmds.queue(l).poll()) != null; ) out.add(CommandLanes.field(l) + '=' + c);
+        InputBuffer in = InputBuffer.get(sid);
+        if (in != null) for (String k : in.drainStrings()) out.add("in=" + k);
+        InputBuffer.remove(sid);
+
+        String v;
+        if ((v = playerPositions.remove(sid)) != null) out.add("pos=" + v);
+        if ((v = playerRotations.remove(sid)) != null) out.add("rot=" + v);
+        if ((v = cameraPositions.remove(sid)) != null) out.add("cam=" + v);
+        if ((v = ObjectStore.getString(sid)) != null) out.add("obj=" + v);
+        ObjectStore.remove(sid);
+        if (runningClients.remove(sid)) out.add("running=1");
+        if (pausedClients.remove(sid)) out.add("paused=1");
+
+        for (java.util.Iterator<java.util.Map.Entry<String, Long>> it =
+             clientLastSeen.entrySet().iterator(); it.hasNext(); ) {
+            java.util.Map.Entry<String, Long> e = it.next();
+            if (!sid.equals(e.getKey().split("\\|", 3)[1])) continue;
+            out.add("seen=" + e.getValue() + '|' + e.getKey());
+            it.remove();
+            activeClients.remove(e.getKey());
+        }
+        lastPersisted.remove(sid);
+        Replicator.remove(sid);
+        Aggregates.remove(sid);
+        Reconciler.remove(sid);
+        StateStore.drop(sid);
+        return out;
+    }
+
+    static void importSession(String sid, java.util.List<String> fields) {
+        for (String f : fields) {
+            int eq = f.indexOf('=');
+            String k = f.substring(0, eq), v = f.substring(eq + 1);
+            switch (k) {
+                case "cmd":        enqueueLocal(sid, v, CommandLanes.NORMAL); break;
+                case "cmd.urgent": enqueueLocal(sid, v, CommandLanes.URGENT); break;
+                case "cmd.bulk":   enqueueLocal(sid, v, CommandLanes.BULK); break;
+                case "in":      addInputEvent(sid, v); break;
+                case "pos":     playerPositions.put(sid, v); break;
+                case "rot":     playerRotations.put(sid, v); break;
+                case "cam":     cameraPositions.put(sid, v); break;
+                case "obj":     ObjectStore.put(sid, v); break;
+                case "running": runningClients.add(sid); break;
+                case "paused":  pausedClients.add(sid); break;
+                case "seen": {
+                    int bar = v.indexOf('|');
+                    String key = v.substring(bar + 1);
+                    clientLastSeen.merge(key, Long.parseLong(v.substring(0, bar)), Math::max);
+                    activeClients.add(key);
+                    break;
+                }
+                default: break;
+            }
+        }
+        StateStore.touch(sid, StateStore.ALL);
+    }
+
+    /* Current values of the selected non-queue fields, in importSession format; "-name" when absent. */
+    static java.util.List<String> sessionFields(String sid, int mask) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        if ((mask & StateStore.POS) != 0) field(out, "pos", playerPositions.get(sid));
+        if ((mask & StateStore.ROT) != 0) field(out, "rot", playerRotations.get(sid));
+        if ((mask & StateStore.CAM) != 0) field(out, "cam", cameraPositions.get(sid));
+        if ((mask & StateStore.OBJ) != 0) field(out, "obj", ObjectStore.getString(sid));
+        if ((mask & StateStore.FLAGS) != 0) {
+            field(out, "running", runningClients.contains(sid) ? "1" : null);
+            field(out, "paused", pausedClients.contains(sid) ? "1" : null);
+        }
+        if ((mask & StateStore.SEEN) != 0) {
+            out.add("-seen");
+            for (java.util.Map.Entry<String, Long> e : clientLastSeen.entrySet())
+                if (sid.equals(e.getKey().split("\\|", 3)[1])) out.add("seen=" + e.getValue() + '|' + e.getKey());
+        }
+        return out;
+    }
+
+    private static void field(java.util.List<String> out, String name, String value) {
+        out.add(value == null ? '-' + name : name + '=' + value);
+    }
+
+    /* Copies of all command queues as "cmd=" / "cmd.urgent=" / "cmd.bulk=" fields. */
+    static java.util.Map<String, java.util.List<String>> sessionQueues() {
+        java.util.Map<String, java.util.List<String>> out = new java.util.HashMap<>();
+        pendingCommands.forEach((sid, q) -> {
+            for (int l = 0; l < CommandLanes.NAMES.length; l++)
+                for (String c : q.queue(l))
+                    out.computeIfAbsent(sid, k -> new java.util.ArrayList<>()).add(CommandLanes.field(l) + '=' + c);
+        });
+        return out;
+    }
+
     public static void teleportFromApi(String sid, double x, double y, double z) {
         handleTeleport("tp " + sid + ' ' + x + ' ' + y + ' ' + z);
     }
@@ -1043,7 +1689,30 @@ public class Main {
     }
 
     public static String getObjectsSnapshot(String steamID) {
-        return playerObjects.get(steamID);
+        if (Cluster.enabled() && !Cluster.isLocal(steamID)) {
+            String[] remote = Cluster.objects(steamID);
+            if (remote != null) return remote[0];
+        }
+        return getObjectsSnapshotLocal(steamID);
+    }
+
+    static String getObjectsSnapshotLocal(String steamID) {
+        return ObjectStore.getString(steamID);
+    }
+
+    /* Live position / rotation, or the one saved in player-data for a player who is not connected. */
+    static String lastPosition(String steamID) {
+        String p = playerPositions.get(steamID);
+        if (p != null) return p;
+        PlayerRecords.Record r = PlayerRecords.get(steamID);
+        return r == null ? null : r.lastPos;
+    }
+
+    static String lastRotation(String steamID) {
+        String p = playerRotations.get(steamID);
+        if (p != null) return p;
+        PlayerRecords.Record r = PlayerRecords.get(steamID);
+        return r == null ? null : r.lastRot;
     }
 
 }
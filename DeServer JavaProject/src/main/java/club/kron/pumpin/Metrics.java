@@ -0,0 +1,173 @@
+package club.kron.pumpin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+final class Metrics {
+
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+        void inc()         { value.increment(); }
+        void add(long n)   { value.add(n); }
+        long get()         { return value.sum(); }
+    }
+
+    /* Bucket i holds samples below 2^i microseconds; the last bucket is +Inf. */
+    static final class Histogram {
+        static final int BUCKETS = 28;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        void recordNanos(long nanos) {
+            if (nanos < 0) nanos = 0;
+            long us = nanos / 1_000;
+            int b = us == 0 ? 0 : 64 - Long.numberOfLeadingZeros(us);
+            if (b >= BUCKETS) b = BUCKETS - 1;
+            buckets.incrementAndGet(b);
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        void recordSince(long startNanos) { recordNanos(System.nanoTime() - startNanos); }
+
+        long count()    { return count.sum(); }
+        long sumNanos() { return sumNanos.sum(); }
+
+        /* Upper bound of the bucket containing the q-quantile, in microseconds. */
+        long quantileMicros(double q) {
+            long total = 0;
+            long[] snap = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) total += snap[i] = buckets.get(i);
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snap[i];
+                if (seen >= rank) return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+
+    private static final class Family {
+        final String name, help, type;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+        Family(String name, String help, String type) {
+            this.name = name; this.help = help; this.type = type;
+        }
+    }
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Object> SERIES = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    static Counter counter(String name, String help) { return counter(name, help, ""); }
+
+    static Counter counter(String name, String help, String labels) {
+        return (Counter) register(name, help, "counter", labels, Counter::new);
+    }
+
+    static Histogram histogram(String name, String help) { return histogram(name, help, ""); }
+
+    static Histogram histogram(String name, String help, String labels) {
+        return (Histogram) register(name, help, "histogram", labels, Histogram::new);
+    }
+
+    static void gauge(String name, String help, LongSupplier value) {
+        register(name, help, "gauge", "", () -> value);
+    }
+
+    /* label("route", "pos") → route="pos" ; values are escaped for the text format. */
+    static String label(String key, String value) {
+        String v = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return key + "=\"" + v + '"';
+    }
+
+    private static Object register(String name, String help, String type, String labels,
+                                   java.util.function.Supplier<Object> factory) {
+        String key = name + '{' + labels + '}';
+        Object existing = SERIES.get(key);
+        if (existing != null) return existing;
+
+        Family f = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        return SERIES.computeIfAbsent(key, k -> {
+            Object m = factory.get();
+            f.series.put(labels, m);
+            return m;
+        });
+    }
+
+    static String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family f : FAMILIES.values()) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+
+            for (Map.Entry<String, Object> e : f.series.entrySet()) {
+                String labels = e.getKey();
+                Object m = e.getValue();
+
+                if (m instanceof Counter c) {
+                    sample(sb, f.name, labels, c.get());
+                } else if (m instanceof LongSupplier g) {
+                    long v;
+                    try { v = g.getAsLong(); } catch (RuntimeException ex) { continue; }
+                    sample(sb, f.name, labels, v);
+                } else if (m instanceof Histogram h) {
+                    String sep = labels.isEmpty() ? "" : labels + ',';
+                    long cumulative = 0;
+                    for (int i = 0; i < Histogram.BUCKETS; i++) {
+                        cumulative += h.buckets.get(i);
+                        String le = i == Histogram.BUCKETS - 1
+                                ? "+Inf"
+                                : Double.toString((1L << i) / 1_000_000.0);
+                        sb.append(f.name).append("_bucket{").append(sep)
+                          .append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+                    }
+                    String lb = labels.isEmpty() ? "" : '{' + labels + '}';
+                    sb.append(f.name).append("_sum").append(lb).append(' ')
+                      .append(h.sumNanos() / 1_000_000_000.0).append('\n');
+                    sb.append(f.name).append("_count").append(lb).append(' ')
+                      .append(cumulative).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long v) {
+        sb.append(name);
+        if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+        sb.append(' ').append(v).append('\n');
+    }
+
+    static List<String> summaryLines() {
+        List<String> out = new ArrayList<>();
+        for (Family f : FAMILIES.values()) {
+            for (Map.Entry<String, Object> e : f.series.entrySet()) {
+                String id = e.getKey().isEmpty() ? f.name : f.name + '{' + e.getKey() + '}';
+                Object m = e.getValue();
+                if (m instanceof Counter c) {
+                    out.add(id + " = " + c.get());
+                } else if (m instanceof LongSupplier g) {
+                    try { out.add(id + " = " + g.getAsLong()); } catch (RuntimeException ignore) {}
+                } else if (m instanceof Histogram h && h.count() > 0) {
+                    out.add(id + " n=" + h.count()
+                            + " avg=" + (h.sumNanos() / h.count() / 1_000) + "µs"
+                            + " p50<" + h.quantileMicros(0.50) + "µs"
+                            + " p99<" + h.quantileMicros(0.99) + "µs");
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,280 @@
+package club.kron.pumpin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Chunked mod distribution. Each file in mods/ is cut into content-defined chunks (gear rolling hash,
+ * 2–64 KB, about 8 KB on average), so an edit only changes the chunks around it and the rest keep their
+ * SHA-256. GET /manifest/<file> lists the chunk hashes; GET /chunks/<hash>,<hash>,… (up to 64) returns
+ * those chunks back to back, so a client that keeps chunks by hash downloads only what changed.
+ *
+ * Every chunk is stored once, keyed by hash, as a location in a current mod file; manifests are rebuilt
+ * when a file's size or mtime changes. Each manifest also keeps its own locations, so when a file changes,
+ * a hash that another current file still contains is moved there instead of being forgotten. Recently served chunks stay in an LRU of mod-chunk-cache-mb (32).
+ */
+final class ModChunks {
+
+    static final int MAX_BATCH = 64;
+
+    private static final int MIN = 2 << 10, AVG = 8 << 10, MAX = 64 << 10;
+    private static final long MASK_S = ((1L << 15) - 1) << 49;     // harder to cut below AVG
+    private static final long MASK_L = ((1L << 11) - 1) << 53;     // easier above it
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom r = new SplittableRandom(0x6465736572766572L);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = r.nextLong();
+    }
+
+    private static final class Manifest {
+        final File file;
+        final long size, modified;
+        final byte[] json;
+        final Map<String, Location> chunks = new java.util.HashMap<>();
+
+        Manifest(File file, long size, long modified, byte[] json) {
+            this.file = file; this.size = size; this.modified = modified; this.json = json;
+        }
+
+        boolean current() {
+            return file.length() == size && file.lastModified() == modified;
+        }
+    }
+
+    private static final class Location {
+        final Manifest source;
+        final long offset;
+        final int length;
+
+        Location(Manifest source, long offset, int length) {
+            this.source = source; this.offset = offset; this.length = length;
+        }
+    }
+
+    private static final Map<String, Manifest> MANIFESTS = new ConcurrentHashMap<>();
+    private static final Map<String, Location> CHUNKS = new ConcurrentHashMap<>();
+    private static final LinkedHashMap<String, byte[]> HOT = new LinkedHashMap<>(256, 0.75f, true);
+    private static long hotBytes;
+    private static long maxHotBytes = 32L << 20;
+
+    private static final Metrics.Counter manifestBytes = Metrics.counter("deserver_mod_bytes_total",
+            "Bytes of mod data served", Metrics.label("kind", "manifest"));
+    private static final Metrics.Counter chunkBytes = Metrics.counter("deserver_mod_bytes_total",
+            "Bytes of mod data served", Metrics.label("kind", "chunk"));
+    private static final Metrics.Counter hotHits = Metrics.counter("deserver_mod_chunk_cache_requests_total",
+            "Chunk lookups in the hot cache", Metrics.label("result", "hit"));
+    private static final Metrics.Counter hotMisses = Metrics.counter("deserver_mod_chunk_cache_requests_total",
+            "Chunk lookups in the hot cache", Metrics.label("result", "miss"));
+
+    static {
+        Metrics.gauge("deserver_mod_chunks", "Distinct chunks across mods/", CHUNKS::size);
+        Metrics.gauge("deserver_mod_chunk_cache_bytes", "Chunk bytes held in the hot cache", () -> {
+            synchronized (HOT) { return hotBytes; }
+        });
+    }
+
+    private ModChunks() {}
+
+    static void configure() {
+        synchronized (HOT) {
+            maxHotBytes = Math.max(0, Main.intProperty("mod-chunk-cache-mb", 32)) * (1L << 20);
+            trim();
+        }
+    }
+
+    /* Writes the manifest of mods/<name>; false when there is no such file. */
+    static boolean sendManifest(String name, OutputStream out) throws IOException {
+        Manifest m = manifest(name);
+        if (m == null) return false;
+        HttpResponse.start(HttpResponse.OK).send(out, HttpResponse.JSON, m.json);
+        manifestBytes.add(m.json.length);
+        return true;
+    }
+
+    /* Writes the listed chunks back to back; false when one of them is unknown or the list is too long. */
+    static boolean sendChunks(String list, OutputStream out) throws IOException {
+        String[] hashes = list.split(",");
+        if (hashes.length > MAX_BATCH) return false;
+        List<byte[]> parts = new ArrayList<>(hashes.length);
+        int total = 0;
+        for (String h : hashes) {
+            byte[] b = chunk(h.trim().toLowerCase());
+            if (b == null) return false;
+            parts.add(b);
+            total += b.length;
+        }
+        byte[] body = parts.size() == 1 ? parts.get(0) : new byte[total];
+        if (parts.size() > 1) {
+            int at = 0;
+            for (byte[] b : parts) { System.arraycopy(b, 0, body, at, b.length); at += b.length; }
+        }
+        HttpResponse.start(HttpResponse.OK).send(out, HttpResponse.OCTETS, body);
+        chunkBytes.add(total);
+        return true;
+    }
+
+    /* ---- manifests ---- */
+
+    private static Manifest manifest(String name) throws IOException {
+        File f = new File("mods", name);
+        if (!f.isFile() || !f.getParentFile().getCanonicalFile().equals(new File("mods").getCanonicalFile()))
+            return null;
+        Manifest m = MANIFESTS.get(name);
+        if (m != null && m.current()) return m;
+        synchronized (ModChunks.class) {
+            m = MANIFESTS.get(name);
+            if (m != null && m.current()) return m;
+            m = build(name, f);
+            MANIFESTS.put(name, m);
+        }
+        return m;
+    }
+
+    private static Manifest build(String name, File f) throws IOException {
+        long modified = f.lastModified();
+        byte[] data = java.nio.file.Files.readAllBytes(f.toPath());
+        MessageDigest whole = sha256(), part = sha256();
+        whole.update(data);
+
+        List<String> hashes = new ArrayList<>();
+        List<long[]> spans = new ArrayList<>();
+        StringBuilder json = new StringBuilder(128 + data.length / AVG * 80)
+                .append("{\"file\":").append(Main.jsonString(name))
+                .append(",\"size\":").append(data.length)
+                .append(",\"sha256\":\"").append(hex(whole.digest())).append("\",\"chunks\":[");
+        for (int off = 0; off < data.length; ) {
+            int len = cut(data, off, data.length);
+            part.update(data, off, len);
+            String h = hex(part.digest());
+            json.append(hashes.isEmpty() ? "" : ",").append('"').append(h).append(':').append(len).append('"');
+            hashes.add(h);
+            spans.add(new long[]{off, len});
+            off += len;
+        }
+        json.append("]}");
+
+        Manifest m = new Manifest(f, data.length, modified, json.toString().getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < hashes.size(); i++)
+            m.chunks.putIfAbsent(hashes.get(i), new Location(m, spans.get(i)[0], (int) spans.get(i)[1]));
+        CHUNKS.putAll(m.chunks);
+        // Locations in the file's previous version point at bytes that are gone
+        drop(f, m);
+        Main.log("[INFO] Indexed mods/" + name + ": " + hashes.size() + " chunk(s), " + data.length / 1024 + " KB");
+        return m;
+    }
+
+    /* Moves every location in f other than keep's to another current file with that hash, or forgets it. */
+    private static void drop(File f, Manifest keep) {
+        for (Iterator<Map.Entry<String, Location>> it = CHUNKS.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Location> e = it.next();
+            Location l = e.getValue();
+            if (!l.source.file.equals(f) || l.source == keep) continue;
+            Location other = elsewhere(e.getKey(), f);
+            if (other != null) e.setValue(other);
+            else it.remove();
+        }
+    }
+
+    private static Location elsewhere(String hash, File not) {
+        for (Manifest m : MANIFESTS.values()) {
+            if (m.file.equals(not) || !m.current()) continue;
+            Location l = m.chunks.get(hash);
+            if (l != null) return l;
+        }
+        return null;
+    }
+
+    /* Length of the chunk starting at off (FastCDC-style normalised chunking). */
+    static int cut(byte[] b, int off, int end) {
+        int n = end - off;
+        if (n <= MIN) return n;
+        int normal = Math.min(AVG, n), max = Math.min(MAX, n);
+        long h = 0;
+        int i = MIN;
+        for (; i < normal; i++) {
+            h = (h << 1) + GEAR[b[off + i] & 0xff];
+            if ((h & MASK_S) == 0) return i + 1;
+        }
+        for (; i < max; i++) {
+            h = (h << 1) + GEAR[b[off + i] & 0xff];
+            if ((h & MASK_L) == 0) return i + 1;
+        }
+        return max;
+    }
+
+    /* ---- chunk store ---- */
+
+    private static byte[] chunk(String hash) throws IOException {
+        synchronized (HOT) {
+            byte[] b = HOT.get(hash);
+            if (b != null) {
+                hotHits.inc();
+                return b;
+            }
+        }
+        hotMisses.inc();
+        Location l = CHUNKS.get(hash);
+        if (l == null) return null;
+        if (!l.source.current()) {
+            // The file changed since it was indexed; re-index it and look again
+            String name = l.source.file.getName();
+            if (manifest(name) == null) {
+                synchronized (ModChunks.class) { drop(l.source.file, null); }
+            }
+            Location again = CHUNKS.get(hash);
+            if (again == null || !again.source.current()) return null;
+            return load(hash, again);
+        }
+        return load(hash, l);
+    }
+
+    private static byte[] load(String hash, Location l) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(l.length);
+        try (FileChannel ch = FileChannel.open(l.source.file.toPath(), StandardOpenOption.READ)) {
+            while (b.hasRemaining() && ch.read(b, l.offset + b.position()) > 0) { }
+        }
+        if (b.hasRemaining()) return null;
+        byte[] bytes = b.array();
+        synchronized (HOT) {
+            if (maxHotBytes > 0 && HOT.put(hash, bytes) == null) {
+                hotBytes += bytes.length;
+                trim();
+            }
+        }
+        return bytes;
+    }
+
+    private static void trim() {
+        for (Iterator<byte[]> it = HOT.values().iterator(); hotBytes > maxHotBytes && it.hasNext(); ) {
+            hotBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] b) {
+        return java.util.HexFormat.of().formatHex(b);
+    }
+}
@@ -0,0 +1,218 @@
+package club.kron.pumpin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Per-player objects snapshots (the client's scene JSON), kept as UTF-8.
+ *
+ * objects-store=offheap puts them in direct-buffer blocks carved from 4 MB slabs, in power-of-two
+ * size classes that are recycled instead of garbage collected; objects-offheap-max-mb caps the slabs
+ * (snapshots past the cap stay on heap). objects-store=heap (default) keeps plain heap bytes.
+ *
+ * Readers get a read-only view of the stored bytes for the duration of a callback; a snapshot replaced
+ * or removed meanwhile is only recycled once the last view is closed.
+ */
+final class ObjectStore {
+
+    interface Reader<T> {
+        T read(ByteBuffer utf8) throws IOException;
+    }
+
+    private static final int MIN_SHIFT = 12;            // 4 KB
+    private static final int MAX_SHIFT = 28;            // 256 MB
+    private static final int SLAB_SHIFT = 22;           // 4 MB
+
+    private static final class Entry {
+        final ByteBuffer block;                          // direct block, or a heap wrap when pooled == false
+        final int length;
+        final int sizeClass;
+        final boolean pooled;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Entry(ByteBuffer block, int length, int sizeClass, boolean pooled) {
+            this.block = block; this.length = length; this.sizeClass = sizeClass; this.pooled = pooled;
+        }
+
+        boolean retain() {
+            for (int r; (r = refs.get()) > 0; )
+                if (refs.compareAndSet(r, r + 1)) return true;
+            return false;
+        }
+
+        void release() {
+            if (refs.decrementAndGet() != 0) return;
+            usedBytes.addAndGet(-length);
+            if (pooled) {
+                block.clear();
+                FREE[sizeClass].offer(block);
+            }
+        }
+
+        ByteBuffer view() {
+            return block.duplicate().position(0).limit(length).asReadOnlyBuffer();
+        }
+    }
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ConcurrentLinkedQueue<ByteBuffer>[] FREE = new ConcurrentLinkedQueue[MAX_SHIFT + 1];
+    private static final AtomicLong reservedBytes = new AtomicLong();
+    private static final AtomicLong usedBytes = new AtomicLong();
+
+    private static final ThreadLocal<CharsetEncoder> ENCODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newEncoder);
+
+    private static final Metrics.Counter slabAllocations =
+            Metrics.counter("deserver_objects_slab_allocations_total", "Direct slabs allocated for objects snapshots");
+    private static final Metrics.Counter heapFallbacks =
+            Metrics.counter("deserver_objects_heap_fallbacks_total", "Snapshots kept on heap because the off-heap cap was reached");
+
+    private static boolean offHeap;
+    private static long maxReserved;
+    private static volatile boolean capWarned;
+
+    static {
+        for (int i = 0; i <= MAX_SHIFT; i++) FREE[i] = new ConcurrentLinkedQueue<>();
+        Metrics.gauge("deserver_objects_bytes", "UTF-8 bytes of objects snapshots held", usedBytes::get);
+        Metrics.gauge("deserver_objects_offheap_reserved_bytes", "Direct memory reserved for objects snapshots",
+                reservedBytes::get);
+    }
+
+    private ObjectStore() {}
+
+    static void configure() {
+        offHeap = "offheap".equalsIgnoreCase(Main.property("objects-store", "heap"));
+        maxReserved = Main.intProperty("objects-offheap-max-mb", 512) * (1L << 20);
+        if (offHeap) Main.log("[INFO] Objects snapshots stored off-heap (cap " + (maxReserved >> 20) + " MB).");
+    }
+
+    static void put(String steamID, String json) {
+        Entry e = offHeap ? encodeOffHeap(json) : null;
+        if (e == null) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            e = new Entry(ByteBuffer.wrap(bytes), bytes.length, 0, false);
+        }
+        publish(steamID, e);
+    }
+
+    /* Copies the remaining bytes of utf8 without decoding them. */
+    static void put(String steamID, ByteBuffer utf8) {
+        int len = utf8.remaining();
+        Entry e = null;
+        if (offHeap) {
+            int c = sizeClass(len);
+            ByteBuffer block = c < 0 ? null : take(c);
+            if (block != null) {
+                block.put(utf8);
+                e = new Entry(block, len, c, true);
+            }
+        }
+        if (e == null) {
+            byte[] bytes = new byte[len];
+            utf8.get(bytes);
+            e = new Entry(ByteBuffer.wrap(bytes), len, 0, false);
+        }
+        publish(steamID, e);
+    }
+
+    private static void publish(String steamID, Entry e) {
+        usedBytes.addAndGet(e.length);
+        Entry old = ENTRIES.put(steamID, e);
+        if (old != null) old.release();
+    }
+
+    /* Drops the snapshot; its block goes back to the pool once no view is open. */
+    static void remove(String steamID) {
+        Entry old = ENTRIES.remove(steamID);
+        if (old != null) old.release();
+    }
+
+    static boolean contains(String steamID) { return ENTRIES.containsKey(steamID); }
+
+    static Set<String> steamIDs() { return ENTRIES.keySet(); }
+
+    /* Calls reader with a read-only view of the snapshot, or returns null when there is none. */
+    static <T> T read(String steamID, Reader<T> reader) throws IOException {
+        for (;;) {
+            Entry e = ENTRIES.get(steamID);
+            if (e == null) return null;
+            if (!e.retain()) continue;               // replaced under us; pick up the new one
+            try {
+                return reader.read(e.view());
+            } finally {
+                e.release();
+            }
+        }
+    }
+
+    static String getString(String steamID) {
+        try {
+            return read(steamID, b -> StandardCharsets.UTF_8.decode(b).toString());
+        } catch (IOException impossible) {
+            return null;
+        }
+    }
+
+    private static Entry encodeOffHeap(String json) {
+        // JSON from the client is nearly all ASCII: try one byte per char, then the worst case
+        for (int bytesPerChar = 1; bytesPerChar <= 3; bytesPerChar += 2) {
+            long want = (long) json.length() * bytesPerChar;
+            int c = sizeClass(want);
+            if (c < 0) return null;
+            ByteBuffer block = take(c);
+            if (block == null) return null;
+
+            CharsetEncoder enc = ENCODER.get().reset();
+            CoderResult r = enc.encode(CharBuffer.wrap(json), block, true);
+            if (!r.isOverflow()) r = enc.flush(block);
+            if (r.isOverflow()) {
+                block.clear();
+                FREE[c].offer(block);
+                continue;
+            }
+            return new Entry(block, block.position(), c, true);
+        }
+        return null;
+    }
+
+    private static int sizeClass(long bytes) {
+        if (bytes <= 1L << MIN_SHIFT) return MIN_SHIFT;
+        int c = 64 - Long.numberOfLeadingZeros(bytes - 1);
+        return c > MAX_SHIFT ? -1 : c;
+    }
+
+    /* A cleared block of 2^c bytes, or null when the cap does not allow another slab. */
+    private static ByteBuffer take(int c) {
+        ByteBuffer b = FREE[c].poll();
+        if (b != null) return b;
+
+        long slab = Math.max(1L << c, 1L << SLAB_SHIFT);
+        if (reservedBytes.addAndGet(slab) > maxReserved) {
+            reservedBytes.addAndGet(-slab);
+            heapFallbacks.inc();
+            if (!capWarned) {
+                capWarned = true;
+                Main.log("[WARN] objects-offheap-max-mb reached; further snapshots are kept on heap.");
+            }
+            return null;
+        }
+        slabAllocations.inc();
+        ByteBuffer whole = ByteBuffer.allocateDirect((int) slab);
+        int size = 1 << c;
+        for (int off = size; off < slab; off += size)
+            FREE[c].offer(whole.slice(off, size));
+        return whole.slice(0, size);
+    }
+}
@@ -0,0 +1,119 @@
+package club.kron.pumpin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Poll / upload pacing hints. /cmd answers carry "poll" (ms until the next poll) and "upload" (ms between
+ * objects uploads); event answers carry the same as X-DeServer-Poll-Ms / X-DeServer-Upload-Ms headers.
+ *
+ * A client that just received commands polls again soon (pacing-poll-fast-ms), one without commands for a
+ * while slows to pacing-poll-idle-ms, a paused one to pacing-poll-paused-ms and pacing-upload-paused-ms.
+ * Server load is the share of time the request threads (one per listener) are busy; above pacing-load-high percent every interval
+ * is stretched, up to pacing-max-factor times at full load, so clients back off instead of queueing up.
+ * Hints only look at local state: for a session another cluster node owns, that node computes them and
+ * returns them with its POLL / EVENT reply, so pacing never adds a round trip of its own.
+ * Uploads are the client's only liveness traffic, so the upload hint never exceeds half the session
+ * timeout, however far it is stretched.
+ */
+final class Pacing {
+
+    private static final long IDLE_AFTER_MS = 10_000;
+    private static final int MAX_UPLOAD_MS = (int) (Main.TIMEOUT_MS / 2);
+
+    private static final Map<String, Long> lastDelivery = new ConcurrentHashMap<>();
+    private static final AtomicLong busyNanos = new AtomicLong();
+    private static long sampledAt = System.nanoTime();
+    private static volatile double load;
+    private static volatile int workers = 1;
+
+    private static boolean enabled = true;
+    private static int pollMs, pollFastMs, pollIdleMs, pollPausedMs, uploadMs, uploadPausedMs;
+    private static double loadHigh, maxFactor;
+
+    static {
+        Metrics.gauge("deserver_load_percent", "Share of time the request threads were busy (smoothed)",
+                () -> Math.round(load * 100));
+        Metrics.gauge("deserver_pacing_factor_percent", "Current stretch applied to client intervals",
+                () -> Math.round(factor() * 100));
+    }
+
+    private Pacing() {}
+
+    static void configure() {
+        enabled        = Boolean.parseBoolean(Main.property("pacing", "true"));
+        pollMs         = Main.intProperty("pacing-poll-ms", 500);
+        pollFastMs     = Main.intProperty("pacing-poll-fast-ms", 150);
+        pollIdleMs     = Main.intProperty("pacing-poll-idle-ms", 1500);
+        pollPausedMs   = Main.intProperty("pacing-poll-paused-ms", 2000);
+        uploadMs       = uploadProperty("pacing-upload-ms", 1000);
+        uploadPausedMs = uploadProperty("pacing-upload-paused-ms", 5000);
+        loadHigh       = Math.min(99, Math.max(1, Main.intProperty("pacing-load-high", 70))) / 100.0;
+        maxFactor      = Math.max(1, Main.intProperty("pacing-max-factor", 4));
+    }
+
+    private static int uploadProperty(String key, int def) {
+        int ms = Main.intProperty(key, def);
+        if (ms > MAX_UPLOAD_MS) {
+            Main.log("[WARN] " + key + "=" + ms + " would let clients time out (session timeout " +
+                    Main.TIMEOUT_MS + " ms); using " + MAX_UPLOAD_MS + ".");
+            ms = MAX_UPLOAD_MS;
+        }
+        return Math.max(1, ms);
+    }
+
+    static boolean enabled() { return enabled; }
+
+    /* Number of threads serving requests, so load stays a share of their combined time. */
+    static void workers(int n) {
+        workers = Math.max(1, n);
+    }
+
+    /* Time a request thread spent on one request. */
+    static void busy(long nanos) {
+        busyNanos.addAndGet(nanos);
+    }
+
+    /* Called periodically by the timeout monitor. */
+    static void sample() {
+        long now = System.nanoTime();
+        long elapsed = now - sampledAt;
+        sampledAt = now;
+        if (elapsed <= 0) return;
+        double ratio = Math.min(1.0, busyNanos.getAndSet(0) / ((double) elapsed * workers));
+        load = load * 0.5 + ratio * 0.5;
+
+        long cutoff = System.currentTimeMillis() - 6 * IDLE_AFTER_MS;
+        lastDelivery.values().removeIf(t -> t < cutoff);
+    }
+
+    static int pollMs(String steamID, boolean delivered) {
+        long now = System.currentTimeMillis();
+        int ms;
+        if (delivered) {
+            lastDelivery.put(steamID, now);
+            ms = pollFastMs;
+        } else if (Main.isPausedLocal(steamID)) {
+            ms = pollPausedMs;
+        } else {
+            Long last = lastDelivery.get(steamID);
+            ms = Main.isRunningLocal(steamID) && (last == null || now - last > IDLE_AFTER_MS) ? pollIdleMs : pollMs;
+        }
+        return stretch(ms);
+    }
+
+    static int uploadMs(String steamID) {
+        return Math.min(MAX_UPLOAD_MS, stretch(Main.isPausedLocal(steamID) ? uploadPausedMs : uploadMs));
+    }
+
+    private static int stretch(int ms) {
+        return (int) Math.min(60_000, Math.round(ms * factor()));
+    }
+
+    private static double factor() {
+        double l = load;
+        if (l <= loadHigh) return 1;
+        return Math.min(maxFactor, 1 + (l - loadHigh) / (1 - loadHigh) * (maxFactor - 1));
+    }
+}
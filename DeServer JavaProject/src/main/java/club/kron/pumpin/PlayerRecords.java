@@ -0,0 +1,216 @@
+package club.kron.pumpin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Cache of parsed player-data/<steamID>.dat records for players that are not connected.
+ *
+ * Loading a record reads the short fields (name, ip, position, rotation, updated) and only notes where
+ * the objects= line sits; the snapshot itself is read from that range when it is first asked for, so a
+ * position lookup never brings it onto the heap. Records are kept in LRU order up to player-cache-mb
+ * (default 16) of estimated heap; writePlayerData invalidates the player's entry.
+ */
+final class PlayerRecords {
+
+    static final class Record {
+        final String playerName, lastIp, lastPos, lastRot, updated;
+        private final String steamID;
+        private final File file;
+        private final long fileSize, fileModified, objectsOffset;
+        private final int objectsLength;                 // -1 when the file has no objects= line
+        private volatile String objects;
+
+        private Record(String steamID, File file, long fileSize, long fileModified, Map<String, String> fields,
+                       long objectsOffset, int objectsLength) {
+            this.steamID = steamID;
+            this.file = file;
+            this.fileSize = fileSize;
+            this.fileModified = fileModified;
+            this.playerName = fields.get("playerName");
+            this.lastIp = fields.get("lastIp");
+            this.lastPos = fields.get("lastPos");
+            this.lastRot = fields.get("lastRot");
+            this.updated = fields.get("updated");
+            this.objectsOffset = objectsOffset;
+            this.objectsLength = objectsLength;
+        }
+
+        /* The saved objects snapshot, read on first use; null when there is none or the file changed. */
+        String objects() {
+            String o = objects;
+            if (o != null || objectsLength < 0) return o;
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (ch.size() != fileSize || file.lastModified() != fileModified) return null;
+                ByteBuffer b = ByteBuffer.allocate(objectsLength);
+                while (b.hasRemaining() && ch.read(b, objectsOffset + b.position()) > 0) { }
+                o = new String(b.array(), 0, b.position(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return null;
+            }
+            synchronized (CACHE) {
+                if (objects != null) return objects;
+                objects = o;
+                if (CACHE.get(steamID) == this) {
+                    bytes += 2L * o.length();
+                    trim();
+                }
+            }
+            return o;
+        }
+
+        long weight() {
+            long w = 160;
+            for (String s : new String[]{playerName, lastIp, lastPos, lastRot, updated})
+                if (s != null) w += 40 + 2L * s.length();
+            String o = objects;
+            return o == null ? w : w + 2L * o.length();
+        }
+    }
+
+    private static final Record MISSING = new Record(null, null, 0, 0, Map.of(), 0, -1);
+
+    private static final LinkedHashMap<String, Record> CACHE = new LinkedHashMap<>(256, 0.75f, true);
+    private static final Map<String, Object> LOADING = new HashMap<>();   // steamID → token of the load in flight
+    private static long bytes;
+    private static long maxBytes = 16L << 20;
+
+    private static final Metrics.Counter hits =
+            Metrics.counter("deserver_player_cache_requests_total", "Offline player record lookups", Metrics.label("result", "hit"));
+    private static final Metrics.Counter misses =
+            Metrics.counter("deserver_player_cache_requests_total", "Offline player record lookups", Metrics.label("result", "miss"));
+    private static final Metrics.Counter evictions =
+            Metrics.counter("deserver_player_cache_evictions_total", "Player records evicted to stay under player-cache-mb");
+
+    static {
+        Metrics.gauge("deserver_player_cache_bytes", "Estimated heap held by cached player records", PlayerRecords::bytes);
+    }
+
+    private PlayerRecords() {}
+
+    static void configure() {
+        synchronized (CACHE) {
+            maxBytes = Math.max(0, Main.intProperty("player-cache-mb", 16)) * (1L << 20);
+            trim();
+        }
+    }
+
+    /* The saved record for steamID, or null when there is no player-data file. */
+    static Record get(String steamID) {
+        Object token = new Object();
+        synchronized (CACHE) {
+            Record r = CACHE.get(steamID);
+            if (r != null) {
+                hits.inc();
+                return r == MISSING ? null : r;
+            }
+            LOADING.put(steamID, token);
+        }
+        misses.inc();
+        Record r = load(steamID);
+        synchronized (CACHE) {
+            // A write to this player while we were reading took the token; hand the copy out but don't keep it
+            if (LOADING.remove(steamID, token) && maxBytes > 0) {
+                Record e = r == null ? MISSING : r;
+                Record old = CACHE.put(steamID, e);
+                if (old != null) bytes -= old.weight();
+                bytes += e.weight();
+                trim();
+            }
+        }
+        return r;
+    }
+
+    static void invalidate(String steamID) {
+        synchronized (CACHE) {
+            LOADING.remove(steamID);
+            Record old = CACHE.remove(steamID);
+            if (old != null) bytes -= old.weight();
+        }
+    }
+
+    static long bytes() {
+        synchronized (CACHE) { return bytes; }
+    }
+
+    private static void trim() {
+        for (Iterator<Record> it = CACHE.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+            bytes -= it.next().weight();
+            it.remove();
+            evictions.inc();
+        }
+    }
+
+    /* Reads key=value lines; the objects= value is skipped and only its byte range remembered. */
+    private static Record load(String steamID) {
+        File f = new File("player-data", steamID + ".dat");
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            Map<String, String> fields = new LinkedHashMap<>();
+            long objectsOffset = 0, objectsEnd = -1;
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                byte[] buf = new byte[8192];
+                ByteArrayOutputStream text = new ByteArrayOutputStream(128);
+                String key = null;                      // null while reading a key
+                boolean skipping = false, cr = false;   // inside objects=, last byte was '\r'
+                long pos = 0;
+                for (int n; ; pos += n) {
+                    n = in.read(buf);
+                    for (int i = 0; i < Math.max(n, 0); i++) {
+                        byte b = buf[i];
+                        if (b == '\n') {
+                            if (skipping) objectsEnd = pos + i - (cr ? 1 : 0);
+                            else if (key != null) fields.put(key, value(text));
+                            key = null;
+                            skipping = false;
+                            text.reset();
+                        } else if (skipping) {
+                            cr = b == '\r';
+                        } else if (key == null && b == '=') {
+                            key = text.toString(StandardCharsets.UTF_8);
+                            text.reset();
+                            if ("objects".equals(key)) {
+                                skipping = true;
+                                cr = false;
+                                objectsOffset = pos + i + 1;
+                            }
+                        } else {
+                            text.write(b);
+                        }
+                    }
+                    if (n < 0) {
+                        if (skipping) objectsEnd = pos - (cr ? 1 : 0);
+                        else if (key != null) fields.put(key, value(text));
+                        break;
+                    }
+                }
+            }
+            int objectsLength = objectsEnd < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, objectsEnd - objectsOffset);
+            return new Record(steamID, f, attrs.size(), attrs.lastModifiedTime().toMillis(), fields,
+                    objectsOffset, objectsLength);
+        } catch (java.nio.file.NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Main.log("[WARN] Could not read " + f.getPath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /* Files written on Windows end their lines with CRLF. */
+    private static String value(ByteArrayOutputStream text) {
+        String v = text.toString(StandardCharsets.UTF_8);
+        return v.endsWith("\r") ? v.substring(0, v.length() - 1) : v;
+    }
+}
@@ -0,0 +1,422 @@
+package club.kron.pumpin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Declarative world state. Extensions declare the server-owned objects a client should have – for
+ * everyone ("*"), a group ("group:<name>") or one SteamID – and the reconciler compares that with the
+ * client's objects snapshots and acks, queueing only the create / edit / delete commands needed to get
+ * there. Re-declaring an unchanged object costs nothing.
+ *
+ * Position and rotation are checked against the snapshot (reconcile-pos-epsilon 0.05, rot 1°); scale,
+ * color and components are not visible in snapshots and are re-sent only when the declaration changes.
+ * A command for an object is not repeated while it is in flight: after reconcile-retry-ms (3000)
+ * without the snapshot agreeing it is sent again, up to reconcile-max-attempts (5), then every 8×
+ * that interval. An ack holds off re-checking for reconcile-grace-ms (2500) so the next snapshot can
+ * catch up. Duplicates with a desired name are deleted one per pass.
+ *
+ * Runs on the node that owns the client; the "reconciler" thread wakes every reconcile-tick-ms (250).
+ */
+final class Reconciler {
+
+    private static final Map<String, Map<String, ServerAPI.DesiredObject>> SCOPES = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> GROUPS = new ConcurrentHashMap<>();
+    private static final Map<String, Client> CLIENTS = new ConcurrentHashMap<>();
+
+    private static final class Pending {
+        final String cmd;
+        long quietUntil;
+        int attempts;
+
+        Pending(String cmd, long quietUntil, int attempts) {
+            this.cmd = cmd; this.quietUntil = quietUntil; this.attempts = attempts;
+        }
+    }
+
+    private static final class Client {
+        final Map<String, ServerAPI.DesiredObject> managed = new HashMap<>();   // last declaration sent
+        final Map<String, Pending> pending = new HashMap<>();
+        volatile boolean dirty = true;
+    }
+
+    private static final class Seen {
+        int count;
+        float x, y, z, rx, ry, rz;
+        boolean transform;
+    }
+
+    private static volatile boolean started;
+    private static int tickMs = 250, maxAttempts = 5;
+    private static long retryMs = 3000, graceMs = 2500;
+    private static float posEpsilon = 0.05f, rotEpsilon = 1f;
+
+    private static final Metrics.Counter retries =
+            Metrics.counter("deserver_reconcile_retries_total", "Reconcile commands sent again because the client did not converge");
+    private static final Metrics.Counter unchanged =
+            Metrics.counter("deserver_reconcile_unchanged_declarations_total", "Declarations identical to the current desired state");
+
+    static {
+        Metrics.gauge("deserver_reconcile_desired_objects", "Objects declared across all scopes", () -> {
+            long n = 0;
+            for (Map<String, ServerAPI.DesiredObject> m : SCOPES.values()) n += m.size();
+            return n;
+        });
+    }
+
+    private Reconciler() {}
+
+    static void start() {
+        if (!Boolean.parseBoolean(Main.property("reconcile", "true"))) return;
+        tickMs      = Math.max(20, Main.intProperty("reconcile-tick-ms", 250));
+        retryMs     = Math.max(100, Main.intProperty("reconcile-retry-ms", 3000));
+        graceMs     = Math.max(0, Main.intProperty("reconcile-grace-ms", 2500));
+        maxAttempts = Math.max(1, Main.intProperty("reconcile-max-attempts", 5));
+        posEpsilon  = (float) parseDouble(Main.property("reconcile-pos-epsilon", "0.05"), 0.05);
+        rotEpsilon  = (float) parseDouble(Main.property("reconcile-rot-epsilon", "1"), 1);
+
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    Main.log("[WARN] Reconcile tick failed: " + e);
+                }
+                try { Thread.sleep(tickMs); } catch (InterruptedException e) { return; }
+            }
+        }, "reconciler");
+        t.setDaemon(true);
+        t.start();
+        started = true;
+    }
+
+    /* ---- desired state ---- */
+
+    static void declare(String scope, ServerAPI.DesiredObject o) {
+        Map<String, ServerAPI.DesiredObject> m = SCOPES.computeIfAbsent(scope(scope), k -> new ConcurrentHashMap<>());
+        ServerAPI.DesiredObject copy = o.copy();
+        if (copy.equals(m.put(copy.name, copy))) { unchanged.inc(); return; }
+        changed();
+    }
+
+    /* Replaces everything declared for scope. */
+    static void replace(String scope, Collection<ServerAPI.DesiredObject> objects) {
+        Map<String, ServerAPI.DesiredObject> next = new ConcurrentHashMap<>();
+        for (ServerAPI.DesiredObject o : objects) next.put(o.name, o.copy());
+        Map<String, ServerAPI.DesiredObject> prev = next.isEmpty() ? SCOPES.remove(scope(scope)) : SCOPES.put(scope(scope), next);
+        if (next.equals(prev == null ? Map.of() : prev)) { unchanged.inc(); return; }
+        changed();
+    }
+
+    static boolean retract(String scope, String name) {
+        Map<String, ServerAPI.DesiredObject> m = SCOPES.get(scope(scope));
+        if (m == null || m.remove(name) == null) return false;
+        changed();
+        return true;
+    }
+
+    static void joinGroup(String steamID, String group) {
+        if (GROUPS.computeIfAbsent(steamID, k -> ConcurrentHashMap.newKeySet()).add(group)) markDirty(steamID);
+    }
+
+    static void leaveGroup(String steamID, String group) {
+        Set<String> g = GROUPS.get(steamID);
+        if (g != null && g.remove(group)) markDirty(steamID);
+    }
+
+    private static String scope(String scope) {
+        return scope == null || scope.isEmpty() ? "*" : scope;
+    }
+
+    private static void changed() {
+        for (Client c : CLIENTS.values()) c.dirty = true;
+    }
+
+    private static void markDirty(String steamID) {
+        Client c = CLIENTS.get(steamID);
+        if (c != null) c.dirty = true;
+    }
+
+    /* Everyone's objects, then the client's groups, then its own; later scopes win on equal names. */
+    private static Map<String, ServerAPI.DesiredObject> desired(String steamID) {
+        Map<String, ServerAPI.DesiredObject> out = new LinkedHashMap<>();
+        Map<String, ServerAPI.DesiredObject> m = SCOPES.get("*");
+        if (m != null) out.putAll(m);
+        Set<String> groups = GROUPS.get(steamID);
+        if (groups != null)
+            for (String g : groups) if ((m = SCOPES.get("group:" + g)) != null) out.putAll(m);
+        if ((m = SCOPES.get(steamID)) != null) out.putAll(m);
+        return out;
+    }
+
+    /* ---- client events ---- */
+
+    static void snapshot(String steamID) {
+        if (!started) return;
+        Client c = CLIENTS.get(steamID);
+        if (c != null) c.dirty = true;
+    }
+
+    /* Acks carry the object's name as label (the source name when a create found no prototype). */
+    static void ack(String steamID, String label) {
+        if (!started) return;
+        Client c = CLIENTS.get(steamID);
+        if (c == null) return;
+        synchronized (c) {
+            Pending p = c.pending.get(label);
+            if (p != null) p.quietUntil = System.currentTimeMillis() + graceMs;
+        }
+    }
+
+    /* The client's scene is gone (disconnect or timeout); group membership stays until leaveGroup. */
+    static void remove(String steamID) {
+        CLIENTS.remove(steamID);
+    }
+
+    /* ---- reconciliation ---- */
+
+    private static void tick() {
+        long now = System.currentTimeMillis();
+        boolean anything = !SCOPES.isEmpty();
+        Set<String> active = Main.getLocalActiveClients();
+        String[] keys;
+        synchronized (active) { keys = active.toArray(new String[0]); }
+        for (String key : keys) {
+            String sid = key.split("\\|", 3)[1];
+            Client c = CLIENTS.get(sid);
+            if (c == null) {
+                if (!anything) continue;
+                c = CLIENTS.computeIfAbsent(sid, k -> new Client());
+            }
+            if (!Main.isRunningLocal(sid)) continue;            // no scene to put objects in yet
+            synchronized (c) {
+                if (!c.dirty && !due(c, now)) continue;
+                c.dirty = false;
+                List<String> cmds = reconcile(sid, c, now);
+                if (!cmds.isEmpty()) Main.enqueueCommands(sid, cmds);
+            }
+        }
+    }
+
+    private static boolean due(Client c, long now) {
+        for (Pending p : c.pending.values()) if (now >= p.quietUntil) return true;
+        return false;
+    }
+
+    private static List<String> reconcile(String sid, Client c, long now) {
+        Map<String, ServerAPI.DesiredObject> want = desired(sid);
+        List<String> out = new ArrayList<>();
+        if (want.isEmpty() && c.managed.isEmpty()) {
+            c.pending.clear();
+            return out;
+        }
+        Set<String> names = new HashSet<>(want.keySet());
+        names.addAll(c.managed.keySet());
+        Map<String, Seen> seen = observe(sid, names);
+        if (seen == null) return out;                   // no snapshot yet
+
+        for (ServerAPI.DesiredObject w : want.values()) {
+            Pending p = c.pending.get(w.name);
+            ServerAPI.DesiredObject had = c.managed.get(w.name);
+            if (p != null && now < p.quietUntil && w.equals(had)) continue;     // same intent still in flight
+            Seen s = seen.get(w.name);
+            String cmd, kind;
+            if (s == null) {
+                cmd = createJson(w);
+                kind = "create";
+            } else if (s.count > 1) {
+                cmd = deleteJson(w.name);
+                kind = "delete";
+            } else {
+                boolean moved = s.transform && (Math.abs(w.x - s.x) > posEpsilon || Math.abs(w.y - s.y) > posEpsilon
+                        || Math.abs(w.z - s.z) > posEpsilon);
+                boolean turned = s.transform && (angle(w.rx, s.rx) > rotEpsilon || angle(w.ry, s.ry) > rotEpsilon
+                        || angle(w.rz, s.rz) > rotEpsilon);
+                boolean props = had == null || !w.sameLook(had);
+                if (!moved && !turned && !props) {
+                    c.pending.remove(w.name);
+                    c.managed.put(w.name, w);
+                    continue;
+                }
+                cmd = editJson(w, moved || had == null, turned || had == null, props);
+                kind = "edit";
+            }
+            send(c, w.name, cmd, kind, p, now, out);
+            if (!"delete".equals(kind)) c.managed.put(w.name, w);
+        }
+
+        for (Iterator<String> it = c.managed.keySet().iterator(); it.hasNext(); ) {
+            String name = it.next();
+            if (want.containsKey(name)) continue;
+            Pending p = c.pending.get(name);
+            if (p != null && now < p.quietUntil && p.cmd.equals(deleteJson(name))) continue;
+            if (!seen.containsKey(name)) {
+                it.remove();
+                c.pending.remove(name);
+                continue;
+            }
+            send(c, name, deleteJson(name), "delete", p, now, out);
+        }
+        return out;
+    }
+
+    private static void send(Client c, String name, String cmd, String kind, Pending p, long now, List<String> out) {
+        int attempts = p != null && p.cmd.equals(cmd) ? p.attempts + 1 : 1;
+        if (attempts > 1) retries.inc();
+        long wait = attempts >= maxAttempts ? retryMs * 8 : retryMs;
+        if (attempts == maxAttempts)
+            Main.log("[WARN] Reconcile: '" + name + "' has not converged after " + attempts + " " + kind +
+                    " attempts; retrying every " + wait / 1000 + " s");
+        c.pending.put(name, new Pending(cmd, now + wait, attempts));
+        out.add(cmd);
+        Metrics.counter("deserver_reconcile_commands_total", "Commands queued by the reconciler",
+                Metrics.label("cmd", kind)).inc();
+    }
+
+    /* Names and transforms of the snapshot objects we care about, scanned straight from the stored bytes. */
+    private static Map<String, Seen> observe(String sid, Set<String> names) {
+        try {
+            return ObjectStore.read(sid, buf -> scan(buf, names));
+        } catch (java.io.IOException impossible) {
+            return null;
+        }
+    }
+
+    private static final byte[] NAME = "\"name\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static Map<String, Seen> scan(ByteBuffer b, Set<String> names) {
+        Map<String, Seen> out = new HashMap<>();
+        int end = b.limit();
+        for (int i = b.position(); (i = indexOf(b, NAME, i, end)) >= 0; ) {
+            int start = i + NAME.length, j = start;
+            while (j < end && b.get(j) != '"') j += b.get(j) == '\\' ? 2 : 1;
+            if (j >= end) break;
+            byte[] raw = new byte[j - start];
+            b.get(start, raw);
+            String name = new String(raw, StandardCharsets.UTF_8).replace("\\\"", "\"").replace("\\\\", "\\");
+            i = j + 1;
+            if (!names.contains(name)) continue;
+            Seen s = out.computeIfAbsent(name, k -> new Seen());
+            if (s.count++ > 0) continue;
+            float[] v = new float[6];
+            String[] keys = {"\"x\":", "\"y\":", "\"z\":", "\"rx\":", "\"ry\":", "\"rz\":"};
+            int at = i;
+            s.transform = true;
+            for (int k = 0; k < 6 && s.transform; k++) {
+                int p = indexOf(b, keys[k].getBytes(StandardCharsets.US_ASCII), at, Math.min(end, at + 256));
+                if (p < 0) { s.transform = false; break; }
+                p += keys[k].length();
+                int q = p;
+                while (q < end && b.get(q) != ',' && b.get(q) != '}') q++;
+                byte[] num = new byte[q - p];
+                b.get(p, num);
+                try { v[k] = Float.parseFloat(new String(num, StandardCharsets.US_ASCII).trim()); }
+                catch (NumberFormatException e) { s.transform = false; }
+                at = q;
+            }
+            s.x = v[0]; s.y = v[1]; s.z = v[2]; s.rx = v[3]; s.ry = v[4]; s.rz = v[5];
+        }
+        return out;
+    }
+
+    private static int indexOf(ByteBuffer b, byte[] pat, int from, int end) {
+        outer:
+        for (int i = from; i <= end - pat.length; i++) {
+            for (int k = 0; k < pat.length; k++) if (b.get(i + k) != pat[k]) continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    private static float angle(float a, float b) {
+        float d = Math.abs(a - b) % 360f;
+        return d > 180f ? 360f - d : d;
+    }
+
+    /* ---- commands ---- */
+
+    private static String createJson(ServerAPI.DesiredObject o) {
+        StringBuilder sb = new StringBuilder(200).append("{\"cmd\":\"create\",\"src\":").append(Main.jsonString(o.src));
+        Replicator.xyz(sb, "x", "y", "z", o.x, o.y, o.z);
+        Replicator.xyz(sb, "rx", "ry", "rz", o.rx, o.ry, o.rz);
+        sb.append(",\"rename\":").append(Main.jsonString(o.name));
+        if (o.sx != 1 || o.sy != 1 || o.sz != 1) Replicator.xyz(sb, "sx", "sy", "sz", o.sx, o.sy, o.sz);
+        if (o.color != null) sb.append(",\"color\":").append(Main.jsonString(o.color));
+        components(sb, o);
+        return sb.append('}').toString();
+    }
+
+    /* The client only applies a position/rotation triple that is not all zero, hence the nudge. */
+    private static String editJson(ServerAPI.DesiredObject o, boolean pos, boolean rot, boolean look) {
+        StringBuilder sb = new StringBuilder(160).append("{\"cmd\":\"edit\",\"target\":").append(Main.jsonString(o.name));
+        if (pos) Replicator.xyz(sb, "x", "y", "z", o.x == 0f && o.y == 0f && o.z == 0f ? 0.001f : o.x, o.y, o.z);
+        if (rot) Replicator.xyz(sb, "rx", "ry", "rz", o.rx == 0f && o.ry == 0f && o.rz == 0f ? 0.001f : o.rx, o.ry, o.rz);
+        if (look) {
+            Replicator.xyz(sb, "sx", "sy", "sz", o.sx, o.sy, o.sz);
+            if (o.color != null) sb.append(",\"color\":").append(Main.jsonString(o.color));
+            components(sb, o);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String deleteJson(String name) {
+        return "{\"cmd\":\"edit\",\"target\":" + Main.jsonString(name) + ",\"delete\":true}";
+    }
+
+    private static void components(StringBuilder sb, ServerAPI.DesiredObject o) {
+        if (o.components.isEmpty()) return;
+        sb.append(",\"components\":{");
+        boolean first = true;
+        for (Map.Entry<String, Boolean> e : o.components.entrySet()) {
+            sb.append(first ? "" : ",").append(Main.jsonString(e.getKey())).append(':').append(e.getValue());
+            first = false;
+        }
+        sb.append('}');
+    }
+
+    /* ---- console ---- */
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0 || !"reconcile".equalsIgnoreCase(tok[0])) return false;
+        if (tok.length > 1) {
+            Client c = CLIENTS.get(tok[1]);
+            Map<String, ServerAPI.DesiredObject> want = desired(tok[1]);
+            Main.log("[INFO] " + tok[1] + ": " + want.size() + " desired object(s)" +
+                    (c == null ? ", not tracked" : ""));
+            if (c != null) {
+                long now = System.currentTimeMillis();
+                synchronized (c) {
+                    for (String name : want.keySet()) {
+                        Pending p = c.pending.get(name);
+                        Main.log("[INFO]   " + name + (p == null ? (c.managed.containsKey(name) ? "  ok" : "  waiting")
+                                : "  in flight, attempt " + p.attempts + (now < p.quietUntil ? "" : " (due)")));
+                    }
+                }
+            }
+            return true;
+        }
+        long desired = 0;
+        for (Map<String, ServerAPI.DesiredObject> m : SCOPES.values()) desired += m.size();
+        int inFlight = 0;
+        for (Client c : CLIENTS.values()) synchronized (c) { inFlight += c.pending.size(); }
+        Main.log("[INFO] Reconcile " + (started ? "on" : "off") + " – " + desired + " declared object(s) in " +
+                SCOPES.size() + " scope(s), " + CLIENTS.size() + " client(s), " + inFlight + " command(s) in flight" +
+                " (reconcile <steamID>)");
+        return true;
+    }
+
+    private static double parseDouble(String s, double def) {
+        try { return Double.parseDouble(s.trim()); } catch (NumberFormatException e) { return def; }
+    }
+}
@@ -0,0 +1,253 @@
+package club.kron.pumpin;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Server-side replication of remote player transforms. Every tick each running viewer gets a target
+ * view of the players around it (interest grid, nearest first, farther players refreshed less often).
+ * When the viewer polls /cmd, that view is diffed against what its client already has and only the
+ * minimal create / edit / delete commands for "Remote_<steamID>" proxies are emitted, so several ticks
+ * between two polls collapse into one delta.
+ *
+ * server.properties: replication=true, replication-tick-ms, replication-radius, replication-near,
+ * replication-mid, replication-max-visible, replication-proxy (prototype object name)
+ */
+final class Replicator {
+
+    static final String PROXY_PREFIX = "Remote_";
+
+    private static final float POS_EPSILON = 0.02f;
+    private static final float ROT_EPSILON = 0.5f;
+
+    private static final class Avatar {
+        final String sid;
+        final int stagger;
+        volatile float x, y, z, rx, ry, rz;
+        Avatar(String sid) { this.sid = sid; this.stagger = sid.hashCode() & 0xff; }
+    }
+
+    private static final class Viewer {
+        final Map<String, float[]> target = new HashMap<>();
+        final Map<String, float[]> onClient = new HashMap<>();
+    }
+
+    private static final Map<String, Avatar> AVATARS = new ConcurrentHashMap<>();
+    private static final Map<String, Viewer> VIEWERS = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+    private static int tickMs;
+    private static float radius, near, mid;
+    private static int maxVisible;
+    private static String proxySrc;
+
+    private static final Metrics.Histogram tickTimer =
+            Metrics.histogram("deserver_replication_tick_seconds", "Duration of one replication tick");
+
+    private Replicator() {}
+
+    static void start() {
+        if (!Boolean.parseBoolean(Main.property("replication", "false"))) return;
+        tickMs     = Math.max(20, Main.intProperty("replication-tick-ms", 100));
+        radius     = Main.intProperty("replication-radius", 300);
+        near       = Main.intProperty("replication-near", 50);
+        mid        = Main.intProperty("replication-mid", 150);
+        maxVisible = Math.max(1, Main.intProperty("replication-max-visible", 32));
+        proxySrc   = Main.property("replication-proxy", "Player_Human");
+        enabled = true;
+
+        Metrics.gauge("deserver_replication_pairs", "Remote proxies currently targeted across all viewers", () -> {
+            long n = 0;
+            for (Viewer v : VIEWERS.values()) synchronized (v) { n += v.target.size(); }
+            return n;
+        });
+
+        Thread t = new Thread(() -> {
+            long tick = 0;
+            while (true) {
+                long started = System.nanoTime();
+                try {
+                    tick(tick++);
+                } catch (RuntimeException e) {
+                    Main.log("[WARN] Replication tick failed: " + e);
+                }
+                tickTimer.recordSince(started);
+                long sleep = tickMs - (System.nanoTime() - started) / 1_000_000;
+                try { Thread.sleep(Math.max(1, sleep)); } catch (InterruptedException e) { return; }
+            }
+        }, "replicator");
+        t.setDaemon(true);
+        t.start();
+        Main.log("[INFO] Replication on: tick " + tickMs + " ms, radius " + (int) radius +
+                ", proxy '" + proxySrc + "'");
+    }
+
+    static boolean isProxy(String name) {
+        return enabled && name != null && name.startsWith(PROXY_PREFIX);
+    }
+
+    static void update(String sid, double x, double y, double z, double rx, double ry, double rz) {
+        if (!enabled) return;
+        Avatar a = AVATARS.computeIfAbsent(sid, Avatar::new);
+        a.x = (float) x; a.y = (float) y; a.z = (float) z;
+        a.rx = (float) rx; a.ry = (float) ry; a.rz = (float) rz;
+    }
+
+    static void remove(String sid) {
+        if (!enabled) return;
+        AVATARS.remove(sid);
+        VIEWERS.remove(sid);
+    }
+
+    private static long cell(float x, float z) {
+        return ((long) Math.floor(x / radius) << 32) ^ ((long) Math.floor(z / radius) & 0xffffffffL);
+    }
+
+    private static void tick(long tick) {
+        Map<Long, List<Avatar>> grid = new HashMap<>();
+        for (Avatar a : AVATARS.values())
+            grid.computeIfAbsent(cell(a.x, a.z), k -> new ArrayList<>()).add(a);
+
+        List<Avatar> candidates = new ArrayList<>();
+        float[] dist = new float[0];
+
+        for (Avatar me : AVATARS.values()) {
+            if (!Main.isRunningLocal(me.sid) || Main.isPausedLocal(me.sid)) continue;
+            Viewer v = VIEWERS.computeIfAbsent(me.sid, k -> new Viewer());
+
+            candidates.clear();
+            long cx = (long) Math.floor(me.x / radius), cz = (long) Math.floor(me.z / radius);
+            for (long dx = -1; dx <= 1; dx++)
+                for (long dz = -1; dz <= 1; dz++) {
+                    List<Avatar> in = grid.get(((cx + dx) << 32) ^ ((cz + dz) & 0xffffffffL));
+                    if (in != null) candidates.addAll(in);
+                }
+
+            if (dist.length < candidates.size()) dist = new float[candidates.size() * 2];
+            Integer[] order = new Integer[candidates.size()];
+            int n = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                Avatar o = candidates.get(i);
+                if (o == me) continue;
+                float ddx = o.x - me.x, ddy = o.y - me.y, ddz = o.z - me.z;
+                dist[i] = (float) Math.sqrt(ddx * ddx + ddy * ddy + ddz * ddz);
+                order[n++] = i;
+            }
+            final float[] d = dist;
+            Arrays.sort(order, 0, n, Comparator.comparingDouble(i -> d[i]));
+
+            synchronized (v) {
+                Set<String> keep = new HashSet<>();
+                for (int k = 0; k < n && keep.size() < maxVisible; k++) {
+                    int i = order[k];
+                    Avatar o = candidates.get(i);
+                    boolean known = v.target.containsKey(o.sid);
+                    float limit = known ? radius * 1.1f : radius;
+                    if (d[i] > limit) continue;
+                    keep.add(o.sid);
+
+                    int every = d[i] <= near ? 1 : d[i] <= mid ? 3 : 10;
+                    if (!known || (tick + o.stagger) % every == 0)
+                        v.target.put(o.sid, new float[]{o.x, o.y, o.z, o.rx, o.ry, o.rz});
+                }
+                v.target.keySet().retainAll(keep);
+            }
+        }
+        VIEWERS.keySet().retainAll(AVATARS.keySet());
+    }
+
+    /* Commands that bring the viewer's client from what it has to the current target view. */
+    static List<String> drain(String sid) {
+        if (!enabled) return Collections.emptyList();
+        Viewer v = VIEWERS.get(sid);
+        if (v == null) return Collections.emptyList();
+
+        List<String> out = new ArrayList<>();
+        synchronized (v) {
+            for (Map.Entry<String, float[]> e : v.target.entrySet()) {
+                String remote = e.getKey();
+                float[] want = e.getValue();
+                float[] have = v.onClient.get(remote);
+                if (have == null) {
+                    out.add(createJson(remote, want));
+                    v.onClient.put(remote, want);
+                    count("create");
+                    continue;
+                }
+                boolean moved = Math.abs(want[0] - have[0]) > POS_EPSILON
+                        || Math.abs(want[1] - have[1]) > POS_EPSILON
+                        || Math.abs(want[2] - have[2]) > POS_EPSILON;
+                boolean turned = angle(want[3], have[3]) > ROT_EPSILON
+                        || angle(want[4], have[4]) > ROT_EPSILON
+                        || angle(want[5], have[5]) > ROT_EPSILON;
+                if (!moved && !turned) continue;
+                out.add(editJson(remote, moved ? want : null, turned ? want : null));
+                v.onClient.put(remote, new float[]{
+                        moved ? want[0] : have[0], moved ? want[1] : have[1], moved ? want[2] : have[2],
+                        turned ? want[3] : have[3], turned ? want[4] : have[4], turned ? want[5] : have[5]});
+                count("edit");
+            }
+            for (Iterator<String> it = v.onClient.keySet().iterator(); it.hasNext(); ) {
+                String remote = it.next();
+                if (v.target.containsKey(remote)) continue;
+                out.add("{\"cmd\":\"edit\",\"target\":\"" + PROXY_PREFIX + remote + "\",\"delete\":true}");
+                it.remove();
+                count("delete");
+            }
+        }
+        return out;
+    }
+
+    private static float angle(float a, float b) {
+        float d = Math.abs(a - b) % 360f;
+        return d > 180f ? 360f - d : d;
+    }
+
+    private static void count(String kind) {
+        Metrics.counter("deserver_replication_commands_total", "Proxy commands emitted by replication",
+                Metrics.label("cmd", kind)).inc();
+    }
+
+    private static String createJson(String remote, float[] s) {
+        StringBuilder sb = new StringBuilder(200)
+                .append("{\"cmd\":\"create\",\"src\":\"").append(proxySrc).append('"');
+        xyz(sb, "x", "y", "z", s[0], s[1], s[2]);
+        xyz(sb, "rx", "ry", "rz", s[3], s[4], s[5]);
+        return sb.append(",\"rename\":\"").append(PROXY_PREFIX).append(remote).append('"')
+                 .append(",\"components\":{\"Rigidbody\":false,\"CapsuleCollider\":false,")
+                 .append("\"BoxCollider\":false,\"SphereCollider\":false,\"MeshCollider\":false}}")
+                 .toString();
+    }
+
+    /* The client only applies a position/rotation triple when it is non-zero, hence the nudge away from 0. */
+    private static String editJson(String remote, float[] pos, float[] rot) {
+        StringBuilder sb = new StringBuilder(120)
+                .append("{\"cmd\":\"edit\",\"target\":\"").append(PROXY_PREFIX).append(remote).append('"');
+        if (pos != null) {
+            float x = pos[0] == 0f && pos[1] == 0f && pos[2] == 0f ? 0.001f : pos[0];
+            xyz(sb, "x", "y", "z", x, pos[1], pos[2]);
+        }
+        if (rot != null) {
+            float rx = rot[3] == 0f && rot[4] == 0f && rot[5] == 0f ? 0.001f : rot[3];
+            xyz(sb, "rx", "ry", "rz", rx, rot[4], rot[5]);
+        }
+        return sb.append('}').toString();
+    }
+
+    static void xyz(StringBuilder sb, String kx, String ky, String kz, float x, float y, float z) {
+        sb.append(",\"").append(kx).append("\":"); fixed(sb, x);
+        sb.append(",\"").append(ky).append("\":"); fixed(sb, y);
+        sb.append(",\"").append(kz).append("\":"); fixed(sb, z);
+    }
+
+    /* Three decimals, never scientific notation (float.Parse on the client chokes on "1.0E-4"). */
+    private static void fixed(StringBuilder sb, float v) {
+        long m = Math.round(v * 1000.0);
+        if (m < 0) { sb.append('-'); m = -m; }
+        sb.append(m / 1000).append('.');
+        long frac = m % 1000;
+        if (frac < 100) sb.append('0');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+}
@@ -1,16 +1,54 @@
 package club.kron.pumpin;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.function.Function;
 
 public final class ServerAPI {
 
     public void log(String msg) { Main.log("[EXT] " + msg); }
 
+    /* Receives polled input; axisId / keyId resolve through axisName / keyName. */
+    public interface InputVisitor {
+        void axis(int axisId, float value);
+        void key(int keyId);
+    }
+
     public java.util.List<String> pollInputs(String steamID) {
         return Main.pollInputs(steamID);
     }
 
+    /*
+     * Allocation-free polling for players on this node: every changed axis (latest value only) and every
+     * queued key press goes to visitor. Returns the number of events visited.
+     */
+    public int pollInputs(String steamID, InputVisitor visitor) {
+        if (Cluster.enabled() && !Cluster.isLocal(steamID)) {
+            int n = 0;
+            for (String in : Main.pollInputs(steamID)) {
+                if (in.startsWith("AXIS:")) {
+                    int c = in.lastIndexOf(':');
+                    try { visitor.axis(axisId(in.substring(5, c)), Float.parseFloat(in.substring(c + 1))); }
+                    catch (NumberFormatException e) { continue; }
+                } else {
+                    visitor.key(keyId(in));
+                }
+                n++;
+            }
+            return n;
+        }
+        InputBuffer b = InputBuffer.get(steamID);
+        return b == null ? 0 : b.drain(visitor);
+    }
+
+    public int axisId(String name)  { return InputBuffer.axisId(name); }
+    public int keyId(String name)   { return InputBuffer.keyId(name); }
+    public String axisName(int id)  { return InputBuffer.axisName(id); }
+    public String keyName(int id)   { return InputBuffer.keyName(id); }
+
     public boolean isPaused (String sid) { return Main.isPaused (sid); }
     public boolean isRunning(String sid) { return Main.isRunning(sid); }
 
@@ -20,6 +58,27 @@ public final class ServerAPI {
         Main.enqueueCommand(sid, json);
     }
 
+    /*
+     * Queues into a lane: "urgent" for interactive changes, "normal" (what enqueueCommand uses) or "bulk"
+     * for large world builds. Each /cmd poll shares its budget between the lanes, urgent first.
+     */
+    public void enqueueCommand(String sid, String json, String lane) {
+        Main.enqueueCommand(sid, json, laneOf(lane));
+    }
+
+    public void enqueueCommands(String sid, java.util.List<String> json, String lane) {
+        Main.enqueueCommands(sid, json, laneOf(lane));
+    }
+
+    /* {urgent, normal, bulk} commands waiting for a client on this node. */
+    public int[] getQueuedCommands(String sid) { return Main.queuedCommands(sid); }
+
+    private static int laneOf(String name) {
+        int lane = CommandLanes.lane(name);
+        if (lane < 0) throw new IllegalArgumentException("Unknown lane '" + name + "' (urgent, normal, bulk)");
+        return lane;
+    }
+
     public void loadMod(String steamID, String fileName) {
         if (steamID == null || fileName == null) return;
         Main.enqueueCommand(steamID,
@@ -39,4 +98,139 @@ public final class ServerAPI {
     public String getObjectsJson(String steamID) {
         return Main.getObjectsSnapshot(steamID);
     }
+
+    /* Receives trail points in time order; rotations are Euler angles in degrees. */
+    public interface TrailVisitor {
+        void point(long epochMillis, float x, float y, float z, float rx, float ry, float rz);
+    }
+
+    /*
+     * Position history recorded on this node (trails=true) between fromMillis and toMillis, inclusive.
+     * stepMillis picks the resolution: below 1000 every update, from 1000 one point per second, from
+     * 60000 one per minute. Returns the number of points visited.
+     */
+    public int queryTrail(String steamID, long fromMillis, long toMillis, long stepMillis, TrailVisitor visitor) {
+        return Trails.query(steamID, fromMillis, toMillis, stepMillis, visitor);
+    }
+
+    /* ---- running statistics (see Aggregates); every query is a single lookup ---- */
+
+    /* {samples, dwell ms, resets} of the grid cell containing (x, z). */
+    public long[] getCellStats(double x, double z) { return Aggregates.cell(x, z); }
+    public double getCellSize() { return Aggregates.cellSize(); }
+
+    public long getZoneDwellMillis(String zone) {
+        Aggregates.Zone z = Aggregates.zone(zone);
+        return z == null ? 0 : z.dwellMillis.sum();
+    }
+
+    public int getZoneOccupancy(String zone) {
+        Aggregates.Zone z = Aggregates.zone(zone);
+        return z == null ? 0 : z.inside.get();
+    }
+
+    public long getPlayerZoneDwellMillis(String steamID, String zone) {
+        return Aggregates.playerZoneDwell(steamID, zone);
+    }
+
+    /* Meters travelled since the player connected (resets excluded); -1 when not connected here. */
+    public double getPlayerDistance(String steamID) { return Aggregates.distance(steamID); }
+
+    public void defineZone(String name, double minX, double minY, double minZ,
+                           double maxX, double maxY, double maxZ) {
+        Aggregates.defineZone(name, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    public boolean removeZone(String name) { return Aggregates.removeZone(name); }
+
+    /* Writes all statistics as JSON; target null picks aggregates-<time>.json. */
+    public File exportAggregates(File target) throws IOException { return Aggregates.export(target); }
+
+    /* ---- desired world state (see Reconciler) ---- */
+
+    /*
+     * A server-owned object: a clone of the scene object src, renamed to name. Scopes are a SteamID,
+     * "group:<name>" or "*" for every client; names must be unique in the client's scene.
+     */
+    public static final class DesiredObject {
+        final String name, src;
+        float x, y, z, rx, ry, rz, sx = 1, sy = 1, sz = 1;
+        String color;                                       // "#RRGGBB[AA]" or null to leave as cloned
+        final java.util.TreeMap<String, Boolean> components = new java.util.TreeMap<>();
+
+        public DesiredObject(String name, String src) {
+            this.name = java.util.Objects.requireNonNull(name);
+            this.src = java.util.Objects.requireNonNull(src);
+        }
+
+        public DesiredObject position(float x, float y, float z) { this.x = x; this.y = y; this.z = z; return this; }
+        public DesiredObject rotation(float rx, float ry, float rz) { this.rx = rx; this.ry = ry; this.rz = rz; return this; }
+        public DesiredObject scale(float sx, float sy, float sz) { this.sx = sx; this.sy = sy; this.sz = sz; return this; }
+        public DesiredObject color(String color) { this.color = color; return this; }
+        public DesiredObject component(String type, boolean enabled) { components.put(type, enabled); return this; }
+
+        public String getName() { return name; }
+
+        DesiredObject copy() {
+            DesiredObject o = new DesiredObject(name, src).position(x, y, z).rotation(rx, ry, rz).scale(sx, sy, sz).color(color);
+            o.components.putAll(components);
+            return o;
+        }
+
+        /* Scale, color and components – what a snapshot does not show. */
+        boolean sameLook(DesiredObject o) {
+            return sx == o.sx && sy == o.sy && sz == o.sz && java.util.Objects.equals(color, o.color)
+                    && components.equals(o.components);
+        }
+
+        @Override public boolean equals(Object other) {
+            if (!(other instanceof DesiredObject o)) return false;
+            return name.equals(o.name) && src.equals(o.src) && x == o.x && y == o.y && z == o.z
+                    && rx == o.rx && ry == o.ry && rz == o.rz && sameLook(o);
+        }
+
+        @Override public int hashCode() {
+            return java.util.Objects.hash(name, src, x, y, z, rx, ry, rz);
+        }
+    }
+
+    /* Adds or updates one object; declaring the same object again sends nothing. */
+    public void declareObject(String scope, DesiredObject object) { Reconciler.declare(scope, object); }
+
+    /* Replaces the whole desired set for scope; objects left out are deleted from clients. */
+    public void setDesiredObjects(String scope, java.util.Collection<DesiredObject> objects) {
+        Reconciler.replace(scope, objects);
+    }
+
+    public boolean retractObject(String scope, String name) { return Reconciler.retract(scope, name); }
+
+    public void joinGroup(String steamID, String group) { Reconciler.joinGroup(steamID, group); }
+    public void leaveGroup(String steamID, String group) { Reconciler.leaveGroup(steamID, group); }
+
+    /* "x,y,z" of a connected player, or the last one saved for an offline player; null if unknown. */
+    public String getPosition(String steamID) { return Main.lastPosition(steamID); }
+    public String getRotation(String steamID) { return Main.lastRotation(steamID); }
+
+    /* The objects snapshot saved in player-data (cached; read from disk only on the first call). */
+    public String getSavedObjectsJson(String steamID) {
+        PlayerRecords.Record r = PlayerRecords.get(steamID);
+        return r == null ? null : r.objects();
+    }
+
+    /*
+     * Zero-copy access to the objects snapshot: reader gets a read-only UTF-8 view that is only
+     * valid inside the call. Returns null when there is no snapshot.
+     */
+    public <T> T readObjectsJson(String steamID, Function<ByteBuffer, T> reader) {
+        if (Cluster.enabled() && !Cluster.isLocal(steamID)) {
+            String remote = Main.getObjectsSnapshot(steamID);
+            return remote == null ? null
+                    : reader.apply(ByteBuffer.wrap(remote.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer());
+        }
+        try {
+            return ObjectStore.read(steamID, reader::apply);
+        } catch (IOException impossible) {
+            return null;
+        }
+    }
 }
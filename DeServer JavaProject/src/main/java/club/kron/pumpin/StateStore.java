@@ -0,0 +1,610 @@
+package club.kron.pumpin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/*
+ * Warm restart (warm-restart=true). Session state – command queues, positions, objects snapshots,
+ * running/paused flags and client keys – is kept in state-dir (default "state") as a snapshot taken
+ * every state-snapshot-seconds (default 30) plus a write-ahead log of what changed since; transient
+ * input events are not kept. On boot the newest snapshot and the logs after it are replayed, partitioned by SteamID
+ * across all cores, so queued commands survive a restart and clients do not all re-upload at once.
+ *
+ * Queue operations are logged in order under the same lock as the queue change itself. Other fields
+ * only mark the session dirty; their latest values are logged every state-wal-flush-ms (default 200).
+ * State older than state-max-age-seconds (default 300) is ignored – those clients have given up.
+ *
+ * Files: snapshot-<gen>.dss  magic "DSS1", int version, long epoch millis, int sections, then per
+ *                            section an int byte length and its sessions (str sid, int n, n fields)
+ *        wal-<gen>.dsw       magic "DSW1", int version, long epoch millis, then records until EOF
+ * Fields use the importSession format ("pos=…", "cmd=…", "seen=<ms>|<key>"); strings are an int
+ * length and UTF-8.
+ */
+final class StateStore {
+
+    static final int POS = 1, ROT = 2, CAM = 4, OBJ = 8, FLAGS = 16, SEEN = 32, ALL = 63;
+    static final byte CMD = 0, CMD_URGENT = 2, CMD_BULK = 3;     // CMD is the normal lane; 1 was player input
+
+    private static final int SNAPSHOT_MAGIC = 0x44535331;
+    private static final int WAL_MAGIC = 0x44535731;
+    private static final int VERSION = 1;
+
+    /* WAL records: FIELDS sid n fields ("-name" = cleared) | ENQ sid kind value | DRAIN sid kind n | DROP sid */
+    private static final byte FIELDS = 1, ENQ = 2, DRAIN = 3, DROP = 4;
+
+    private static final int LANES = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final Object LOCK = new Object();
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static final Map<String, Integer> DIRTY = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+    private static File dir;
+    private static long generation;
+    private static FileOutputStream walFile;
+    private static DataOutputStream wal;
+    private static int walFlushed;
+    private static boolean fsync;
+    private static volatile Thread writer;
+    private static final AtomicLong recoveryMs = new AtomicLong(-1);
+
+    private static final Metrics.Histogram snapshotTimer =
+            Metrics.histogram("deserver_state_snapshot_seconds", "Time to write one warm-restart snapshot");
+    private static final Metrics.Counter walBytes =
+            Metrics.counter("deserver_state_wal_bytes_total", "Bytes appended to the warm-restart log");
+
+    static {
+        Metrics.gauge("deserver_state_recovery_ms", "Time spent recovering session state at boot (-1 = none)",
+                recoveryMs::get);
+    }
+
+    private StateStore() {}
+
+    static boolean enabled() { return enabled; }
+
+    /* Recovers the previous state, writes a fresh snapshot and starts logging. Call before the listener is up. */
+    static void start() {
+        if (!Boolean.parseBoolean(Main.property("warm-restart", "false"))) return;
+        dir = new File(Main.property("state-dir", "state"));
+        dir.mkdirs();
+        fsync = Boolean.parseBoolean(Main.property("state-fsync", "false"));
+
+        recover();
+
+        try {
+            Map<String, List<String>> queues;
+            synchronized (LOCK) {
+                openWal(++generation);
+                queues = Main.sessionQueues();
+            }
+            enabled = true;
+            writeSnapshot(generation, queues);
+        } catch (IOException e) {
+            enabled = false;
+            Main.log("[WARN] Warm restart disabled: cannot write to " + dir + ": " + e.getMessage());
+            return;
+        }
+
+        Thread t = new Thread(StateStore::writeLoop, "state-writer");
+        t.setDaemon(true);
+        t.start();
+        writer = t;
+        Main.log("[INFO] Warm restart state kept in " + dir.getPath());
+    }
+
+    /* Final flush and snapshot on a clean shutdown; the next boot then only reads the snapshot. */
+    static void stop() {
+        if (!enabled) return;
+        Thread t = writer;
+        if (t != null) t.interrupt();
+        flushDirty();
+        snapshot();
+        enabled = false;
+        synchronized (LOCK) { closeWal(); }
+    }
+
+    /* Stops logging after a last flush but without the final snapshot – what a crash leaves behind (tests). */
+    static void halt() {
+        if (!enabled) return;
+        Thread t = writer;
+        if (t != null) t.interrupt();
+        flushDirty();
+        enabled = false;
+        synchronized (LOCK) { closeWal(); }
+    }
+
+    /* ---- hooks used by Main ---- */
+
+    static void enqueue(byte kind, String steamID, String value, Queue<String> q) {
+        if (!enabled) { q.add(value); return; }
+        synchronized (LOCK) {
+            q.add(value);
+            try {
+                wal.writeByte(ENQ);
+                writeStr(wal, steamID);
+                wal.writeByte(kind);
+                writeStr(wal, value);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    static void enqueueAll(byte kind, String steamID, List<String> values, Queue<String> q) {
+        if (!enabled) { q.addAll(values); return; }
+        synchronized (LOCK) {
+            q.addAll(values);
+            try {
+                for (String v : values) {
+                    wal.writeByte(ENQ);
+                    writeStr(wal, steamID);
+                    wal.writeByte(kind);
+                    writeStr(wal, v);
+                }
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /* Polls everything queued in q. */
+    static List<String> drain(byte kind, String steamID, Queue<String> q) {
+        return drain(kind, steamID, q, Integer.MAX_VALUE);
+    }
+
+    /* Polls up to max values from the head of q. */
+    static List<String> drain(byte kind, String steamID, Queue<String> q, int max) {
+        List<String> list = new ArrayList<>();
+        if (!enabled) {
+            for (String v; list.size() < max && (v = q.poll()) != null; ) list.add(v);
+            return list;
+        }
+        synchronized (LOCK) {
+            for (String v; list.size() < max && (v = q.poll()) != null; ) list.add(v);
+            if (list.isEmpty()) return list;
+            try {
+                wal.writeByte(DRAIN);
+                writeStr(wal, steamID);
+                wal.writeByte(kind);
+                wal.writeInt(list.size());
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+        return list;
+    }
+
+    static void touch(String steamID, int fields) {
+        if (enabled) DIRTY.merge(steamID, fields, (a, b) -> a | b);
+    }
+
+    /* Everything held for steamID was removed (handed to another node). */
+    static void drop(String steamID) {
+        if (!enabled) return;
+        DIRTY.remove(steamID);
+        synchronized (LOCK) {
+            try {
+                wal.writeByte(DROP);
+                writeStr(wal, steamID);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /* ---- writing ---- */
+
+    private static void writeLoop() {
+        long flushMs = Math.max(10, Main.intProperty("state-wal-flush-ms", 200));
+        long snapshotMs = Math.max(1, Main.intProperty("state-snapshot-seconds", 30)) * 1000L;
+        long lastSnapshot = System.currentTimeMillis();
+        try {
+            while (enabled) {
+                Thread.sleep(flushMs);
+                flushDirty();
+                if (System.currentTimeMillis() - lastSnapshot >= snapshotMs) {
+                    snapshot();
+                    lastSnapshot = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private static void flushDirty() {
+        List<String> ids = new ArrayList<>();
+        List<List<String>> values = new ArrayList<>();
+        for (String sid : DIRTY.keySet()) {
+            Integer mask = DIRTY.remove(sid);
+            if (mask == null) continue;
+            ids.add(sid);
+            values.add(Main.sessionFields(sid, mask));   // read outside the lock; objects can be large
+        }
+        synchronized (LOCK) {
+            if (!enabled || wal == null) return;
+            try {
+                for (int i = 0; i < ids.size(); i++) {
+                    wal.writeByte(FIELDS);
+                    writeStr(wal, ids.get(i));
+                    wal.writeInt(values.get(i).size());
+                    for (String f : values.get(i)) writeStr(wal, f);
+                }
+                wal.flush();
+                if (fsync) walFile.getChannel().force(false);
+                walBytes.add(wal.size() - walFlushed);
+                walFlushed = wal.size();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /* One snapshot at a time: the writer loop and "state snapshot" would otherwise share .tmp files. */
+    private static void snapshot() {
+        synchronized (SNAPSHOT_LOCK) {
+            try {
+                long gen;
+                Map<String, List<String>> queues;
+                synchronized (LOCK) {
+                    if (wal == null) return;
+                    closeWal();
+                    gen = ++generation;
+                    openWal(gen);
+                    queues = Main.sessionQueues();
+                }
+                writeSnapshot(gen, queues);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+    }
+
+    /*
+     * queues were captured in the same critical section that opened the WAL of gen, so every queue
+     * operation is either in the snapshot or in that log, never both. Fields are read afterwards and
+     * may be newer than the log's first records, which is harmless because field records are whole values.
+     */
+    private static void writeSnapshot(long gen, Map<String, List<String>> queues) throws IOException {
+        long started = System.nanoTime();
+
+        Set<String> ids = new HashSet<>(Main.localSteamIDs());
+        ids.addAll(queues.keySet());
+        List<List<String>> sections = new ArrayList<>();
+        for (int i = 0; i < LANES; i++) sections.add(new ArrayList<>());
+        for (String sid : ids) sections.get(lane(sid, LANES)).add(sid);
+
+        File tmp = new File(dir, "snapshot-" + gen + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    java.nio.channels.Channels.newOutputStream(ch), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(sections.size());
+            for (List<String> section : sections) {
+                out.flush();
+                long lengthAt = ch.position();
+                out.writeInt(0);
+                int before = out.size();
+                for (String sid : section) {
+                    List<String> fields = new ArrayList<>();
+                    for (String f : Main.sessionFields(sid, ALL)) if (f.charAt(0) != '-') fields.add(f);
+                    List<String> q = queues.get(sid);
+                    if (q != null) fields.addAll(q);
+                    if (fields.isEmpty()) continue;
+                    writeStr(out, sid);
+                    out.writeInt(fields.size());
+                    for (String f : fields) writeStr(out, f);
+                }
+                out.flush();
+                ch.write(ByteBuffer.allocate(4).putInt(0, out.size() - before), lengthAt);
+            }
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), new File(dir, "snapshot-" + gen + ".dss").toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // The new snapshot covers everything before its log
+        File[] old = dir.listFiles((d, n) -> n.endsWith(".dss") || n.endsWith(".dsw") || n.endsWith(".tmp"));
+        if (old != null)
+            for (File f : old) if (generationOf(f) < gen) f.delete();
+        snapshotTimer.recordSince(started);
+    }
+
+    private static void openWal(long gen) throws IOException {
+        walFile = new FileOutputStream(new File(dir, "wal-" + gen + ".dsw"));
+        wal = new DataOutputStream(new BufferedOutputStream(walFile, 1 << 16));
+        wal.writeInt(WAL_MAGIC);
+        wal.writeInt(VERSION);
+        wal.writeLong(System.currentTimeMillis());
+        walFlushed = 0;
+    }
+
+    private static void closeWal() {
+        if (wal == null) return;
+        try {
+            wal.flush();
+            walBytes.add(wal.size() - walFlushed);
+            walFile.getChannel().force(false);
+            wal.close();
+        } catch (IOException ignore) {
+        }
+        wal = null;
+        walFile = null;
+    }
+
+    private static void failed(IOException e) {
+        if (!enabled) return;
+        enabled = false;
+        Main.log("[WARN] Warm restart state no longer recorded: " + e.getMessage());
+    }
+
+    /* ---- recovery ---- */
+
+    private static final class Session {
+        final String sid;
+        final Map<String, String> fields = new LinkedHashMap<>();
+        final Set<String> keys = new LinkedHashSet<>();
+        final List<ArrayDeque<String>> cmds = List.of(new ArrayDeque<>(), new ArrayDeque<>(), new ArrayDeque<>());
+
+        Session(String sid) { this.sid = sid; }
+
+        void apply(String f) {
+            if (f.charAt(0) == '-') {
+                String name = f.substring(1);
+                if ("seen".equals(name)) keys.clear(); else fields.remove(name);
+                return;
+            }
+            int eq = f.indexOf('=');
+            String k = f.substring(0, eq), v = f.substring(eq + 1);
+            switch (k) {
+                case "cmd":        cmds.get(CommandLanes.NORMAL).add(v); break;
+                case "cmd.urgent": cmds.get(CommandLanes.URGENT).add(v); break;
+                case "cmd.bulk":   cmds.get(CommandLanes.BULK).add(v); break;
+                case "seen": keys.add(v.substring(v.indexOf('|') + 1)); break;
+                default:     fields.put(k, v);
+            }
+        }
+
+        void clear() {
+            fields.clear(); keys.clear();
+            for (ArrayDeque<String> q : cmds) q.clear();
+        }
+
+        boolean isEmpty() {
+            return fields.isEmpty() && keys.isEmpty() && commands() == 0;
+        }
+
+        int commands() {
+            int n = 0;
+            for (ArrayDeque<String> q : cmds) n += q.size();
+            return n;
+        }
+
+        /* null for a kind that is not a command lane (input records in logs from older versions). */
+        ArrayDeque<String> queue(byte kind) {
+            switch (kind) {
+                case CMD:        return cmds.get(CommandLanes.NORMAL);
+                case CMD_URGENT: return cmds.get(CommandLanes.URGENT);
+                case CMD_BULK:   return cmds.get(CommandLanes.BULK);
+                default:         return null;
+            }
+        }
+
+        /* Clients get a full timeout from now to come back. */
+        List<String> export(long now) {
+            List<String> out = new ArrayList<>();
+            for (Map.Entry<String, String> e : fields.entrySet()) out.add(e.getKey() + '=' + e.getValue());
+            for (String key : keys) out.add("seen=" + now + '|' + key);
+            for (int l = 0; l < cmds.size(); l++)
+                for (String c : cmds.get(l)) out.add(CommandLanes.field(l) + '=' + c);
+            return out;
+        }
+    }
+
+    private record Op(byte type, String sid, byte kind, int n, List<String> values) {}
+
+    private static void recover() {
+        File[] files = dir.listFiles((d, n) -> n.endsWith(".dss") || n.endsWith(".dsw"));
+        if (files == null || files.length == 0) return;
+
+        File snapshot = null;
+        long newest = 0;
+        for (File f : files) {
+            generation = Math.max(generation, generationOf(f));
+            newest = Math.max(newest, f.lastModified());
+            if (f.getName().endsWith(".dss") && (snapshot == null || generationOf(f) > generationOf(snapshot)))
+                snapshot = f;
+        }
+        long from = snapshot == null ? 0 : generationOf(snapshot);
+        List<File> logs = new ArrayList<>();
+        for (File f : files)
+            if (f.getName().endsWith(".dsw") && generationOf(f) >= from) logs.add(f);
+        logs.sort(Comparator.comparingLong(StateStore::generationOf));
+
+        long ageSec = (System.currentTimeMillis() - newest) / 1000;
+        long maxAge = Main.intProperty("state-max-age-seconds", 300);
+        if (ageSec > maxAge) {
+            Main.log("[INFO] Warm restart: state in " + dir + " is " + ageSec + " s old (state-max-age-seconds=" +
+                    maxAge + "), starting empty.");
+            return;
+        }
+
+        long started = System.nanoTime();
+        Map<String, Session> sessions = new ConcurrentHashMap<>();
+        long records = 0;
+        try {
+            if (snapshot != null) readSnapshot(snapshot, sessions);
+
+            // Logs are read in order, then applied per SteamID lane in parallel
+            List<List<Op>> lanes = new ArrayList<>();
+            for (int i = 0; i < LANES; i++) lanes.add(new ArrayList<>());
+            for (File f : logs) records += readWal(f, lanes);
+            IntStream.range(0, LANES).parallel().forEach(i -> {
+                for (Op op : lanes.get(i)) {
+                    Session s = sessions.computeIfAbsent(op.sid(), Session::new);
+                    switch (op.type()) {
+                        case FIELDS: for (String f : op.values()) s.apply(f); break;
+                        case ENQ: {
+                            ArrayDeque<String> q = s.queue(op.kind());
+                            if (q != null) q.add(op.values().get(0));
+                            break;
+                        }
+                        case DRAIN: {
+                            ArrayDeque<String> q = s.queue(op.kind());
+                            for (int n = 0; q != null && n < op.n() && q.poll() != null; n++) { }
+                            break;
+                        }
+                        case DROP:   s.clear(); break;
+                        default: break;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Main.log("[WARN] Warm restart: cannot read state in " + dir + ": " + e.getMessage() + " – starting empty.");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(Session::isEmpty);
+        sessions.values().parallelStream().forEach(s -> Main.importSession(s.sid, s.export(now)));
+
+        long cmds = 0;
+        for (Session s : sessions.values()) cmds += s.commands();
+        long ms = (System.nanoTime() - started) / 1_000_000;
+        recoveryMs.set(ms);
+        Main.log("[INFO] Warm restart: recovered " + sessions.size() + " sessions, " + cmds + " queued commands from " +
+                (snapshot == null ? "no snapshot" : snapshot.getName()) + " + " +
+                logs.size() + " log(s) / " + records + " records in " + ms + " ms.");
+    }
+
+    private static void readSnapshot(File f, Map<String, Session> sessions) throws IOException {
+        ByteBuffer b;
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (b.getInt() != SNAPSHOT_MAGIC || b.getInt() != VERSION) throw new IOException(f.getName() + ": not a snapshot");
+        b.getLong();
+        int n = b.getInt();
+        List<ByteBuffer> sections = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int len = b.getInt();
+            sections.add(b.slice(b.position(), len));
+            b.position(b.position() + len);
+        }
+        sections.parallelStream().forEach(s -> {
+            while (s.hasRemaining()) {
+                Session session = new Session(readStr(s));
+                for (int i = s.getInt(); i > 0; i--) session.apply(readStr(s));
+                sessions.put(session.sid, session);
+            }
+        });
+    }
+
+    /* Appends the records of one log to their lanes; a torn tail from a crash ends the file. */
+    private static long readWal(File f, List<List<Op>> lanes) throws IOException {
+        long n = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            if (in.readInt() != WAL_MAGIC || in.readInt() != VERSION) throw new IOException(f.getName() + ": not a log");
+            in.readLong();
+            while (true) {
+                Op op;
+                try {
+                    int type = in.read();
+                    if (type < 0) break;
+                    String sid = readStr(in);
+                    switch (type) {
+                        case FIELDS: {
+                            int count = in.readInt();
+                            List<String> values = new ArrayList<>(count);
+                            for (int i = 0; i < count; i++) values.add(readStr(in));
+                            op = new Op(FIELDS, sid, (byte) 0, 0, values);
+                            break;
+                        }
+                        case ENQ:   op = new Op(ENQ, sid, in.readByte(), 0, List.of(readStr(in))); break;
+                        case DRAIN: op = new Op(DRAIN, sid, in.readByte(), in.readInt(), List.of()); break;
+                        case DROP:  op = new Op(DROP, sid, (byte) 0, 0, List.of()); break;
+                        default:    throw new EOFException();
+                    }
+                } catch (EOFException torn) {
+                    break;
+                }
+                lanes.get(lane(op.sid(), lanes.size())).add(op);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /* ---- helpers ---- */
+
+    private static int lane(String sid, int lanes) {
+        return Math.floorMod(sid.hashCode(), lanes);
+    }
+
+    private static long generationOf(File f) {
+        String n = f.getName();
+        try {
+            return Long.parseLong(n.substring(n.indexOf('-') + 1, n.lastIndexOf('.')));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static void writeStr(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readStr(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new EOFException();
+        byte[] b = in.readNBytes(len);
+        if (b.length < len) throw new EOFException();
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static String readStr(ByteBuffer b) {
+        int len = b.getInt();
+        String s = StandardCharsets.UTF_8.decode(b.slice(b.position(), len)).toString();
+        b.position(b.position() + len);
+        return s;
+    }
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0 || !"state".equalsIgnoreCase(tok[0])) return false;
+        if (!enabled) {
+            Main.log("[INFO] Warm restart is off (warm-restart=true to enable).");
+        } else if (tok.length > 1 && "snapshot".equalsIgnoreCase(tok[1])) {
+            flushDirty();
+            snapshot();
+            Main.log("[INFO] Snapshot " + generation + " written to " + dir.getPath());
+        } else {
+            Main.log("[INFO] Warm restart state in " + dir.getPath() + ", generation " + generation +
+                    (recoveryMs.get() >= 0 ? ", recovered at boot in " + recoveryMs.get() + " ms" : "") +
+                    " (state snapshot)");
+        }
+        return true;
+    }
+}
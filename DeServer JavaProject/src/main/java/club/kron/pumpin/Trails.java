@@ -0,0 +1,537 @@
+package club.kron.pumpin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Position history ("trails"). With trails=true every pos event is appended to a per-player series of
+ * (time, x, y, z, rx, ry, rz); series are kept in three tiers – raw, one point per second and one per
+ * minute – each in its own directory under trails-dir (default "trails") with its own retention
+ * (trails-raw-hours 24, trails-1s-days 7, trails-1m-days 90).
+ *
+ * Values are rounded to 1/2^trails-precision-bits (default 6, about 1.6 cm / 0.016°), which leaves the
+ * low mantissa bits zero, then XOR-coded against the previous value of the same column; timestamps are
+ * delta-of-delta coded. A point costs a few bytes while a player moves and about one byte standing
+ * still. The 1s and 1m tiers keep the first point of every second / minute. Points collect in 2 KB blocks per player and tier; full blocks (or ones older than
+ * trails-flush-seconds, default 60) are copied into memory-mapped segments of trails-segment-mb (16).
+ *
+ * Segment: int magic "DST1", int version, int tier, int 0, then blocks until a zero int. Block: int
+ * payload bytes, int points, long first millis, long last millis, u16 steamID length + UTF-8, payload.
+ */
+final class Trails {
+
+    static final int MAGIC = 0x44535431;
+    static final int VERSION = 1;
+    static final int BLOCK_BYTES = 2048;
+    private static final int SEG_HEADER = 16;
+    private static final int BLOCK_HEADER = 4 + 4 + 8 + 8 + 2;
+    static final int COLUMNS = 6;
+    private static final int MAX_POINT_BITS = 4 + 32 + COLUMNS * (2 + 5 + 5 + 32);
+
+    /* One stored block. */
+    record Block(int segment, long offset, long first, long last, int points) {}
+
+    private static final class Tier {
+        final int id;
+        final String name;
+        final long stepMillis;
+        long retentionMillis;
+        File dir;
+        int segNo;
+        MappedByteBuffer seg;
+        FileChannel ch;
+        final Map<String, List<Block>> index = new HashMap<>();
+        final Map<Integer, Long> newest = new HashMap<>();      // segment → last millis it holds
+
+        Tier(int id, String name, long stepMillis) {
+            this.id = id; this.name = name; this.stepMillis = stepMillis;
+        }
+
+        File file(int no) { return new File(dir, String.format("trail-%05d.dst", no)); }
+    }
+
+    private static final Tier[] TIERS = {
+            new Tier(0, "raw", 0), new Tier(1, "1s", 1_000), new Tier(2, "1m", 60_000)
+    };
+
+    private static final Map<String, Series> SERIES = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+    private static float scale = 64;
+    private static long segmentBytes = 16L << 20;
+    private static long flushMillis = 60_000;
+
+    private static final Metrics.Counter points =
+            Metrics.counter("deserver_trails_points_total", "Positions appended to the raw trail tier");
+    private static final Metrics.Counter blockBytes =
+            Metrics.counter("deserver_trails_bytes_total", "Bytes of sealed trail blocks written");
+    private static final Metrics.Histogram ingest =
+            Metrics.histogram("deserver_trails_append_seconds", "Time to append one position to the trails");
+
+    static {
+        Metrics.gauge("deserver_trails_series", "Players with an open trail series", SERIES::size);
+    }
+
+    private Trails() {}
+
+    static boolean enabled() { return enabled; }
+
+    static void start() {
+        if (!Boolean.parseBoolean(Main.property("trails", "false"))) return;
+        File root = new File(Main.property("trails-dir", "trails"));
+        scale = 1 << Math.max(0, Math.min(20, Main.intProperty("trails-precision-bits", 6)));
+        segmentBytes = Math.max(1, Main.intProperty("trails-segment-mb", 16)) * (1L << 20);
+        flushMillis = Math.max(1, Main.intProperty("trails-flush-seconds", 60)) * 1000L;
+        TIERS[0].retentionMillis = Math.max(1, Main.intProperty("trails-raw-hours", 24)) * 3_600_000L;
+        TIERS[1].retentionMillis = Math.max(1, Main.intProperty("trails-1s-days", 7)) * 86_400_000L;
+        TIERS[2].retentionMillis = Math.max(1, Main.intProperty("trails-1m-days", 90)) * 86_400_000L;
+
+        long blocks = 0;
+        for (Tier t : TIERS) {
+            synchronized (t) {
+                t.dir = new File(root, t.name);
+                t.dir.mkdirs();
+                blocks += scan(t);
+            }
+        }
+        enabled = true;
+        Main.log("[INFO] Trails recording to " + root.getPath() + " (" + blocks + " stored blocks indexed)");
+    }
+
+    /* Seals every open block so nothing buffered is lost. */
+    static void stop() {
+        if (!enabled) return;
+        enabled = false;
+        for (Series s : SERIES.values()) {
+            synchronized (s) {
+                for (Tier t : TIERS) seal(s, t);
+            }
+        }
+        for (Tier t : TIERS) {
+            synchronized (t) { closeSegment(t); }
+        }
+    }
+
+    /* ---- ingest ---- */
+
+    private static final class Series {
+        final String steamID;
+        final byte[] sid;
+        final Encoder[] enc = new Encoder[TIERS.length];
+        final long[] bucket = new long[TIERS.length];
+        final int[] bits = new int[COLUMNS];
+        long lastMillis;
+        boolean dead;                                    // removed by tick(); writers must look again
+
+        Series(String steamID) {
+            this.steamID = steamID;
+            this.sid = steamID.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < enc.length; i++) enc[i] = new Encoder();
+            Arrays.fill(bucket, Long.MIN_VALUE);
+        }
+    }
+
+    static void pos(String steamID, double x, double y, double z, double rx, double ry, double rz) {
+        if (!enabled) return;
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Series s = SERIES.computeIfAbsent(steamID, Series::new);
+        synchronized (s) {
+            if (s.dead) {
+                pos(steamID, x, y, z, rx, ry, rz);
+                return;
+            }
+            int[] b = s.bits;
+            b[0] = quantize(x);  b[1] = quantize(y);  b[2] = quantize(z);
+            b[3] = quantize(rx); b[4] = quantize(ry); b[5] = quantize(rz);
+            now = Math.max(now, s.lastMillis);           // the wall clock may step back
+            s.lastMillis = now;
+            for (Tier t : TIERS) {
+                if (t.stepMillis > 0) {
+                    long bucket = now / t.stepMillis;
+                    if (bucket == s.bucket[t.id]) continue;
+                    s.bucket[t.id] = bucket;
+                }
+                Encoder e = s.enc[t.id];
+                if (e.points > 0 && !e.fits()) seal(s, t);
+                e.add(now, b);
+            }
+        }
+        points.inc();
+        ingest.recordSince(started);
+    }
+
+    private static int quantize(double v) {
+        return Float.floatToRawIntBits((float) (Math.rint(v * scale) / scale));
+    }
+
+    /*
+     * Periodic: seals blocks that stayed open longer than trails-flush-seconds (coarser tiers wait for at
+     * least 64 of their steps, so a block holds more than a point or two) and drops idle series.
+     */
+    static void tick() {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        for (Series s : SERIES.values()) {
+            synchronized (s) {
+                for (Tier t : TIERS)
+                    if (s.enc[t.id].points > 0 && now - s.enc[t.id].first >= Math.max(flushMillis, 64 * t.stepMillis))
+                        seal(s, t);
+                if (now - s.lastMillis > flushMillis && allEmpty(s)) {
+                    s.dead = true;
+                    SERIES.remove(s.steamID, s);
+                }
+            }
+        }
+    }
+
+    private static boolean allEmpty(Series s) {
+        for (Encoder e : s.enc) if (e.points > 0) return false;
+        return true;
+    }
+
+    /* Copies the series' open block of tier t into the tier's segment; caller holds the series lock. */
+    private static void seal(Series s, Tier t) {
+        Encoder e = s.enc[t.id];
+        if (e.points == 0) return;
+        int payload = e.bytes();
+        int need = BLOCK_HEADER + s.sid.length + payload;
+        synchronized (t) {
+            try {
+                if (t.seg == null || t.seg.remaining() < need + 4) roll(t);
+            } catch (IOException ex) {
+                Main.log("[WARN] Trails: cannot open a " + t.name + " segment: " + ex.getMessage() + " – block dropped");
+                e.reset();
+                return;
+            }
+            long at = t.seg.position();
+            t.seg.putInt(payload).putInt(e.points).putLong(e.first).putLong(e.last)
+                    .putShort((short) s.sid.length).put(s.sid).put(e.buf, 0, payload);
+            if (t.seg.remaining() >= 4) t.seg.putInt(t.seg.position(), 0);
+            t.index.computeIfAbsent(s.steamID, k -> new ArrayList<>())
+                    .add(new Block(t.segNo, at, e.first, e.last, e.points));
+            t.newest.merge(t.segNo, e.last, Math::max);
+            blockBytes.add(need);
+        }
+        e.reset();
+    }
+
+    /* ---- segments, all under the tier's lock ---- */
+
+    private static void roll(Tier t) throws IOException {
+        closeSegment(t);
+        expire(t);
+        t.segNo++;
+        t.ch = FileChannel.open(t.file(t.segNo).toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        t.seg = t.ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        t.seg.putInt(MAGIC).putInt(VERSION).putInt(t.id).putInt(0);
+        t.seg.putInt(t.seg.position(), 0);
+    }
+
+    private static void closeSegment(Tier t) {
+        if (t.seg == null) return;
+        t.seg.force();
+        try { t.ch.truncate(t.seg.position() + 4L); } catch (IOException ignore) {}
+        try { t.ch.close(); } catch (IOException ignore) {}
+        t.seg = null;
+        t.ch = null;
+    }
+
+    /* Deletes whole segments whose newest point is past the tier's retention. */
+    private static void expire(Tier t) {
+        long cutoff = System.currentTimeMillis() - t.retentionMillis;
+        List<Integer> old = new ArrayList<>();
+        t.newest.forEach((no, last) -> { if (last < cutoff) old.add(no); });
+        if (old.isEmpty()) return;
+        for (Integer no : old) {
+            t.newest.remove(no);
+            t.file(no).delete();
+        }
+        for (List<Block> l : t.index.values()) l.removeIf(b -> old.contains(b.segment()));
+        t.index.values().removeIf(List::isEmpty);
+    }
+
+    /* Rebuilds the tier's index from the segments on disk; returns the number of blocks found. */
+    private static long scan(Tier t) {
+        t.index.clear();
+        t.newest.clear();
+        t.segNo = 0;
+        File[] files = t.dir.listFiles((d, n) -> n.startsWith("trail-") && n.endsWith(".dst"));
+        if (files == null) return 0;
+        Arrays.sort(files);
+        long blocks = 0;
+        for (File f : files) {
+            int no;
+            try { no = Integer.parseInt(f.getName().substring(6, 11)); }
+            catch (RuntimeException e) { continue; }
+            t.segNo = Math.max(t.segNo, no);
+            try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                long size = ch.size();
+                ByteBuffer head = ByteBuffer.allocate(SEG_HEADER);
+                if (size < SEG_HEADER) continue;
+                readFully(ch, head, 0);
+                if (head.getInt() != MAGIC || head.getInt() != VERSION) continue;
+                head = ByteBuffer.allocate(BLOCK_HEADER);
+                for (long at = SEG_HEADER; at + BLOCK_HEADER <= size; ) {
+                    head.clear();
+                    readFully(ch, head, at);
+                    int payload = head.getInt(), n = head.getInt();
+                    long first = head.getLong(), last = head.getLong();
+                    int sidLen = head.getShort() & 0xFFFF;
+                    if (payload <= 0 || at + BLOCK_HEADER + sidLen + payload > size) break;
+                    ByteBuffer sid = ByteBuffer.allocate(sidLen);
+                    readFully(ch, sid, at + BLOCK_HEADER);
+                    t.index.computeIfAbsent(new String(sid.array(), StandardCharsets.UTF_8), k -> new ArrayList<>())
+                            .add(new Block(no, at, first, last, n));
+                    t.newest.merge(no, last, Math::max);
+                    blocks++;
+                    at += BLOCK_HEADER + sidLen + payload;
+                }
+            } catch (IOException e) {
+                Main.log("[WARN] Trails: skipping unreadable " + f.getPath() + ": " + e.getMessage());
+            }
+        }
+        expire(t);
+        return blocks;
+    }
+
+    /* ---- queries ---- */
+
+    /*
+     * Visits the points of steamID between from and to (epoch millis, inclusive) in time order, from
+     * the coarsest tier whose spacing is at most stepMillis. Returns the number of points visited.
+     */
+    static int query(String steamID, long from, long to, long stepMillis, ServerAPI.TrailVisitor v) {
+        Tier tier = TIERS[0];
+        for (Tier t : TIERS) if (t.stepMillis <= stepMillis) tier = t;
+
+        // Blocks and the open block are taken together so a concurrent seal is seen exactly once
+        List<Block> blocks;
+        byte[] open = null;
+        int openPoints = 0;
+        long openFirst = 0;
+        Series s = SERIES.get(steamID);
+        if (s == null) {
+            blocks = blocks(tier, steamID);
+        } else {
+            synchronized (s) {
+                blocks = blocks(tier, steamID);
+                Encoder e = s.enc[tier.id];
+                if (e.points > 0) {
+                    open = Arrays.copyOf(e.buf, e.bytes());
+                    openPoints = e.points;
+                    openFirst = e.first;
+                }
+            }
+        }
+
+        int[] n = {0};
+        ServerAPI.TrailVisitor inRange = (t, x, y, z, rx, ry, rz) -> {
+            if (t >= from && t <= to) { v.point(t, x, y, z, rx, ry, rz); n[0]++; }
+        };
+        int segOpen = -1;
+        FileChannel ch = null;
+        try {
+            for (Block b : blocks) {
+                if (b.last() < from || b.first() > to) continue;
+                if (b.segment() != segOpen) {
+                    if (ch != null) ch.close();
+                    ch = FileChannel.open(tier.file(b.segment()).toPath(), StandardOpenOption.READ);
+                    segOpen = b.segment();
+                }
+                ByteBuffer head = ByteBuffer.allocate(BLOCK_HEADER);
+                readFully(ch, head, b.offset());
+                ByteBuffer body = ByteBuffer.allocate(head.getInt(0));
+                readFully(ch, body, b.offset() + BLOCK_HEADER + (head.getShort(24) & 0xFFFF));
+                decode(body.array(), b.points(), b.first(), inRange);
+            }
+        } catch (IOException e) {
+            Main.log("[WARN] Trails: query for " + steamID + " stopped: " + e.getMessage());
+        } finally {
+            if (ch != null) try { ch.close(); } catch (IOException ignore) {}
+        }
+        if (open != null && openFirst <= to) decode(open, openPoints, openFirst, inRange);
+        return n[0];
+    }
+
+    private static List<Block> blocks(Tier tier, String steamID) {
+        synchronized (tier) {
+            List<Block> l = tier.index.get(steamID);
+            return l == null ? List.of() : new ArrayList<>(l);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long at) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, at + b.position()) < 0) throw new IOException("truncated block at " + at);
+        }
+        b.flip();
+    }
+
+    /* ---- block coding ---- */
+
+    /* Bit writer for one open block: delta-of-delta timestamps, XOR-coded columns. */
+    static final class Encoder {
+        final byte[] buf = new byte[BLOCK_BYTES];
+        final int[] prev = new int[COLUMNS], lead = new int[COLUMNS], trail = new int[COLUMNS];
+        long bitPos, first, last, prevDelta;
+        int points;
+
+        boolean fits() { return bitPos + MAX_POINT_BITS <= BLOCK_BYTES * 8L; }
+
+        int bytes() { return (int) ((bitPos + 7) >>> 3); }
+
+        void reset() {
+            Arrays.fill(buf, 0, bytes(), (byte) 0);
+            bitPos = 0;
+            points = 0;
+        }
+
+        void add(long t, int[] v) {
+            if (points == 0) {
+                first = last = t;
+                prevDelta = 0;
+                for (int i = 0; i < COLUMNS; i++) {
+                    write(v[i] & 0xFFFFFFFFL, 32);
+                    prev[i] = v[i];
+                    lead[i] = -1;
+                }
+                points = 1;
+                return;
+            }
+            long delta = t - last, dod = delta - prevDelta;
+            if (dod == 0)                      write(0b0, 1);
+            else if (dod >= -63 && dod <= 64)  { write(0b10, 2);   write(dod + 63, 7); }
+            else if (dod >= -255 && dod <= 256) { write(0b110, 3);  write(dod + 255, 9); }
+            else if (dod >= -2047 && dod <= 2048) { write(0b1110, 4); write(dod + 2047, 12); }
+            else                               { write(0b1111, 4); write(delta & 0xFFFFFFFFL, 32); }
+            prevDelta = delta;
+            last = t;
+
+            for (int i = 0; i < COLUMNS; i++) {
+                int x = v[i] ^ prev[i];
+                prev[i] = v[i];
+                if (x == 0) { write(0, 1); continue; }
+                int l = Math.min(31, Integer.numberOfLeadingZeros(x)), tr = Integer.numberOfTrailingZeros(x);
+                if (lead[i] >= 0 && l >= lead[i] && tr >= trail[i]) {
+                    write(0b10, 2);
+                    write((x >>> trail[i]) & mask(32 - lead[i] - trail[i]), 32 - lead[i] - trail[i]);
+                } else {
+                    int len = 32 - l - tr;
+                    write(0b11, 2);
+                    write(l, 5);
+                    write(len - 1, 5);
+                    write((x >>> tr) & mask(len), len);
+                    lead[i] = l;
+                    trail[i] = tr;
+                }
+            }
+            points++;
+        }
+
+        private void write(long value, int n) {
+            for (int i = n - 1; i >= 0; i--, bitPos++)
+                if ((value >>> i & 1) != 0) buf[(int) (bitPos >>> 3)] |= (byte) (0x80 >>> (bitPos & 7));
+        }
+    }
+
+    private static long mask(int n) { return n == 64 ? -1L : (1L << n) - 1; }
+
+    static void decode(byte[] buf, int count, long first, ServerAPI.TrailVisitor v) {
+        long[] pos = {0};
+        int[] val = new int[COLUMNS], lead = new int[COLUMNS], trail = new int[COLUMNS];
+        long t = first, delta = 0;
+        for (int p = 0; p < count; p++) {
+            if (p == 0) {
+                for (int i = 0; i < COLUMNS; i++) val[i] = (int) read(buf, pos, 32);
+            } else {
+                long dod;
+                if (read(buf, pos, 1) == 0)      dod = 0;
+                else if (read(buf, pos, 1) == 0) dod = read(buf, pos, 7) - 63;
+                else if (read(buf, pos, 1) == 0) dod = read(buf, pos, 9) - 255;
+                else if (read(buf, pos, 1) == 0) dod = read(buf, pos, 12) - 2047;
+                else                             dod = (int) read(buf, pos, 32) - delta;
+                delta += dod;
+                t += delta;
+                for (int i = 0; i < COLUMNS; i++) {
+                    if (read(buf, pos, 1) == 0) continue;
+                    if (read(buf, pos, 1) == 1) {
+                        lead[i] = (int) read(buf, pos, 5);
+                        trail[i] = 32 - lead[i] - ((int) read(buf, pos, 5) + 1);
+                    }
+                    val[i] ^= (int) read(buf, pos, 32 - lead[i] - trail[i]) << trail[i];
+                }
+            }
+            v.point(t, Float.intBitsToFloat(val[0]), Float.intBitsToFloat(val[1]), Float.intBitsToFloat(val[2]),
+                    Float.intBitsToFloat(val[3]), Float.intBitsToFloat(val[4]), Float.intBitsToFloat(val[5]));
+        }
+    }
+
+    private static long read(byte[] buf, long[] pos, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i++, pos[0]++)
+            v = v << 1 | (buf[(int) (pos[0] >>> 3)] >>> (7 - (pos[0] & 7)) & 1);
+        return v;
+    }
+
+    /* ---- console ---- */
+
+    static boolean handleConsole(String line) {
+        String[] tok = line.trim().split("\\s+");
+        if (tok.length == 0) return false;
+        if ("trails".equalsIgnoreCase(tok[0])) {
+            long blocks = 0;
+            for (Tier t : TIERS) synchronized (t) { for (List<Block> l : t.index.values()) blocks += l.size(); }
+            long p = points.get(), b = blockBytes.get();
+            Main.log("[INFO] Trails " + (enabled ? "on" : "off (trails=true)") + " – " + SERIES.size() +
+                    " open series, " + p + " points, " + blocks + " stored blocks, " + b / 1024 + " KB written" +
+                    (p > 0 && b > 0 ? String.format(java.util.Locale.ROOT, " (≈%.1f bytes/point)", b / (double) p) : ""));
+            return true;
+        }
+        if (!"trail".equalsIgnoreCase(tok[0])) return false;
+        if (tok.length < 2) {
+            Main.log("[WARN] Usage: trail <steamID> [minutes] [step-ms]");
+            return true;
+        }
+        long minutes, step;
+        try {
+            minutes = tok.length > 2 ? Long.parseLong(tok[2]) : 10;
+            step = tok.length > 3 ? Long.parseLong(tok[3]) : 0;
+        } catch (NumberFormatException e) {
+            Main.log("[WARN] Usage: trail <steamID> [minutes] [step-ms]");
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        float[][] ends = new float[2][];
+        long[] times = new long[2];
+        double[] dist = {0};
+        int n = query(tok[1], now - minutes * 60_000, now, step, (t, x, y, z, rx, ry, rz) -> {
+            if (ends[0] == null) { ends[0] = new float[]{x, y, z}; times[0] = t; }
+            else dist[0] += Math.sqrt(sq(x - ends[1][0]) + sq(y - ends[1][1]) + sq(z - ends[1][2]));
+            ends[1] = new float[]{x, y, z};
+            times[1] = t;
+        });
+        if (n == 0) {
+            Main.log("[INFO] No trail for SteamID=" + tok[1] + " in the last " + minutes + " min");
+            return true;
+        }
+        Main.log(String.format(java.util.Locale.ROOT,
+                "[INFO] Trail %s: %d points over %.1f s, %.1f m travelled, (%.2f,%.2f,%.2f) → (%.2f,%.2f,%.2f)",
+                tok[1], n, (times[1] - times[0]) / 1000.0, dist[0],
+                ends[0][0], ends[0][1], ends[0][2], ends[1][0], ends[1][1], ends[1][2]));
+        return true;
+    }
+
+    private static double sq(double d) { return d * d; }
+}
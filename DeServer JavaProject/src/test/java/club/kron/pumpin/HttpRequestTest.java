@@ -0,0 +1,65 @@
+package club.kron.pumpin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/* Body fields read straight from the bytes must agree with Main.extractJson on the decoded string. */
+class HttpRequestTest {
+
+    private static final String[] BODIES = {
+            "{\"event\":\"pos\",\"steamID\":\"76561198000000001\",\"x\":1.5,\"y\":-2,\"z\":3e2}",
+            "{ \"event\" :\t\"chat\", \"text\": \"say \\\"hi\\\" \\\\ back\", \"steamID\":\"1\" }",
+            "{\"event\":\"objects\",\"objects\":[{\"n\":\"a]b\",\"p\":[1,2]},[3,[4]]],\"steamID\":\"2\"}",
+            "{\"event\":\"state\",\"data\":{\"hp\":{\"cur\":5,\"max\":9},\"tag\":\"}\"},\"playerName\":\"Zoë 名前\"}",
+            "{\"event\":\"axis\",\"axis\":\"move_x\",\"val\":-0.25,\"extra\":\"\"}",
+            "{\"event\":\"input\",\"key\":\"jump\",\"val\":+1}",
+            "{\"event\":\"broken\",\"text\":\"no end",
+            "{\"event\":\"broken\",\"list\":[1,2",
+            "{\"event\":\"tail\",\"x\":",
+    };
+
+    private static final String[] KEYS = {
+            "event", "steamID", "playerName", "x", "y", "z", "text", "objects", "data", "axis", "val", "key",
+            "extra", "list", "missing",
+    };
+
+    @Test
+    void fieldMatchesExtractJson() {
+        for (String body : BODIES) {
+            for (String key : KEYS) {
+                assertEquals(Main.extractJson(body, key), HttpRequest.field(buffer(body), key), body + " / " + key);
+            }
+        }
+    }
+
+    @Test
+    void valueRespectsTheBufferWindow() {
+        String body = "{\"event\":\"pos\",\"steamID\":\"42\"}";
+        byte[] framed = ("GARBAGE\"steamID\":\"0\"" + body + "\"event\":\"no\"").getBytes(StandardCharsets.UTF_8);
+        int at = "GARBAGE\"steamID\":\"0\"".length();
+        ByteBuffer json = ByteBuffer.wrap(framed, at, body.length()).slice();
+
+        assertEquals("42", HttpRequest.text(HttpRequest.value(json, "steamID")));
+        assertEquals("pos", HttpRequest.field(json, "event"));
+        assertEquals(0, json.position());
+        assertEquals(body.length(), json.limit());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.length()).put(body.getBytes(StandardCharsets.UTF_8)).flip();
+        assertEquals("42", HttpRequest.field(direct, "steamID"));
+    }
+
+    @Test
+    void missingKeyIsNull() {
+        assertNull(HttpRequest.value(buffer("{\"event\":\"pos\"}"), "steamID"));
+        assertEquals("", HttpRequest.field(buffer("{\"event\":\"pos\"}"), "steamID"));
+    }
+
+    private static ByteBuffer buffer(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,109 @@
+package club.kron.pumpin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* What the journal records must read back as the bodies a client would have sent, in order. */
+class JournalTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() {
+        Main.override("journal-dir", dir.toString());
+        Main.override("journal-segment-mb", "1");
+        Journal.start();
+        assertTrue(Journal.recording());
+    }
+
+    @AfterEach
+    void stop() {
+        Journal.stop();
+    }
+
+    @Test
+    void readsBackEveryRecordType() throws IOException {
+        Journal.record("connect", "111", "Ann", "{\"event\":\"connect\",\"steamID\":\"111\",\"note\":\"ünï\"}");
+        Journal.axis("111", "Ann", "move_x", "-0.5");
+        Journal.input("222", "Bob", "jump");
+        Journal.pos("111", "Ann", 1.5, 2, -3, 0, 90, 0, Double.NaN, Double.NaN, Double.NaN);
+        Journal.pos("222", "Bob", 0, 0, 0, 0, 0, 0, 4, 5, 6);
+        Journal.input("111", "Ann", "jump");
+        Journal.stop();
+
+        List<Journal.Event> events = readAll();
+        assertEquals(6, events.size());
+
+        assertEquals("connect", events.get(0).event);
+        assertEquals("{\"event\":\"connect\",\"steamID\":\"111\",\"note\":\"ünï\"}", events.get(0).body);
+        assertEquals("{\"event\":\"axis\",\"axis\":\"move_x\",\"val\":-0.5,\"playerName\":\"Ann\",\"steamID\":\"111\"}",
+                events.get(1).body);
+        assertEquals("{\"event\":\"input\",\"key\":\"jump\",\"playerName\":\"Bob\",\"steamID\":\"222\"}",
+                events.get(2).body);
+        assertEquals("{\"event\":\"pos\",\"playerName\":\"Ann\",\"steamID\":\"111\",\"x\":1.5,\"y\":2.0,\"z\":-3.0," +
+                "\"rx\":0.0,\"ry\":90.0,\"rz\":0.0}", events.get(3).body);
+        assertEquals("{\"event\":\"pos\",\"playerName\":\"Bob\",\"steamID\":\"222\",\"x\":0.0,\"y\":0.0,\"z\":0.0," +
+                "\"rx\":0.0,\"ry\":0.0,\"rz\":0.0,\"camx\":4.0,\"camy\":5.0,\"camz\":6.0}", events.get(4).body);
+        // Strings already defined in the segment come back through their refs
+        assertEquals("input", events.get(5).event);
+        assertEquals("Ann", events.get(5).playerName);
+        assertEquals("{\"event\":\"input\",\"key\":\"jump\",\"playerName\":\"Ann\",\"steamID\":\"111\"}",
+                events.get(5).body);
+
+        for (int i = 1; i < events.size(); i++)
+            assertTrue(events.get(i).epochMicros >= events.get(i - 1).epochMicros);
+    }
+
+    @Test
+    void continuesAcrossSegments() throws IOException {
+        String body = "{\"event\":\"chat\",\"text\":\"" + "x".repeat(50_000) + "\"}";
+        for (int i = 0; i < 50; i++) Journal.record("chat", "sid" + i, "P" + i, body);
+        Journal.stop();
+
+        File[] segments = sessionDir().listFiles((d, n) -> n.endsWith(".dsj"));
+        assertTrue(segments.length > 1, segments.length + " segment(s)");
+
+        List<Journal.Event> events = readAll();
+        assertEquals(50, events.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("sid" + i, events.get(i).steamID);
+            assertEquals("P" + i, events.get(i).playerName);
+            assertEquals(body, events.get(i).body);
+        }
+    }
+
+    @Test
+    void emptySessionReadsNothing() throws IOException {
+        Journal.stop();
+        try (Journal.Reader r = new Journal.Reader(sessionDir())) {
+            assertFalse(r.next(new Journal.Event()));
+        }
+    }
+
+    private File sessionDir() {
+        File[] sessions = dir.toFile().listFiles(File::isDirectory);
+        assertEquals(1, sessions.length);
+        return sessions[0];
+    }
+
+    private List<Journal.Event> readAll() throws IOException {
+        List<Journal.Event> out = new ArrayList<>();
+        try (Journal.Reader r = new Journal.Reader(sessionDir())) {
+            for (Journal.Event e = new Journal.Event(); r.next(e); e = new Journal.Event()) out.add(e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,109 @@
+package club.kron.pumpin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* Queues and fields must come back after a restart, whether it was clean or a crash mid-write. */
+class StateStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private String sid;
+
+    @BeforeEach
+    void start() {
+        sid = "7656119" + System.nanoTime();
+        Main.override("warm-restart", "true");
+        Main.override("state-dir", dir.toString());
+        Main.override("state-snapshot-seconds", "3600");
+        StateStore.start();
+        assertTrue(StateStore.enabled());
+    }
+
+    @AfterEach
+    void stop() {
+        StateStore.stop();
+        Main.exportSession(sid);
+    }
+
+    @Test
+    void cleanRestartKeepsQueuesAndFields() {
+        Main.enqueueLocal(sid, "say one", CommandLanes.NORMAL);
+        Main.enqueueLocal(sid, "say two", CommandLanes.URGENT);
+        Main.importSession(sid, List.of("pos=1.0,2.0,3.0"));
+
+        StateStore.stop();
+        restart();
+
+        assertEquals("[\"say two\",\"say one\"]", Main.dequeueCommandsJson(sid));
+        assertTrue(Main.sessionFields(sid, StateStore.POS).contains("pos=1.0,2.0,3.0"));
+    }
+
+    @Test
+    void crashReplaysLogOverSnapshot() {
+        Main.enqueueLocal(sid, "say old", CommandLanes.NORMAL);
+        assertTrue(StateStore.handleConsole("state snapshot"));
+        Main.enqueueLocal(sid, "say a", CommandLanes.NORMAL);
+        Main.enqueueLocal(sid, "say b", CommandLanes.BULK);
+
+        StateStore.halt();
+        restart();
+
+        assertEquals("[\"say old\",\"say a\",\"say b\"]", Main.dequeueCommandsJson(sid));
+    }
+
+    @Test
+    void drainedCommandsStayDrained() {
+        for (int i = 0; i < 3; i++) Main.enqueueLocal(sid, "say " + i, CommandLanes.NORMAL);
+        assertEquals("[\"say 0\",\"say 1\",\"say 2\"]", Main.dequeueCommandsJson(sid));
+        Main.enqueueLocal(sid, "say 3", CommandLanes.NORMAL);
+
+        StateStore.halt();
+        restart();
+
+        assertEquals("[\"say 3\"]", Main.dequeueCommandsJson(sid));
+    }
+
+    @Test
+    void tornTailIsIgnored() throws IOException {
+        Main.enqueueLocal(sid, "say kept", CommandLanes.NORMAL);
+        StateStore.halt();
+
+        // A record cut off by the crash: type, sid, kind, then a value length with only part of the value
+        File[] logs = dir.toFile().listFiles((d, n) -> n.endsWith(".dsw"));
+        assertEquals(1, logs.length);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logs[0], true))) {
+            byte[] id = sid.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(2);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeByte(StateStore.CMD);
+            out.writeInt(100);
+            out.write("say lo".getBytes(StandardCharsets.UTF_8));
+        }
+        restart();
+
+        assertEquals("[\"say kept\"]", Main.dequeueCommandsJson(sid));
+    }
+
+    /* Forgets the session in memory, as a new process would, and boots from the files. */
+    private void restart() {
+        Main.exportSession(sid);
+        assertEquals("[]", Main.dequeueCommandsJson(sid));
+        StateStore.start();
+    }
+}
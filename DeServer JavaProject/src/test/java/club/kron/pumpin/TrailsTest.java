@@ -0,0 +1,85 @@
+package club.kron.pumpin;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* The bit codec must give back exactly the quantized values and timestamps it was fed. */
+class TrailsTest {
+
+    @Test
+    void roundTripsEveryTimestampCodeAndColumnShape() {
+        Trails.Encoder enc = new Trails.Encoder();
+        List<long[]> in = new ArrayList<>();
+        Random rnd = new Random(42);
+        long t = 1_700_000_000_000L;
+        // Steps that hit each delta-of-delta width, including the 32-bit escape and a step back in time
+        long[] steps = {50, 50, 50, 70, 10, 300, 40, 2000, 50, 100_000, 50, -20, 50, 0, 0, 50};
+        float[] v = {10.5f, 64f, -3.25f, 0f, 90f, 0f};
+        for (int p = 0; enc.fits(); p++) {
+            t += steps[p % steps.length];
+            if (p % 3 == 0) v[0] += 0.015625f;                                // small change, reuses its window
+            if (p % 7 == 0) v[1] = Math.round(rnd.nextGaussian() * 5000) / 64f;  // large change, new window
+            if (p % 11 == 0) v[5] = -v[5] - 1;                               // sign flip
+            int[] bits = new int[Trails.COLUMNS];
+            long[] row = new long[1 + Trails.COLUMNS];
+            row[0] = t;
+            for (int i = 0; i < Trails.COLUMNS; i++) {
+                bits[i] = Float.floatToRawIntBits(v[i]);
+                row[i + 1] = bits[i];
+            }
+            enc.add(t, bits);
+            in.add(row);
+        }
+        assertEquals(in.size(), enc.points);
+        assertEquals(in.get(in.size() - 1)[0], enc.last);
+
+        List<long[]> out = new ArrayList<>();
+        Trails.decode(enc.buf, enc.points, enc.first, (ms, x, y, z, rx, ry, rz) -> out.add(new long[]{ms,
+                Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), Float.floatToRawIntBits(z),
+                Float.floatToRawIntBits(rx), Float.floatToRawIntBits(ry), Float.floatToRawIntBits(rz)}));
+
+        assertEquals(in.size(), out.size());
+        for (int p = 0; p < in.size(); p++) assertArrayEquals(in.get(p), out.get(p), "point " + p);
+    }
+
+    @Test
+    void standingStillCostsAboutAByte() {
+        Trails.Encoder enc = new Trails.Encoder();
+        int[] bits = new int[Trails.COLUMNS];
+        for (int p = 0; p < 1000; p++) enc.add(1000L * p, bits);
+        assertTrue(enc.bytes() <= 24 + 1000, enc.bytes() + " bytes");
+
+        long[] seen = {0, 0};
+        Trails.decode(enc.buf, enc.points, enc.first, (ms, x, y, z, rx, ry, rz) -> {
+            assertEquals(1000L * seen[0]++, ms);
+            if (x != 0 || rz != 0) seen[1]++;
+        });
+        assertEquals(1000, seen[0]);
+        assertEquals(0, seen[1]);
+    }
+
+    @Test
+    void resetStartsAFreshBlock() {
+        Trails.Encoder enc = new Trails.Encoder();
+        int[] a = {1, 2, 3, 4, 5, 6};
+        enc.add(10, a);
+        enc.add(20, new int[]{7, 8, 9, 10, 11, 12});
+        enc.reset();
+        enc.add(500, a);
+
+        List<Long> times = new ArrayList<>();
+        Trails.decode(enc.buf, enc.points, enc.first, (ms, x, y, z, rx, ry, rz) -> {
+            times.add(ms);
+            assertEquals(1, Float.floatToRawIntBits(x));
+            assertEquals(6, Float.floatToRawIntBits(rz));
+        });
+        assertEquals(List.of(500L), times);
+    }
+}